@@ -0,0 +1,81 @@
+package com.kycq.library.scan;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.RGBLuminanceSource;
+import com.google.zxing.ReaderException;
+import com.google.zxing.common.HybridBinarizer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 录制帧与静态图片的整体解码耗时，每次操作解码全部样本
+ * <p>
+ * 未指定 {@value FrameCorpus#CORPUS_PROPERTY} 时使用合成的多分辨率样本。
+ */
+@State(Scope.Thread)
+public class CorpusBenchmark {
+	private List<FrameCorpus.Frame> mFrames;
+	private List<FrameCorpus.Image> mImages;
+	private FormatReader mFormatReader;
+	
+	@Setup
+	public void setup() throws IOException {
+		mFrames = FrameCorpus.loadFrames();
+		mImages = FrameCorpus.loadImages();
+		if (mFrames.isEmpty()) {
+			mFrames.add(FrameCorpus.createFrame(640, 480, 90, BarcodeFormat.QR_CODE, "CorpusBenchmark"));
+			mFrames.add(FrameCorpus.createFrame(1280, 720, 90, BarcodeFormat.CODE_128, "CorpusBenchmark"));
+			mFrames.add(FrameCorpus.createFrame(1920, 1080, 270, BarcodeFormat.AZTEC, "CorpusBenchmark"));
+		}
+		if (mImages.isEmpty()) {
+			mImages.add(FrameCorpus.createImage(1024, 768, BarcodeFormat.QR_CODE, "CorpusBenchmark"));
+			mImages.add(FrameCorpus.createImage(2048, 1536, BarcodeFormat.CODE_128, "CorpusBenchmark"));
+		}
+		
+		Map<DecodeHintType, Object> hints = new EnumMap<>(DecodeHintType.class);
+		hints.put(DecodeHintType.POSSIBLE_FORMATS, EnumSet.allOf(BarcodeFormat.class));
+		mFormatReader = new FormatReader(hints, new FormatReader.Ranking());
+	}
+	
+	@Benchmark
+	public int decodeFrames() {
+		int decoded = 0;
+		for (FrameCorpus.Frame frame : mFrames) {
+			try {
+				mFormatReader.decode(new BinaryBitmap(new HybridBinarizer(frame.createSource())));
+				decoded++;
+			} catch (ReaderException ignored) {
+			} finally {
+				mFormatReader.reset();
+			}
+		}
+		return decoded;
+	}
+	
+	@Benchmark
+	public int decodeImages() {
+		int decoded = 0;
+		for (FrameCorpus.Image image : mImages) {
+			try {
+				RGBLuminanceSource source = new RGBLuminanceSource(image.width, image.height, image.pixels);
+				mFormatReader.decode(new BinaryBitmap(new HybridBinarizer(source)));
+				decoded++;
+			} catch (ReaderException ignored) {
+			} finally {
+				mFormatReader.reset();
+			}
+		}
+		return decoded;
+	}
+}
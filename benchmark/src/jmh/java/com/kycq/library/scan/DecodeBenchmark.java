@@ -0,0 +1,129 @@
+package com.kycq.library.scan;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.MultiFormatReader;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.Result;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.HybridBinarizer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+
+/**
+ * 预览帧解码流程：二值化、全格式解码、单格式解码与完整解码引擎
+ */
+@State(Scope.Thread)
+public class DecodeBenchmark {
+	@Param({"640x480", "1280x720", "1920x1080"})
+	public String resolution;
+	@Param({"0", "90"})
+	public int rotationAngle;
+	@Param({"QR_CODE", "CODE_128", "PDF_417"})
+	public BarcodeFormat format;
+	
+	private FrameCorpus.Frame mFrame;
+	private MultiFormatReader mMultiFormatReader;
+	private FormatReader mAllFormatReader;
+	private FormatReader mSingleFormatReader;
+	private DecodeEngine mDecodeEngine;
+	private DecodeEngine mPyramidDecodeEngine;
+	private ReusableHybridBinarizer.Buffers mBinarizerBuffers;
+	
+	@Setup
+	public void setup() throws NotFoundException {
+		int[] size = FrameCorpus.parseResolution(resolution);
+		mFrame = FrameCorpus.createFrame(size[0], size[1], rotationAngle, format, "DecodeBenchmark-0123456789");
+		
+		Map<DecodeHintType, Object> allHints = new EnumMap<>(DecodeHintType.class);
+		allHints.put(DecodeHintType.POSSIBLE_FORMATS, EnumSet.allOf(BarcodeFormat.class));
+		mMultiFormatReader = new MultiFormatReader();
+		mMultiFormatReader.setHints(allHints);
+		mAllFormatReader = new FormatReader(allHints, new FormatReader.Ranking());
+		
+		Map<DecodeHintType, Object> singleHints = new EnumMap<>(DecodeHintType.class);
+		singleHints.put(DecodeHintType.POSSIBLE_FORMATS, EnumSet.of(format));
+		mSingleFormatReader = new FormatReader(singleHints, new FormatReader.Ranking());
+		
+		mDecodeEngine = new DecodeEngine();
+		mDecodeEngine.setDecodeFormats(EnumSet.of(format));
+		mPyramidDecodeEngine = new DecodeEngine();
+		mPyramidDecodeEngine.setDecodeFormats(EnumSet.of(format));
+		mPyramidDecodeEngine.setPyramidDecode(true);
+		mBinarizerBuffers = new ReusableHybridBinarizer.Buffers();
+		
+		// 合成帧必须能解码，否则测得的是失败路径
+		mSingleFormatReader.decode(newBinaryBitmap());
+		if (decodeEngine() != DecodeEngine.STATUS_SUCCESS) {
+			throw NotFoundException.getNotFoundInstance();
+		}
+	}
+	
+	private BinaryBitmap newBinaryBitmap() {
+		return new BinaryBitmap(new HybridBinarizer(mFrame.createSource()));
+	}
+	
+	@Benchmark
+	public BitMatrix binarize() throws NotFoundException {
+		return newBinaryBitmap().getBlackMatrix();
+	}
+	
+	@Benchmark
+	public BitMatrix binarizeReusable() throws NotFoundException {
+		return new ReusableHybridBinarizer(mFrame.createSource(), mBinarizerBuffers).getBlackMatrix();
+	}
+	
+	@Benchmark
+	public Result decodeWithState() throws NotFoundException {
+		try {
+			return mMultiFormatReader.decodeWithState(newBinaryBitmap());
+		} finally {
+			mMultiFormatReader.reset();
+		}
+	}
+	
+	@Benchmark
+	public Result formatReaderAllFormats() throws NotFoundException {
+		try {
+			return mAllFormatReader.decode(newBinaryBitmap());
+		} finally {
+			mAllFormatReader.reset();
+		}
+	}
+	
+	@Benchmark
+	public Result formatReaderSingleFormat() throws NotFoundException {
+		try {
+			return mSingleFormatReader.decode(newBinaryBitmap());
+		} finally {
+			mSingleFormatReader.reset();
+		}
+	}
+	
+	/**
+	 * 包含帧质量检测的完整预览帧解码
+	 */
+	@Benchmark
+	public int decodeEngine() {
+		return mDecodeEngine.decode(mFrame.data, mFrame.dataWidth, mFrame.dataHeight, mFrame.rotationAngle,
+				mFrame.left, mFrame.top, mFrame.width, mFrame.height);
+	}
+	
+	/**
+	 * 开启多尺度解码的完整预览帧解码
+	 */
+	@Benchmark
+	public int decodeEnginePyramid() {
+		return mPyramidDecodeEngine.decode(mFrame.data, mFrame.dataWidth, mFrame.dataHeight, mFrame.rotationAngle,
+				mFrame.left, mFrame.top, mFrame.width, mFrame.height);
+	}
+}
@@ -0,0 +1,266 @@
+package com.kycq.library.scan;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.MultiFormatWriter;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.imageio.ImageIO;
+
+/**
+ * 基准测试帧数据
+ * <p>
+ * 默认按分辨率和旋转角度合成带噪声的 NV21 预览帧；
+ * 指定系统属性 {@value #CORPUS_PROPERTY} 时，额外读取目录下录制的帧和图片：
+ * <ul>
+ * <li>预览帧：文件名形如 {@code 1280x720_90_xxx.nv21}，依次为宽、高、旋转角度</li>
+ * <li>图片：png、jpg 文件</li>
+ * </ul>
+ */
+final class FrameCorpus {
+	static final String CORPUS_PROPERTY = "scan.benchmark.corpus";
+	
+	/** 扫描框占短边的比例，与 FinderView 默认值一致 */
+	private static final float FINDER_RATIO = 0.6F;
+	/** 条码占扫描框的比例 */
+	private static final float CODE_RATIO = 0.8F;
+	
+	private static final Pattern FRAME_NAME_PATTERN = Pattern.compile("(\\d+)x(\\d+)_(\\d+).*\\.nv21");
+	
+	private FrameCorpus() {
+	}
+	
+	/**
+	 * 预览帧
+	 */
+	static final class Frame {
+		final String name;
+		final byte[] data;
+		final int dataWidth;
+		final int dataHeight;
+		final int rotationAngle;
+		/** 扫描区域（旋转后坐标） */
+		final int left;
+		final int top;
+		final int width;
+		final int height;
+		
+		Frame(String name, byte[] data, int dataWidth, int dataHeight, int rotationAngle) {
+			this.name = name;
+			this.data = data;
+			this.dataWidth = dataWidth;
+			this.dataHeight = dataHeight;
+			this.rotationAngle = rotationAngle;
+			
+			int rotatedWidth = RotatedLuminanceSource.getRotatedWidth(dataWidth, dataHeight, rotationAngle);
+			int rotatedHeight = RotatedLuminanceSource.getRotatedHeight(dataWidth, dataHeight, rotationAngle);
+			int finderSize = (int) (Math.min(rotatedWidth, rotatedHeight) * FINDER_RATIO);
+			this.left = (rotatedWidth - finderSize) / 2;
+			this.top = (rotatedHeight - finderSize) / 2;
+			this.width = finderSize;
+			this.height = finderSize;
+		}
+		
+		RotatedLuminanceSource createSource() {
+			return new RotatedLuminanceSource(data, dataWidth, dataHeight, rotationAngle,
+					left, top, width, height);
+		}
+	}
+	
+	/**
+	 * 静态图片亮度数据
+	 */
+	static final class Image {
+		final String name;
+		final int width;
+		final int height;
+		final int[] pixels;
+		
+		Image(String name, int width, int height, int[] pixels) {
+			this.name = name;
+			this.width = width;
+			this.height = height;
+			this.pixels = pixels;
+		}
+	}
+	
+	/**
+	 * 解析 "宽x高" 格式的分辨率
+	 */
+	static int[] parseResolution(String resolution) {
+		int index = resolution.indexOf('x');
+		return new int[]{
+				Integer.parseInt(resolution.substring(0, index)),
+				Integer.parseInt(resolution.substring(index + 1))
+		};
+	}
+	
+	/**
+	 * 合成预览帧，条码位于扫描区域中央，在旋转后的画面中保持正向
+	 */
+	static Frame createFrame(int dataWidth, int dataHeight, int rotationAngle,
+	                         BarcodeFormat format, String contents) {
+		int rotatedWidth = RotatedLuminanceSource.getRotatedWidth(dataWidth, dataHeight, rotationAngle);
+		int rotatedHeight = RotatedLuminanceSource.getRotatedHeight(dataWidth, dataHeight, rotationAngle);
+		int codeSize = (int) (Math.min(rotatedWidth, rotatedHeight) * FINDER_RATIO * CODE_RATIO);
+		BitMatrix code = encode(format, contents, codeSize);
+		int codeLeft = (rotatedWidth - code.getWidth()) / 2;
+		int codeTop = (rotatedHeight - code.getHeight()) / 2;
+		// 条码四周留白
+		int quietZone = codeSize / 10;
+		
+		byte[] data = new byte[dataWidth * dataHeight * 3 / 2];
+		Random random = new Random(dataWidth * 31 + dataHeight * 17 + rotationAngle);
+		for (int ry = 0; ry < rotatedHeight; ry++) {
+			for (int rx = 0; rx < rotatedWidth; rx++) {
+				int luminance = 150;
+				int codeX = rx - codeLeft;
+				int codeY = ry - codeTop;
+				if (codeX >= 0 && codeY >= 0 && codeX < code.getWidth() && codeY < code.getHeight()) {
+					luminance = code.get(codeX, codeY) ? 40 : 210;
+				} else if (codeX >= -quietZone && codeY >= -quietZone
+						&& codeX < code.getWidth() + quietZone && codeY < code.getHeight() + quietZone) {
+					luminance = 210;
+				}
+				luminance += (int) (random.nextGaussian() * 4);
+				luminance = Math.max(0, Math.min(255, luminance));
+				data[toDataIndex(rx, ry, dataWidth, dataHeight, rotationAngle)] = (byte) luminance;
+			}
+		}
+		// 色度平面填充为中性灰
+		for (int index = dataWidth * dataHeight; index < data.length; index++) {
+			data[index] = (byte) 128;
+		}
+		return new Frame(format + "_" + dataWidth + "x" + dataHeight + "_" + rotationAngle,
+				data, dataWidth, dataHeight, rotationAngle);
+	}
+	
+	/**
+	 * 合成静态图片，条码居中并占短边的一半
+	 */
+	static Image createImage(int width, int height, BarcodeFormat format, String contents) {
+		BitMatrix code = encode(format, contents, Math.min(width, height) / 2);
+		int codeLeft = (width - code.getWidth()) / 2;
+		int codeTop = (height - code.getHeight()) / 2;
+		
+		int[] pixels = new int[width * height];
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				int codeX = x - codeLeft;
+				int codeY = y - codeTop;
+				int pixel = 0xFFC8C8C8;
+				if (codeX >= 0 && codeY >= 0 && codeX < code.getWidth() && codeY < code.getHeight()) {
+					pixel = code.get(codeX, codeY) ? 0xFF202020 : 0xFFF0F0F0;
+				}
+				pixels[y * width + x] = pixel;
+			}
+		}
+		return new Image(format + "_" + width + "x" + height, width, height, pixels);
+	}
+	
+	private static BitMatrix encode(BarcodeFormat format, String contents, int size) {
+		int height = format == BarcodeFormat.CODE_128 || format == BarcodeFormat.EAN_13 ? size / 3 : size;
+		try {
+			return new MultiFormatWriter().encode(contents, format, size, height);
+		} catch (WriterException e) {
+			throw new IllegalArgumentException(e);
+		}
+	}
+	
+	private static int toDataIndex(int rx, int ry, int dataWidth, int dataHeight, int rotationAngle) {
+		switch (rotationAngle) {
+			case 90:
+				return (dataHeight - 1 - rx) * dataWidth + ry;
+			case 180:
+				return (dataHeight - 1 - ry) * dataWidth + dataWidth - 1 - rx;
+			case 270:
+				return rx * dataWidth + dataWidth - 1 - ry;
+			default:
+				return ry * dataWidth + rx;
+		}
+	}
+	
+	/**
+	 * 读取录制的预览帧，未指定目录时返回空列表
+	 */
+	static List<Frame> loadFrames() throws IOException {
+		List<Frame> frames = new ArrayList<>();
+		File[] files = listCorpusFiles();
+		for (File file : files) {
+			Matcher matcher = FRAME_NAME_PATTERN.matcher(file.getName());
+			if (!matcher.matches()) {
+				continue;
+			}
+			int dataWidth = Integer.parseInt(matcher.group(1));
+			int dataHeight = Integer.parseInt(matcher.group(2));
+			int rotationAngle = Integer.parseInt(matcher.group(3));
+			byte[] data = readFully(file);
+			if (data.length < dataWidth * dataHeight) {
+				throw new IOException("Frame is smaller than " + dataWidth + "x" + dataHeight + ": " + file);
+			}
+			frames.add(new Frame(file.getName(), data, dataWidth, dataHeight, rotationAngle));
+		}
+		return frames;
+	}
+	
+	/**
+	 * 读取图片，未指定目录时返回空列表
+	 */
+	static List<Image> loadImages() throws IOException {
+		List<Image> images = new ArrayList<>();
+		File[] files = listCorpusFiles();
+		for (File file : files) {
+			String name = file.getName().toLowerCase();
+			if (!name.endsWith(".png") && !name.endsWith(".jpg") && !name.endsWith(".jpeg")) {
+				continue;
+			}
+			BufferedImage bufferedImage = ImageIO.read(file);
+			if (bufferedImage == null) {
+				continue;
+			}
+			int width = bufferedImage.getWidth();
+			int height = bufferedImage.getHeight();
+			int[] pixels = bufferedImage.getRGB(0, 0, width, height, null, 0, width);
+			images.add(new Image(file.getName(), width, height, pixels));
+		}
+		return images;
+	}
+	
+	private static File[] listCorpusFiles() {
+		String corpus = System.getProperty(CORPUS_PROPERTY);
+		if (corpus == null) {
+			return new File[0];
+		}
+		File[] files = new File(corpus).listFiles();
+		return files != null ? files : new File[0];
+	}
+	
+	private static byte[] readFully(File file) throws IOException {
+		byte[] data = new byte[(int) file.length()];
+		InputStream inputStream = new FileInputStream(file);
+		try {
+			int offset = 0;
+			while (offset < data.length) {
+				int count = inputStream.read(data, offset, data.length - offset);
+				if (count < 0) {
+					break;
+				}
+				offset += count;
+			}
+		} finally {
+			inputStream.close();
+		}
+		return data;
+	}
+}
@@ -0,0 +1,87 @@
+package com.kycq.library.scan;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.PlanarYUVLuminanceSource;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * 亮度数据准备：整帧旋转后裁剪与按旋转角度直接裁剪的对比，以及帧质量检测
+ */
+@State(Scope.Thread)
+public class LuminanceBenchmark {
+	@Param({"640x480", "1280x720", "1920x1080"})
+	public String resolution;
+	@Param({"0", "90", "180", "270"})
+	public int rotationAngle;
+	
+	private FrameCorpus.Frame mFrame;
+	private FrameQualityGate mFrameQualityGate;
+	
+	@Setup
+	public void setup() {
+		int[] size = FrameCorpus.parseResolution(resolution);
+		mFrame = FrameCorpus.createFrame(size[0], size[1], rotationAngle, BarcodeFormat.QR_CODE, "LuminanceBenchmark");
+		mFrameQualityGate = new FrameQualityGate();
+		mFrameQualityGate.setEnabled(true);
+	}
+	
+	/**
+	 * 旧实现：整帧旋转到新数组后再用 {@link PlanarYUVLuminanceSource} 裁剪
+	 */
+	@Benchmark
+	public byte[] rotateData() {
+		FrameCorpus.Frame frame = mFrame;
+		byte[] rotatedData = rotateData(frame.data, frame.dataWidth, frame.dataHeight, frame.rotationAngle);
+		int rotatedWidth = RotatedLuminanceSource.getRotatedWidth(frame.dataWidth, frame.dataHeight, frame.rotationAngle);
+		int rotatedHeight = RotatedLuminanceSource.getRotatedHeight(frame.dataWidth, frame.dataHeight, frame.rotationAngle);
+		LuminanceSource source = new PlanarYUVLuminanceSource(rotatedData, rotatedWidth, rotatedHeight,
+				frame.left, frame.top, frame.width, frame.height, false);
+		return source.getMatrix();
+	}
+	
+	@Benchmark
+	public byte[] rotatedLuminanceSource() {
+		return mFrame.createSource().getMatrix();
+	}
+	
+	@Benchmark
+	public int frameQualityGate() {
+		return mFrameQualityGate.check(mFrame.createSource());
+	}
+	
+	private static byte[] rotateData(byte[] data, int dataWidth, int dataHeight, int rotationAngle) {
+		if (rotationAngle == 0) {
+			return data;
+		}
+		byte[] rotatedData = new byte[data.length];
+		switch (rotationAngle) {
+			case 90:
+				for (int y = 0; y < dataHeight; y++) {
+					for (int x = 0; x < dataWidth; x++) {
+						rotatedData[x * dataHeight + dataHeight - y - 1] = data[x + y * dataWidth];
+					}
+				}
+				break;
+			case 180:
+				int length = dataWidth * dataHeight;
+				for (int index = 0; index < length; index++) {
+					rotatedData[index] = data[length - index - 1];
+				}
+				break;
+			case 270:
+				for (int y = 0; y < dataHeight; y++) {
+					for (int x = 0; x < dataWidth; x++) {
+						rotatedData[(dataWidth - x - 1) * dataHeight + y] = data[x + y * dataWidth];
+					}
+				}
+				break;
+		}
+		return rotatedData;
+	}
+}
@@ -1,97 +1,257 @@
 package com.kycq.library.scan;
 
 import android.hardware.Camera;
-import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Message;
+import android.os.SystemClock;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.concurrent.RejectedExecutionException;
+import java.util.List;
 
-class AutoFocusManager implements Camera.AutoFocusCallback {
+/**
+ * 自动对焦控制
+ * <p>
+ * 自动对焦模式下通过 Handler 定时触发对焦，不再占用线程池中的线程；
+ * 连续对焦模式下由相机自行对焦，不定时触发。
+ * 自动对焦模式下连续出现模糊帧或连续多帧未识别时视为失焦，立即触发一次对焦。
+ * 连续对焦模式下 {@link Camera#autoFocus} 不会重新扫描，只在连续出现模糊帧时先切换到
+ * {@link Camera.Parameters#FOCUS_MODE_AUTO} 完成一次对焦，再切回连续对焦；画面中没有条码时
+ * 同样连续未识别，不作为失焦信号，避免空闲时反复切换参数。强制对焦后仍未识别时逐次加倍下次对焦的间隔，
+ * 识别成功后恢复。相机不支持自动对焦模式时连续对焦模式不响应失焦。
+ * <p>
+ * 切换对焦模式通过 {@link CameraParameters} 进行，与其他参数修改共用同一把锁，
+ * 加锁顺序为参数锁在前、本对象在后。
+ */
+class AutoFocusManager implements Camera.AutoFocusCallback, Handler.Callback {
 	private static final long AUTO_FOCUS_INTERVAL_MS = 1000L;
+	/** 失焦触发对焦的最小间隔，避免对焦来回抖动 */
+	private static final long MIN_TRIGGER_INTERVAL_MS = 600L;
+	/** 连续多少帧模糊视为失焦 */
+	private static final int BLURRY_FRAMES = 3;
+	/** 连续多少帧未识别视为失焦 */
+	private static final int FAILED_FRAMES = 15;
+	/** 连续对焦模式下强制对焦的最小间隔 */
+	private static final long MIN_SWEEP_INTERVAL_MS = 2000L;
+	/** 强制对焦后仍未识别时间隔逐次加倍，不超过该值 */
+	private static final long MAX_SWEEP_INTERVAL_MS = 16000L;
+	
+	private static final int MSG_FOCUS = 0;
+	
 	private static final Collection<String> FOCUS_MODES_CALLING_AF;
+	private static final Collection<String> FOCUS_MODES_CONTINUOUS;
 	
 	static {
 		FOCUS_MODES_CALLING_AF = new ArrayList<>(2);
 		FOCUS_MODES_CALLING_AF.add(Camera.Parameters.FOCUS_MODE_AUTO);
 		FOCUS_MODES_CALLING_AF.add(Camera.Parameters.FOCUS_MODE_MACRO);
+		FOCUS_MODES_CONTINUOUS = new ArrayList<>(2);
+		FOCUS_MODES_CONTINUOUS.add(Camera.Parameters.FOCUS_MODE_CONTINUOUS_PICTURE);
+		FOCUS_MODES_CONTINUOUS.add(Camera.Parameters.FOCUS_MODE_CONTINUOUS_VIDEO);
 	}
 	
 	private final Camera mCamera;
+	private final CameraParameters mCameraParameters;
+	/** {@link #mCameraParameters} 的锁 */
+	private final Object mParametersLock;
+	private final Handler mHandler;
 	
 	private boolean mIsStopped;
 	private boolean mIsFocusing;
+	/** 是否需要定时触发对焦 */
 	private final boolean mIsUseAutoFocus;
+	/** 是否为连续对焦模式，只在失焦时触发对焦 */
+	private final boolean mIsContinuousFocus;
+	/** 连续对焦模式，失焦对焦完成后切回 */
+	private final String mContinuousFocusMode;
+	/** 连续对焦模式下是否已临时切换到自动对焦模式 */
+	private boolean mIsSweeping;
 	
-	private AsyncTask<?, ?, ?> mOutstandingTask;
+	/** 最近一次对焦完成的时间 */
+	private long mLastFocusMillis;
+	private int mBlurryFrames;
+	private int mFailedFrames;
+	/** 连续对焦模式下距上次对焦完成需经过的时间才能再次强制对焦 */
+	private long mSweepIntervalMillis = MIN_SWEEP_INTERVAL_MS;
 	
-	AutoFocusManager(Camera camera, boolean isAutoFocus) {
+	/**
+	 * @param camera           相机
+	 * @param cameraParameters 相机参数快照，用于读取当前对焦模式和临时切换对焦模式
+	 * @param parametersLock   参数快照的锁
+	 * @param isAutoFocus      是否启用对焦
+	 * @param looper           对焦回调所在线程，与打开相机的线程一致
+	 */
+	AutoFocusManager(Camera camera, CameraParameters cameraParameters, Object parametersLock,
+	                 boolean isAutoFocus, Looper looper) {
 		mCamera = camera;
-		String currentFocusMode = camera.getParameters().getFocusMode();
+		mCameraParameters = cameraParameters;
+		mParametersLock = parametersLock;
+		mHandler = new Handler(looper, this);
+		Camera.Parameters parameters = cameraParameters.get();
+		String currentFocusMode = parameters.getFocusMode();
+		List<String> supportedFocusModes = parameters.getSupportedFocusModes();
 		mIsUseAutoFocus = isAutoFocus && FOCUS_MODES_CALLING_AF.contains(currentFocusMode);
-		start();
+		mIsContinuousFocus = isAutoFocus && FOCUS_MODES_CONTINUOUS.contains(currentFocusMode)
+				&& supportedFocusModes != null
+				&& supportedFocusModes.contains(Camera.Parameters.FOCUS_MODE_AUTO);
+		mContinuousFocusMode = currentFocusMode;
+		if (mIsUseAutoFocus) {
+			focus();
+		}
 	}
 	
-	private synchronized void start() {
-		if (mIsUseAutoFocus) {
-			mOutstandingTask = null;
-			if (!mIsStopped && !mIsFocusing) {
+	/**
+	 * 停止对焦，正在进行失焦对焦时恢复连续对焦模式
+	 * <p>
+	 * 调用方需已持有参数锁或不持有任何锁。
+	 */
+	void stop() {
+		synchronized (mParametersLock) {
+			synchronized (this) {
+				mIsStopped = true;
+				mHandler.removeMessages(MSG_FOCUS);
+				if (mIsUseAutoFocus || mIsContinuousFocus) {
+					try {
+						mCamera.cancelAutoFocus();
+					} catch (RuntimeException ignored) {
+					}
+				}
+				mIsFocusing = false;
+				restoreContinuousFocus();
+			}
+		}
+	}
+	
+	/**
+	 * 帧质量检测判定为模糊
+	 */
+	synchronized void onFrameBlurry() {
+		mBlurryFrames++;
+		if (mBlurryFrames >= BLURRY_FRAMES) {
+			onFocusLost();
+		}
+	}
+	
+	/**
+	 * 帧清晰但未识别，连续对焦模式下不触发对焦
+	 */
+	synchronized void onDecodeFailed() {
+		mBlurryFrames = 0;
+		if (mIsContinuousFocus) {
+			return;
+		}
+		mFailedFrames++;
+		if (mFailedFrames >= FAILED_FRAMES) {
+			onFocusLost();
+		}
+	}
+	
+	synchronized void onDecodeSucceeded() {
+		mBlurryFrames = 0;
+		mFailedFrames = 0;
+		mSweepIntervalMillis = MIN_SWEEP_INTERVAL_MS;
+	}
+	
+	private void onFocusLost() {
+		if (mIsStopped || mIsFocusing || !(mIsUseAutoFocus || mIsContinuousFocus)) {
+			return;
+		}
+		long minInterval = mIsContinuousFocus ? mSweepIntervalMillis : MIN_TRIGGER_INTERVAL_MS;
+		if (SystemClock.elapsedRealtime() - mLastFocusMillis < minInterval) {
+			return;
+		}
+		mBlurryFrames = 0;
+		mFailedFrames = 0;
+		// 取消定时对焦，立即对焦
+		mHandler.removeMessages(MSG_FOCUS);
+		mHandler.sendEmptyMessage(MSG_FOCUS);
+	}
+	
+	@Override
+	public boolean handleMessage(Message msg) {
+		if (msg.what != MSG_FOCUS) {
+			return false;
+		}
+		focus();
+		return true;
+	}
+	
+	private void focus() {
+		synchronized (mParametersLock) {
+			synchronized (this) {
+				if (mIsStopped || mIsFocusing) {
+					return;
+				}
+				if (mIsContinuousFocus && !setFocusMode(Camera.Parameters.FOCUS_MODE_AUTO)) {
+					return;
+				}
+				mIsSweeping = mIsContinuousFocus;
 				try {
 					mCamera.autoFocus(this);
 					mIsFocusing = true;
 				} catch (RuntimeException ignored) {
+					restoreContinuousFocus();
 					autoFocusAgainLater();
 				}
 			}
 		}
 	}
 	
-	synchronized void stop() {
-		mIsStopped = true;
-		if (mIsUseAutoFocus) {
-			cancelOutstandingTask();
-			try {
-				mCamera.cancelAutoFocus();
-			} catch (RuntimeException ignored) {
+	@Override
+	public void onAutoFocus(boolean success, Camera camera) {
+		synchronized (mParametersLock) {
+			synchronized (this) {
+				mIsFocusing = false;
+				mLastFocusMillis = SystemClock.elapsedRealtime();
+				if (mIsStopped) {
+					return;
+				}
+				if (mIsContinuousFocus) {
+					// 自动对焦完成后焦点锁定，取消后切回连续对焦
+					try {
+						mCamera.cancelAutoFocus();
+					} catch (RuntimeException ignored) {
+					}
+					restoreContinuousFocus();
+					// 识别成功前再次强制对焦需等待更久
+					mSweepIntervalMillis = Math.min(mSweepIntervalMillis * 2, MAX_SWEEP_INTERVAL_MS);
+					return;
+				}
+				autoFocusAgainLater();
 			}
 		}
 	}
 	
-	private synchronized void cancelOutstandingTask() {
-		if (mOutstandingTask != null) {
-			if (mOutstandingTask.getStatus() != AsyncTask.Status.FINISHED) {
-				mOutstandingTask.cancel(true);
-			}
-			mOutstandingTask = null;
+	/**
+	 * 失焦对焦结束后切回连续对焦模式，调用前需持有参数锁
+	 */
+	private void restoreContinuousFocus() {
+		if (mIsSweeping) {
+			mIsSweeping = false;
+			setFocusMode(mContinuousFocusMode);
 		}
 	}
 	
-	@Override
-	public void onAutoFocus(boolean success, Camera camera) {
-		mIsFocusing = false;
-		autoFocusAgainLater();
-	}
-	
-	private synchronized void autoFocusAgainLater() {
-		if (!mIsStopped && mOutstandingTask == null) {
-			AutoFocusTask newTask = new AutoFocusTask();
-			try {
-				newTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
-				mOutstandingTask = newTask;
-			} catch (RejectedExecutionException ignored) {
-			}
+	/**
+	 * 在参数快照上修改对焦模式并应用，调用前需持有参数锁
+	 *
+	 * @return 相机是否接受
+	 */
+	private boolean setFocusMode(String focusMode) {
+		try {
+			mCameraParameters.edit().setFocusMode(focusMode);
+			mCameraParameters.apply();
+			return true;
+		} catch (RuntimeException ignored) {
+			return false;
 		}
 	}
 	
-	private final class AutoFocusTask extends AsyncTask<Object, Object, Object> {
-		@Override
-		protected Object doInBackground(Object... voids) {
-			try {
-				Thread.sleep(AUTO_FOCUS_INTERVAL_MS);
-			} catch (InterruptedException ignored) {
-			}
-			start();
-			return null;
+	private void autoFocusAgainLater() {
+		if (!mIsStopped && mIsUseAutoFocus) {
+			mHandler.removeMessages(MSG_FOCUS);
+			mHandler.sendEmptyMessageDelayed(MSG_FOCUS, AUTO_FOCUS_INTERVAL_MS);
 		}
 	}
 }
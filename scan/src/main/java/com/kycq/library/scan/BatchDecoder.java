@@ -0,0 +1,319 @@
+package com.kycq.library.scan;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.ReaderException;
+import com.google.zxing.Result;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 批量图片解码，不依赖界面和相机
+ * <p>
+ * 图片在固定数量的后台线程中并行解码，每个线程同一时间只处理一张图片，
+ * 内存占用约为线程数乘以单张图片的亮度图大小。结果按完成先后逐个回调到主线程。
+ */
+public final class BatchDecoder {
+	/** 默认解码亮度图的最大边长 */
+	private static final int DEFAULT_MAX_IMAGE_SIZE = 2048;
+	
+	private final Handler mResultHandler = new Handler(Looper.getMainLooper());
+	private final FormatReader.Ranking mFormatRanking = new FormatReader.Ranking();
+	
+	private Map<DecodeHintType, Object> mDecodeHints;
+	private int mThreadCount = Runtime.getRuntime().availableProcessors();
+	private int mMaxImageSize = DEFAULT_MAX_IMAGE_SIZE;
+	private boolean mIsMultipleDecode;
+	
+	private ExecutorService mExecutorService;
+	/** 未完成的批次 */
+	private final List<Batch> mActiveBatches = new ArrayList<>();
+	
+	public BatchDecoder() {
+		mDecodeHints = DecodeFormat.createDecodeHints(DecodeFormat.getDefaultFormats());
+	}
+	
+	/**
+	 * 设置扫描模式，只解码模式对应的格式，对之后提交的批次生效
+	 *
+	 * @param scanModes 扫描模式，如 {@link DecodeFormat#ONE_D_MODE}、{@link DecodeFormat#QR_CODE_MODE}
+	 */
+	public void setScanModes(String... scanModes) {
+		setDecodeFormats(DecodeFormat.getFormatsForModes(scanModes));
+	}
+	
+	/**
+	 * 设置解码格式，对之后提交的批次生效
+	 *
+	 * @param decodeFormats 解码格式
+	 */
+	public void setDecodeFormats(Collection<BarcodeFormat> decodeFormats) {
+		mDecodeHints = DecodeFormat.createDecodeHints(decodeFormats);
+	}
+	
+	/**
+	 * 设置解码线程数，默认为处理器核数
+	 *
+	 * @param threadCount 线程数
+	 */
+	public synchronized void setThreadCount(int threadCount) {
+		if (threadCount < 1) {
+			throw new IllegalArgumentException("Thread count must be positive: " + threadCount);
+		}
+		if (mThreadCount == threadCount) {
+			return;
+		}
+		mThreadCount = threadCount;
+		// 已提交的图片在原线程池中继续解码
+		if (mExecutorService != null) {
+			mExecutorService.shutdown();
+			mExecutorService = null;
+		}
+	}
+	
+	/**
+	 * 设置解码亮度图的最大边长，超出时采样缩小，未识别时只在疑似区域放大重试
+	 *
+	 * @param maxImageSize 最大边长，默认 2048
+	 */
+	public void setMaxImageSize(int maxImageSize) {
+		if (maxImageSize < 1) {
+			throw new IllegalArgumentException("Max image size must be positive: " + maxImageSize);
+		}
+		mMaxImageSize = maxImageSize;
+	}
+	
+	/**
+	 * 设置是否识别每张图片中的多个条码
+	 *
+	 * @param multipleDecode 是否识别多个条码
+	 */
+	public void setMultipleDecode(boolean multipleDecode) {
+		mIsMultipleDecode = multipleDecode;
+	}
+	
+	/**
+	 * 批量解码文件
+	 *
+	 * @param files    图片文件
+	 * @param listener 结果回调，{@link BatchResult#getIndex()} 为文件在集合中的位置
+	 * @return 批次，可用于取消
+	 */
+	public Batch decodeFiles(Collection<File> files, OnBatchDecodeListener listener) {
+		List<ImageSource> sources = new ArrayList<>(files.size());
+		for (File file : files) {
+			sources.add(new FileImageSource(file));
+		}
+		return decode(sources, listener);
+	}
+	
+	/**
+	 * 批量解码图片
+	 *
+	 * @param sources  图片来源
+	 * @param listener 结果回调，{@link BatchResult#getIndex()} 为来源在集合中的位置
+	 * @return 批次，可用于取消
+	 */
+	public synchronized Batch decode(Collection<? extends ImageSource> sources, OnBatchDecodeListener listener) {
+		if (mExecutorService == null) {
+			mExecutorService = Executors.newFixedThreadPool(mThreadCount, new DecodeThreadFactory());
+		}
+		
+		Batch batch = new Batch(sources.size(), listener);
+		if (sources.isEmpty()) {
+			batch.postFinished();
+			return batch;
+		}
+		mActiveBatches.add(batch);
+		
+		Map<DecodeHintType, Object> hints = mDecodeHints;
+		StillImageDecoder stillImageDecoder = new StillImageDecoder(mMaxImageSize);
+		int index = 0;
+		for (ImageSource source : sources) {
+			DecodeItem decodeItem = new DecodeItem(batch, index++, source,
+					hints, stillImageDecoder, mIsMultipleDecode);
+			batch.mFutures.add(mExecutorService.submit(decodeItem));
+		}
+		return batch;
+	}
+	
+	/**
+	 * 取消全部未完成的批次并释放线程，之后提交批次时重新创建线程
+	 */
+	public synchronized void shutdown() {
+		for (Batch batch : new ArrayList<>(mActiveBatches)) {
+			batch.cancel();
+		}
+		if (mExecutorService != null) {
+			mExecutorService.shutdownNow();
+			mExecutorService = null;
+		}
+	}
+	
+	/**
+	 * 一次提交的图片
+	 */
+	public final class Batch {
+		private final int mCount;
+		private final OnBatchDecodeListener mListener;
+		private final List<Future<?>> mFutures = new ArrayList<>();
+		private final AtomicInteger mFinishedCount = new AtomicInteger();
+		private final AtomicInteger mSuccessCount = new AtomicInteger();
+		private volatile boolean mIsCancelled;
+		
+		Batch(int count, OnBatchDecodeListener listener) {
+			mCount = count;
+			mListener = listener;
+		}
+		
+		/** 图片总数 */
+		public int getCount() {
+			return mCount;
+		}
+		
+		/** 已完成的图片数 */
+		public int getFinishedCount() {
+			return mFinishedCount.get();
+		}
+		
+		/** 识别成功的图片数 */
+		public int getSuccessCount() {
+			return mSuccessCount.get();
+		}
+		
+		public boolean isCancelled() {
+			return mIsCancelled;
+		}
+		
+		/**
+		 * 取消批次，未开始的图片不再解码，之后不再回调
+		 */
+		public void cancel() {
+			mIsCancelled = true;
+			synchronized (BatchDecoder.this) {
+				for (Future<?> future : mFutures) {
+					future.cancel(false);
+				}
+				mActiveBatches.remove(this);
+			}
+		}
+		
+		void postResult(final BatchResult result) {
+			if (result.getStatus() == BatchResult.STATUS_SUCCESS) {
+				mSuccessCount.incrementAndGet();
+			}
+			final boolean isFinished = mFinishedCount.incrementAndGet() == mCount;
+			if (isFinished) {
+				synchronized (BatchDecoder.this) {
+					mActiveBatches.remove(this);
+				}
+			}
+			mResultHandler.post(new Runnable() {
+				@Override
+				public void run() {
+					if (mIsCancelled || mListener == null) {
+						return;
+					}
+					mListener.onItemDecoded(result);
+					if (isFinished) {
+						mListener.onBatchFinished(Batch.this);
+					}
+				}
+			});
+		}
+		
+		void postFinished() {
+			mResultHandler.post(new Runnable() {
+				@Override
+				public void run() {
+					if (!mIsCancelled && mListener != null) {
+						mListener.onBatchFinished(Batch.this);
+					}
+				}
+			});
+		}
+	}
+	
+	/**
+	 * 单张图片解码任务
+	 */
+	private final class DecodeItem implements Runnable {
+		private final Batch mBatch;
+		private final int mIndex;
+		private final ImageSource mSource;
+		private final Map<DecodeHintType, Object> mHints;
+		private final StillImageDecoder mStillImageDecoder;
+		private final boolean mIsMultipleDecode;
+		private final long mSubmitMillis = SystemClock.elapsedRealtime();
+		
+		DecodeItem(Batch batch, int index, ImageSource source, Map<DecodeHintType, Object> hints,
+		           StillImageDecoder stillImageDecoder, boolean multipleDecode) {
+			mBatch = batch;
+			mIndex = index;
+			mSource = source;
+			mHints = hints;
+			mStillImageDecoder = stillImageDecoder;
+			mIsMultipleDecode = multipleDecode;
+		}
+		
+		@Override
+		public void run() {
+			if (mBatch.isCancelled()) {
+				return;
+			}
+			
+			long startMillis = SystemClock.elapsedRealtime();
+			int status;
+			Result[] results = null;
+			Throwable error = null;
+			FormatReader formatReader = new FormatReader(mHints, mFormatRanking);
+			MultipleFormatReader multipleFormatReader = mIsMultipleDecode
+					? new MultipleFormatReader(mHints, formatReader) : null;
+			try {
+				results = mStillImageDecoder.decode(mSource, formatReader, multipleFormatReader, mHints);
+				status = BatchResult.STATUS_SUCCESS;
+			} catch (ReaderException e) {
+				status = BatchResult.STATUS_NOT_FOUND;
+			} catch (Exception e) {
+				status = BatchResult.STATUS_ERROR;
+				error = e;
+			} catch (OutOfMemoryError e) {
+				status = BatchResult.STATUS_ERROR;
+				error = e;
+			}
+			long endMillis = SystemClock.elapsedRealtime();
+			
+			mBatch.postResult(new BatchResult(mIndex, mSource, status, results, error,
+					startMillis - mSubmitMillis, endMillis - startMillis));
+		}
+	}
+	
+	private static final class DecodeThreadFactory implements ThreadFactory {
+		private final AtomicInteger mThreadNumber = new AtomicInteger();
+		
+		@Override
+		public Thread newThread(final Runnable runnable) {
+			return new Thread(new Runnable() {
+				@Override
+				public void run() {
+					Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+					runnable.run();
+				}
+			}, "BatchDecoder-" + mThreadNumber.incrementAndGet());
+		}
+	}
+}
@@ -0,0 +1,75 @@
+package com.kycq.library.scan;
+
+import com.google.zxing.Result;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 批量解码中单张图片的结果
+ */
+public final class BatchResult {
+	/** 识别成功 */
+	public static final int STATUS_SUCCESS = 0;
+	/** 未识别到条码 */
+	public static final int STATUS_NOT_FOUND = 1;
+	/** 图片无法读取或解码出错 */
+	public static final int STATUS_ERROR = 2;
+	
+	private final int mIndex;
+	private final ImageSource mSource;
+	private final int mStatus;
+	private final List<Result> mResults;
+	private final Throwable mError;
+	private final long mQueueMillis;
+	private final long mDecodeMillis;
+	
+	BatchResult(int index, ImageSource source, int status, Result[] results, Throwable error,
+	            long queueMillis, long decodeMillis) {
+		mIndex = index;
+		mSource = source;
+		mStatus = status;
+		mResults = results == null ? Collections.<Result>emptyList()
+				: Collections.unmodifiableList(Arrays.asList(results));
+		mError = error;
+		mQueueMillis = queueMillis;
+		mDecodeMillis = decodeMillis;
+	}
+	
+	/** 在提交列表中的位置 */
+	public int getIndex() {
+		return mIndex;
+	}
+	
+	public ImageSource getSource() {
+		return mSource;
+	}
+	
+	/**
+	 * @return {@link #STATUS_SUCCESS}、{@link #STATUS_NOT_FOUND} 或 {@link #STATUS_ERROR}
+	 */
+	public int getStatus() {
+		return mStatus;
+	}
+	
+	/** 识别到的条码，未识别时为空列表 */
+	public List<Result> getResults() {
+		return mResults;
+	}
+	
+	/** {@link #STATUS_ERROR} 时的异常 */
+	public Throwable getError() {
+		return mError;
+	}
+	
+	/** 提交到开始解码的等待时间 */
+	public long getQueueMillis() {
+		return mQueueMillis;
+	}
+	
+	/** 解码耗时，包括读取图片 */
+	public long getDecodeMillis() {
+		return mDecodeMillis;
+	}
+}
@@ -0,0 +1,587 @@
+package com.kycq.library.scan;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.graphics.ImageFormat;
+import android.graphics.Point;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCaptureSession;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraDevice;
+import android.hardware.camera2.CameraMetadata;
+import android.hardware.camera2.CaptureRequest;
+import android.hardware.camera2.params.StreamConfigurationMap;
+import android.media.Image;
+import android.media.ImageReader;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.util.Size;
+import android.view.Display;
+import android.view.Surface;
+import android.view.SurfaceHolder;
+import android.view.WindowManager;
+
+import com.google.zxing.BarcodeFormat;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 使用 Camera2 的采集后端，Android 5.0 及以上可用
+ * <p>
+ * 通过 {@link ImageReader} 以 YUV_420_888 格式接收预览帧，直接将 Y 平面的缓冲区交给解码，
+ * 按行跨度和像素跨度读取，不复制整帧数据。缓冲区数量即 ImageReader 的最大图像数，
+ * 全部被解码端持有时相机丢弃新帧。关闭相机时仍有图像未归还的 ImageReader 在最后一帧归还后关闭，
+ * 避免解码线程读取已释放的缓冲区。
+ * 对焦使用相机的连续对焦，不响应失焦信号。
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+final class Camera2CaptureBackend implements CaptureBackend, ImageReader.OnImageAvailableListener {
+	/** 默认帧缓冲区数量 */
+	private static final int FRAME_BUFFER_COUNT = 3;
+	/** 等待相机打开的最长时间 */
+	private static final long OPEN_TIMEOUT_MS = 2500L;
+	
+	private final Context mContext;
+	private final android.hardware.camera2.CameraManager mCameraService;
+	private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+	
+	/** 相机设备和会话回调所在线程 */
+	private HandlerThread mCameraThread;
+	private Handler mCameraHandler;
+	
+	private CameraDevice mCameraDevice;
+	private CameraCaptureSession mCaptureSession;
+	private CaptureRequest.Builder mRequestBuilder;
+	private ImageReader mImageReader;
+	private Surface mPreviewSurface;
+	private boolean mIsPreviewing;
+	
+	/** 打开相机时在相机线程写入，可在任意线程读取 */
+	private volatile Point mCameraResolution;
+	private volatile Point mPreviewResolution;
+	private volatile int mCameraRotationAngle;
+	private volatile boolean mIsPreviewMirrored;
+	private boolean mIsFlashSupported;
+	private int mAutoFocusMode = -1;
+	
+	private boolean mIsFlashMode;
+	private int mFrameBufferCount = FRAME_BUFFER_COUNT;
+	private volatile FrameCallback mFrameCallback;
+	
+	/** 保护 {@link #mHeldImages} 和 {@link #mClosingImageReaders}，归还帧时不获取外部类的锁 */
+	private final Object mImageLock = new Object();
+	/** 已回调给解码端、尚未归还的图像及其所属的 ImageReader */
+	private final Map<Image, ImageReader> mHeldImages = new IdentityHashMap<>();
+	/** 已关闭相机、等待图像归还后关闭的 ImageReader */
+	private final List<ImageReader> mClosingImageReaders = new ArrayList<>(1);
+	
+	private PreviewSizePolicy mPreviewSizePolicy;
+	private Collection<BarcodeFormat> mDecodeFormats;
+	private float mFinderWidthRatio = 1F;
+	private float mFinderHeightRatio = 1F;
+	
+	private final CameraCaptureSession.StateCallback mSessionCallback = new CameraCaptureSession.StateCallback() {
+		@Override
+		public void onConfigured(CameraCaptureSession session) {
+			synchronized (Camera2CaptureBackend.this) {
+				if (!mIsPreviewing || mCameraDevice != session.getDevice()) {
+					session.close();
+					return;
+				}
+				mCaptureSession = session;
+				try {
+					mRequestBuilder = mCameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
+					mRequestBuilder.addTarget(mPreviewSurface);
+					mRequestBuilder.addTarget(mImageReader.getSurface());
+					if (mAutoFocusMode >= 0) {
+						mRequestBuilder.set(CaptureRequest.CONTROL_AF_MODE, mAutoFocusMode);
+					}
+					applyRepeatingRequest();
+				} catch (CameraAccessException | IllegalStateException ignored) {
+					ignored.printStackTrace();
+				}
+			}
+		}
+		
+		@Override
+		public void onConfigureFailed(CameraCaptureSession session) {
+			synchronized (Camera2CaptureBackend.this) {
+				mIsPreviewing = false;
+			}
+		}
+	};
+	
+	Camera2CaptureBackend(Context context) {
+		mContext = context;
+		mCameraService = (android.hardware.camera2.CameraManager) context.getSystemService(Context.CAMERA_SERVICE);
+	}
+	
+	/**
+	 * 后置摄像头是否完整支持 Camera2，仅兼容模式时仍使用 {@link android.hardware.Camera}
+	 *
+	 * @param context 上下文
+	 */
+	static boolean isSupported(Context context) {
+		if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+			return false;
+		}
+		android.hardware.camera2.CameraManager cameraService =
+				(android.hardware.camera2.CameraManager) context.getSystemService(Context.CAMERA_SERVICE);
+		try {
+			String cameraId = findCameraId(cameraService);
+			if (cameraId == null) {
+				return false;
+			}
+			Integer level = cameraService.getCameraCharacteristics(cameraId)
+					.get(CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL);
+			return level != null && level != CameraMetadata.INFO_SUPPORTED_HARDWARE_LEVEL_LEGACY;
+		} catch (CameraAccessException | RuntimeException ignored) {
+			return false;
+		}
+	}
+	
+	/**
+	 * 优先选择后置摄像头
+	 *
+	 * @return 没有摄像头时返回 null
+	 */
+	private static String findCameraId(android.hardware.camera2.CameraManager cameraService)
+			throws CameraAccessException {
+		String[] cameraIds = cameraService.getCameraIdList();
+		for (String cameraId : cameraIds) {
+			Integer facing = cameraService.getCameraCharacteristics(cameraId)
+					.get(CameraCharacteristics.LENS_FACING);
+			if (facing != null && facing == CameraMetadata.LENS_FACING_BACK) {
+				return cameraId;
+			}
+		}
+		return cameraIds.length > 0 ? cameraIds[0] : null;
+	}
+	
+	@Override
+	public boolean isCamera2() {
+		return true;
+	}
+	
+	@Override
+	public synchronized boolean isOpen() {
+		return mCameraDevice != null;
+	}
+	
+	@Override
+	public Point getCameraResolution() {
+		return mCameraResolution;
+	}
+	
+	@Override
+	public Point getPreviewResolution() {
+		return mPreviewResolution;
+	}
+	
+	@Override
+	public int getCameraRotationAngle() {
+		return mCameraRotationAngle;
+	}
+	
+	@Override
+	public boolean isPreviewMirrored() {
+		return mIsPreviewMirrored;
+	}
+	
+	@Override
+	public synchronized void setFlashMode(boolean flashMode) {
+		mIsFlashMode = flashMode;
+		if (mCaptureSession != null && mRequestBuilder != null) {
+			try {
+				applyRepeatingRequest();
+			} catch (CameraAccessException | IllegalStateException ignored) {
+				ignored.printStackTrace();
+			}
+		}
+	}
+	
+	@Override
+	public synchronized boolean isFlashMode() {
+		return mIsFlashMode;
+	}
+	
+	@Override
+	public synchronized void setPreviewSizePolicy(PreviewSizePolicy previewSizePolicy,
+	                                              Collection<BarcodeFormat> decodeFormats,
+	                                              float finderWidthRatio, float finderHeightRatio) {
+		mPreviewSizePolicy = previewSizePolicy;
+		mDecodeFormats = decodeFormats;
+		mFinderWidthRatio = finderWidthRatio;
+		mFinderHeightRatio = finderHeightRatio;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * ImageReader 的最大图像数在打开相机时确定，打开后修改在下次打开时生效。
+	 */
+	@Override
+	public synchronized void setFrameBufferCount(int frameBufferCount) {
+		mFrameBufferCount = frameBufferCount;
+	}
+	
+	@Override
+	public void setFrameCallback(FrameCallback frameCallback) {
+		mFrameCallback = frameCallback;
+	}
+	
+	@Override
+	public void releaseFrame(CaptureFrame frame) {
+		if (!(frame.token instanceof Image)) {
+			return;
+		}
+		Image image = (Image) frame.token;
+		synchronized (mImageLock) {
+			ImageReader imageReader = mHeldImages.remove(image);
+			image.close();
+			if (imageReader != null && !mHeldImages.containsValue(imageReader)
+					&& mClosingImageReaders.remove(imageReader)) {
+				imageReader.close();
+			}
+		}
+	}
+	
+	@Override
+	public void onFrameBlurry() {
+	}
+	
+	@Override
+	public void onDecodeFailed() {
+	}
+	
+	@Override
+	public void onDecodeSucceeded() {
+	}
+	
+	@Override
+	public synchronized void prepareDriver() throws IOException {
+		if (isOpen()) {
+			return;
+		}
+		
+		if (mCameraThread == null) {
+			mCameraThread = new HandlerThread("CameraBackground");
+			mCameraThread.start();
+			mCameraHandler = new Handler(mCameraThread.getLooper());
+		}
+		
+		OpenCallback openCallback;
+		try {
+			String cameraId = findCameraId(mCameraService);
+			if (cameraId == null) {
+				throw new IOException("No camera available");
+			}
+			initFromCharacteristics(mCameraService.getCameraCharacteristics(cameraId));
+			
+			openCallback = new OpenCallback();
+			mCameraService.openCamera(cameraId, openCallback, mCameraHandler);
+		} catch (CameraAccessException | SecurityException e) {
+			throw new IOException(e.toString());
+		}
+		CameraDevice cameraDevice = openCallback.await();
+		if (cameraDevice == null) {
+			throw new IOException("Camera open failed");
+		}
+		mCameraDevice = cameraDevice;
+		
+		mImageReader = ImageReader.newInstance(mCameraResolution.x, mCameraResolution.y,
+				ImageFormat.YUV_420_888, Math.max(2, mFrameBufferCount));
+		// 与 Camera 一致，在打开相机的线程回调预览帧，线程没有消息循环时在主线程回调
+		Looper looper = Looper.myLooper();
+		mImageReader.setOnImageAvailableListener(this,
+				new Handler(looper != null ? looper : Looper.getMainLooper()));
+	}
+	
+	@Override
+	public synchronized void openDriver(final SurfaceHolder surfaceHolder) throws IOException {
+		prepareDriver();
+		mPreviewSurface = surfaceHolder.getSurface();
+		
+		final int width = mCameraResolution.x;
+		final int height = mCameraResolution.y;
+		// 修改画面尺寸需在主线程，尺寸生效后 surfaceChanged 会重新开始预览
+		mMainHandler.post(new Runnable() {
+			@Override
+			public void run() {
+				surfaceHolder.setFixedSize(width, height);
+			}
+		});
+	}
+	
+	private void initFromCharacteristics(CameraCharacteristics characteristics) throws IOException {
+		WindowManager manager = (WindowManager) mContext.getSystemService(Context.WINDOW_SERVICE);
+		Display display = manager.getDefaultDisplay();
+		int rotationFromNaturalToDisplay = CameraConfigManager.getDisplayRotation(display);
+		
+		Integer sensorOrientation = characteristics.get(CameraCharacteristics.SENSOR_ORIENTATION);
+		int rotationFromNaturalToCamera = sensorOrientation != null ? sensorOrientation : 90;
+		Integer facing = characteristics.get(CameraCharacteristics.LENS_FACING);
+		mIsPreviewMirrored = facing != null && facing == CameraMetadata.LENS_FACING_FRONT;
+		if (mIsPreviewMirrored) {
+			rotationFromNaturalToCamera = (360 - rotationFromNaturalToCamera) % 360;
+		}
+		mCameraRotationAngle = (360 + rotationFromNaturalToCamera - rotationFromNaturalToDisplay) % 360;
+		
+		Boolean flashAvailable = characteristics.get(CameraCharacteristics.FLASH_INFO_AVAILABLE);
+		mIsFlashSupported = flashAvailable != null && flashAvailable;
+		
+		mAutoFocusMode = -1;
+		int[] autoFocusModes = characteristics.get(CameraCharacteristics.CONTROL_AF_AVAILABLE_MODES);
+		if (autoFocusModes != null) {
+			for (int mode : autoFocusModes) {
+				if (mode == CameraMetadata.CONTROL_AF_MODE_CONTINUOUS_PICTURE) {
+					mAutoFocusMode = mode;
+					break;
+				}
+				if (mode == CameraMetadata.CONTROL_AF_MODE_CONTINUOUS_VIDEO) {
+					mAutoFocusMode = mode;
+				}
+			}
+		}
+		
+		StreamConfigurationMap configurationMap =
+				characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+		if (configurationMap == null) {
+			throw new IOException("No stream configuration");
+		}
+		Size[] frameSizes = configurationMap.getOutputSizes(ImageFormat.YUV_420_888);
+		if (frameSizes == null || frameSizes.length == 0) {
+			throw new IOException("YUV_420_888 not supported");
+		}
+		// 预览画面与预览帧使用相同分辨率，需两者都支持
+		List<Size> previewSizes = Arrays.asList(configurationMap.getOutputSizes(SurfaceHolder.class));
+		List<Point> supportedSizes = new ArrayList<>(frameSizes.length);
+		for (Size size : frameSizes) {
+			if (previewSizes.contains(size)) {
+				supportedSizes.add(new Point(size.getWidth(), size.getHeight()));
+			}
+		}
+		if (supportedSizes.isEmpty()) {
+			for (Size size : frameSizes) {
+				supportedSizes.add(new Point(size.getWidth(), size.getHeight()));
+			}
+		}
+		
+		Point screenResolution = new Point();
+		display.getSize(screenResolution);
+		
+		// 未设置策略时按默认格式和整个画面估算
+		PreviewSizePolicy previewSizePolicy = mPreviewSizePolicy;
+		Collection<BarcodeFormat> decodeFormats = mDecodeFormats;
+		float finderWidthRatio = mFinderWidthRatio;
+		float finderHeightRatio = mFinderHeightRatio;
+		if (previewSizePolicy == null || decodeFormats == null) {
+			previewSizePolicy = new PreviewSizePolicy();
+			decodeFormats = DecodeFormat.getDefaultFormats();
+			finderWidthRatio = 1F;
+			finderHeightRatio = 1F;
+		}
+		mCameraResolution = previewSizePolicy.selectPreviewSize(supportedSizes, screenResolution,
+				mCameraRotationAngle, finderWidthRatio, finderHeightRatio, decodeFormats);
+		
+		boolean isScreenPortrait = screenResolution.x < screenResolution.y;
+		boolean isPreviewSizePortrait = mCameraResolution.x < mCameraResolution.y;
+		if (isScreenPortrait == isPreviewSizePortrait) {
+			mPreviewResolution = new Point(mCameraResolution.x, mCameraResolution.y);
+		} else {
+			// noinspection SuspiciousNameCombination
+			mPreviewResolution = new Point(mCameraResolution.y, mCameraResolution.x);
+		}
+	}
+	
+	/**
+	 * 已打开的相机断开或出错
+	 */
+	private synchronized void onCameraLost(CameraDevice camera) {
+		if (mCameraDevice == camera) {
+			mCameraDevice = null;
+			mCaptureSession = null;
+			mRequestBuilder = null;
+			mIsPreviewing = false;
+		}
+	}
+	
+	@Override
+	public synchronized void closeDriver() {
+		stopPreview();
+		if (mCameraDevice != null) {
+			mCameraDevice.close();
+			mCameraDevice = null;
+		}
+		if (mImageReader != null) {
+			closeImageReader(mImageReader);
+			mImageReader = null;
+		}
+		mPreviewSurface = null;
+		if (mCameraThread != null) {
+			mCameraThread.quitSafely();
+			mCameraThread = null;
+			mCameraHandler = null;
+		}
+	}
+	
+	/**
+	 * 关闭 ImageReader，解码线程仍持有其图像时推迟到最后一帧归还后关闭
+	 */
+	private void closeImageReader(ImageReader imageReader) {
+		imageReader.setOnImageAvailableListener(null, null);
+		synchronized (mImageLock) {
+			if (mHeldImages.containsValue(imageReader)) {
+				mClosingImageReaders.add(imageReader);
+			} else {
+				imageReader.close();
+			}
+		}
+	}
+	
+	@Override
+	public synchronized void startPreview() {
+		if (mCameraDevice == null || mIsPreviewing) {
+			return;
+		}
+		mIsPreviewing = true;
+		try {
+			mCameraDevice.createCaptureSession(Arrays.asList(mPreviewSurface, mImageReader.getSurface()),
+					mSessionCallback, mCameraHandler);
+		} catch (CameraAccessException | IllegalStateException ignored) {
+			ignored.printStackTrace();
+			mIsPreviewing = false;
+		}
+	}
+	
+	@Override
+	public synchronized void stopPreview() {
+		mIsPreviewing = false;
+		if (mCaptureSession != null) {
+			mCaptureSession.close();
+			mCaptureSession = null;
+		}
+		mRequestBuilder = null;
+	}
+	
+	private void applyRepeatingRequest() throws CameraAccessException {
+		mRequestBuilder.set(CaptureRequest.CONTROL_MODE, CameraMetadata.CONTROL_MODE_AUTO);
+		if (mIsFlashSupported) {
+			// 手电筒模式需关闭自动曝光的闪光控制
+			mRequestBuilder.set(CaptureRequest.CONTROL_AE_MODE, CameraMetadata.CONTROL_AE_MODE_ON);
+			mRequestBuilder.set(CaptureRequest.FLASH_MODE, mIsFlashMode
+					? CameraMetadata.FLASH_MODE_TORCH : CameraMetadata.FLASH_MODE_OFF);
+		}
+		mCaptureSession.setRepeatingRequest(mRequestBuilder.build(), null, mCameraHandler);
+	}
+	
+	@Override
+	public void onImageAvailable(ImageReader reader) {
+		Image image;
+		try {
+			image = reader.acquireLatestImage();
+		} catch (IllegalStateException ignored) {
+			// 缓冲区都被解码端持有，丢弃新帧
+			return;
+		}
+		if (image == null) {
+			return;
+		}
+		FrameCallback frameCallback = mFrameCallback;
+		if (frameCallback == null) {
+			image.close();
+			return;
+		}
+		
+		Image.Plane plane = image.getPlanes()[0];
+		CaptureFrame frame = new CaptureFrame();
+		frame.backend = this;
+		frame.plane = plane.getBuffer();
+		frame.rowStride = plane.getRowStride();
+		frame.pixelStride = plane.getPixelStride();
+		frame.width = image.getWidth();
+		frame.height = image.getHeight();
+		frame.token = image;
+		synchronized (mImageLock) {
+			mHeldImages.put(image, reader);
+		}
+		frameCallback.onFrame(frame);
+	}
+	
+	/**
+	 * 打开相机的回调，每次打开使用新的实例
+	 * <p>
+	 * 打开过程中 {@link #openDriver(SurfaceHolder)} 持有锁等待，回调不能获取外部类的锁；
+	 * 等待超时后才打开的相机直接关闭。
+	 */
+	private final class OpenCallback extends CameraDevice.StateCallback {
+		private final CountDownLatch mLatch = new CountDownLatch(1);
+		private CameraDevice mDevice;
+		private boolean mIsOpened;
+		private boolean mIsAbandoned;
+		
+		/**
+		 * @return 打开失败或超时返回 null
+		 */
+		CameraDevice await() {
+			try {
+				mLatch.await(OPEN_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			synchronized (this) {
+				if (mDevice == null) {
+					mIsAbandoned = true;
+				}
+				return mDevice;
+			}
+		}
+		
+		@Override
+		public void onOpened(CameraDevice camera) {
+			synchronized (this) {
+				mIsOpened = true;
+				if (mIsAbandoned) {
+					camera.close();
+					return;
+				}
+				mDevice = camera;
+			}
+			mLatch.countDown();
+		}
+		
+		@Override
+		public void onDisconnected(CameraDevice camera) {
+			onCameraFailed(camera);
+		}
+		
+		@Override
+		public void onError(CameraDevice camera, int error) {
+			onCameraFailed(camera);
+		}
+		
+		private void onCameraFailed(CameraDevice camera) {
+			camera.close();
+			boolean isOpened;
+			synchronized (this) {
+				isOpened = mIsOpened && !mIsAbandoned;
+				mIsOpened = true;
+				mDevice = null;
+			}
+			if (isOpened) {
+				onCameraLost(camera);
+			}
+			mLatch.countDown();
+		}
+	}
+}
@@ -7,10 +7,13 @@ import android.view.Display;
 import android.view.Surface;
 import android.view.WindowManager;
 
+import com.google.zxing.BarcodeFormat;
+
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.EnumSet;
 import java.util.Iterator;
 import java.util.List;
 
@@ -19,16 +22,105 @@ class CameraConfigManager {
 	
 	/** 相机旋转角度 */
 	int mCameraRotationAngle;
+	/** 预览画面是否镜像显示（前置摄像头） */
+	boolean mIsPreviewMirrored;
 	/** 相机分辨率 */
 	Point mCameraResolution;
 	/** 预览分辨率 */
 	Point mPreviewResolution;
 	
-	void initFromCameraParameters(Context context, OpenCamera openCamera) {
-		Camera.Parameters cameraParameters = openCamera.getCamera().getParameters();
+	/** 预览分辨率选择策略，为 null 时按屏幕分辨率选择 */
+	PreviewSizePolicy mPreviewSizePolicy;
+	/** 解码格式，用于估算需要的分辨率 */
+	Collection<BarcodeFormat> mDecodeFormats;
+	/** 扫描框宽度占预览画面的比例 */
+	float mFinderWidthRatio = 1F;
+	/** 扫描框高度占预览画面的比例 */
+	float mFinderHeightRatio = 1F;
+	
+	/** 已验证可用的相机配置 */
+	private final CameraProfileStore mProfileStore;
+	/** 当前的分辨率选择条件 */
+	private String mSelectionKey;
+	/** 当前使用的相机配置，没有时为 null */
+	private CameraProfileStore.Profile mProfile;
+	/** 最近一次设置的对焦模式 */
+	private String mFocusMode;
+	
+	CameraConfigManager(CameraProfileStore profileStore) {
+		mProfileStore = profileStore;
+	}
+	
+	void initFromCameraParameters(Context context, OpenCamera openCamera, Camera.Parameters cameraParameters) {
 		WindowManager manager = (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
 		Display display = manager.getDefaultDisplay();
 		
+		int rotationFromNaturalToDisplay = getDisplayRotation(display);
+		
+		int rotationFromNaturalToCamera = openCamera.getOrientation();
+		
+		mIsPreviewMirrored = openCamera.getFacing() == CameraFacing.FRONT;
+		if (mIsPreviewMirrored) {
+			rotationFromNaturalToCamera = (360 - rotationFromNaturalToCamera) % 360;
+		}
+		
+		mCameraRotationAngle = (360 + rotationFromNaturalToCamera - rotationFromNaturalToDisplay) % 360;
+		
+		Point screenResolution = new Point();
+		display.getSize(screenResolution);
+		
+		// 选择条件一致且仍被支持时直接使用保存的配置
+		int cameraIndex = openCamera.getIndex();
+		mSelectionKey = getSelectionKey(screenResolution);
+		mProfile = mProfileStore.load(cameraIndex, mSelectionKey);
+		if (mProfile != null && !mProfile.isSupportedBy(cameraParameters)) {
+			mProfileStore.clear(cameraIndex);
+			mProfile = null;
+		}
+		
+		mCameraResolution = null;
+		if (mProfile != null) {
+			mCameraResolution = new Point(mProfile.previewWidth, mProfile.previewHeight);
+		} else if (mPreviewSizePolicy != null && mDecodeFormats != null) {
+			mCameraResolution = findPolicyPreviewSizeValue(cameraParameters, screenResolution);
+		}
+		if (mCameraResolution == null) {
+			mCameraResolution = findBestPreviewSizeValue(cameraParameters, screenResolution);
+		}
+		
+		boolean isScreenPortrait = screenResolution.x < screenResolution.y;
+		boolean isPreviewSizePortrait = mCameraResolution.x < mCameraResolution.y;
+		
+		if (isScreenPortrait == isPreviewSizePortrait) {
+			mPreviewResolution = new Point(mCameraResolution.x, mCameraResolution.y);
+		} else {
+			// noinspection SuspiciousNameCombination
+			mPreviewResolution = new Point(mCameraResolution.y, mCameraResolution.x);
+		}
+	}
+	
+	/**
+	 * 获取影响预览分辨率选择的条件
+	 */
+	private String getSelectionKey(Point screenResolution) {
+		StringBuilder selectionKey = new StringBuilder();
+		selectionKey.append(screenResolution.x).append('x').append(screenResolution.y)
+				.append(',').append(mCameraRotationAngle);
+		if (mPreviewSizePolicy != null && mDecodeFormats != null) {
+			EnumSet<BarcodeFormat> decodeFormats = EnumSet.noneOf(BarcodeFormat.class);
+			decodeFormats.addAll(mDecodeFormats);
+			selectionKey.append(',').append(mPreviewSizePolicy.getSelectionKey())
+					.append(',').append(decodeFormats)
+					.append(',').append(mFinderWidthRatio)
+					.append(',').append(mFinderHeightRatio);
+		}
+		return selectionKey.toString();
+	}
+	
+	/**
+	 * 获取屏幕从自然方向顺时针旋转的角度
+	 */
+	static int getDisplayRotation(Display display) {
 		int displayRotation = display.getRotation();
 		int rotationFromNaturalToDisplay;
 		switch (displayRotation) {
@@ -51,54 +143,95 @@ class CameraConfigManager {
 					throw new IllegalArgumentException("Bad rotation: " + displayRotation);
 				}
 		}
-		
-		int rotationFromNaturalToCamera = openCamera.getOrientation();
-		
-		if (openCamera.getFacing() == CameraFacing.FRONT) {
-			rotationFromNaturalToCamera = (360 - rotationFromNaturalToCamera) % 360;
-		}
-		
-		mCameraRotationAngle = (360 + rotationFromNaturalToCamera - rotationFromNaturalToDisplay) % 360;
-		
-		Point screenResolution = new Point();
-		display.getSize(screenResolution);
-		
-		mCameraResolution = findBestPreviewSizeValue(cameraParameters, screenResolution);
-		
-		boolean isScreenPortrait = screenResolution.x < screenResolution.y;
-		boolean isPreviewSizePortrait = mCameraResolution.x < mCameraResolution.y;
-		
-		if (isScreenPortrait == isPreviewSizePortrait) {
-			mPreviewResolution = new Point(mCameraResolution.x, mCameraResolution.y);
-		} else {
-			// noinspection SuspiciousNameCombination
-			mPreviewResolution = new Point(mCameraResolution.y, mCameraResolution.x);
+		return rotationFromNaturalToDisplay;
+	}
+	
+	/**
+	 * 设置相机参数并保存可用的配置
+	 * <p>
+	 * 完整参数被拒绝时只设置预览分辨率重试，并记录下来，下次启动直接只设置预览分辨率。
+	 * 保存的配置也无法应用时删除，下次启动重新选择。
+	 */
+	void configureCamera(OpenCamera openCamera, CameraParameters parameters) {
+		boolean safeMode = mProfile != null && mProfile.safeMode;
+		try {
+			setDesiredCameraParameters(openCamera, parameters, safeMode);
+		} catch (RuntimeException re) {
+			re.printStackTrace();
+			if (safeMode) {
+				discardProfile(openCamera);
+				return;
+			}
+			// 应用失败时快照已恢复为相机当前参数，只设置预览分辨率重试
+			safeMode = true;
+			try {
+				setDesiredCameraParameters(openCamera, parameters, true);
+			} catch (RuntimeException ignored) {
+				ignored.printStackTrace();
+				discardProfile(openCamera);
+				return;
+			}
 		}
+		saveProfile(openCamera, safeMode);
 	}
 	
-	void setDesiredCameraParameters(OpenCamera openCamera, boolean safeMode) {
-		Camera theCamera = openCamera.getCamera();
-		Camera.Parameters cameraParameters = theCamera.getParameters();
-		if (cameraParameters == null) {
+	private void saveProfile(OpenCamera openCamera, boolean safeMode) {
+		if (mSelectionKey == null) {
 			return;
 		}
+		CameraProfileStore.Profile profile = new CameraProfileStore.Profile();
+		profile.selectionKey = mSelectionKey;
+		profile.previewWidth = mCameraResolution.x;
+		profile.previewHeight = mCameraResolution.y;
+		profile.focusMode = mFocusMode;
+		profile.safeMode = safeMode;
+		if (!profile.isSameAs(mProfile)) {
+			mProfileStore.save(openCamera.getIndex(), profile);
+		}
+		mProfile = profile;
+	}
+	
+	private void discardProfile(OpenCamera openCamera) {
+		if (mProfile != null) {
+			mProfileStore.clear(openCamera.getIndex());
+			mProfile = null;
+		}
+	}
+	
+	/**
+	 * 在参数快照上设置对焦模式和预览分辨率，与快照上的其他修改一起应用
+	 *
+	 * @param safeMode 为 true 时只设置预览分辨率
+	 */
+	private void setDesiredCameraParameters(OpenCamera openCamera, CameraParameters parameters, boolean safeMode) {
+		Camera theCamera = openCamera.getCamera();
+		Camera.Parameters cameraParameters = parameters.edit();
 		
 		String focusMode = null;
 		if (!safeMode) {
-			List<String> supportedFocusModes = cameraParameters.getSupportedFocusModes();
-			focusMode = findSettableValue(supportedFocusModes, Camera.Parameters.FOCUS_MODE_AUTO);
+			if (mProfile != null) {
+				focusMode = mProfile.focusMode;
+			} else {
+				List<String> supportedFocusModes = cameraParameters.getSupportedFocusModes();
+				// 优先连续对焦，失焦时由 AutoFocusManager 补充触发
+				focusMode = findSettableValue(supportedFocusModes,
+						Camera.Parameters.FOCUS_MODE_CONTINUOUS_PICTURE,
+						Camera.Parameters.FOCUS_MODE_AUTO);
+			}
 		}
+		mFocusMode = focusMode;
 		if (focusMode != null) {
 			cameraParameters.setFocusMode(focusMode);
 		}
 		
 		cameraParameters.setPreviewSize(mCameraResolution.x, mCameraResolution.y);
-
-		theCamera.setParameters(cameraParameters);
+		
+		parameters.apply();
 		
 		theCamera.setDisplayOrientation(mCameraRotationAngle);
 		
-		Camera.Parameters afterParameters = theCamera.getParameters();
+		// 部分设备会调整预览分辨率，应用后读取一次实际值
+		Camera.Parameters afterParameters = parameters.reload();
 		Camera.Size afterSize = afterParameters.getPreviewSize();
 		if (afterSize != null &&
 				(mCameraResolution.x != afterSize.width || mCameraResolution.y != afterSize.height)) {
@@ -107,6 +240,25 @@ class CameraConfigManager {
 		}
 	}
 	
+	/**
+	 * 按解码需求选择预览分辨率
+	 *
+	 * @return 没有支持列表时返回 null
+	 */
+	private Point findPolicyPreviewSizeValue(Camera.Parameters parameters, Point screenResolution) {
+		List<Camera.Size> rawSupportedSizes = parameters.getSupportedPreviewSizes();
+		if (rawSupportedSizes == null) {
+			return null;
+		}
+		
+		List<Point> supportedSizes = new ArrayList<>(rawSupportedSizes.size());
+		for (Camera.Size size : rawSupportedSizes) {
+			supportedSizes.add(new Point(size.width, size.height));
+		}
+		return mPreviewSizePolicy.selectPreviewSize(supportedSizes, screenResolution, mCameraRotationAngle,
+				mFinderWidthRatio, mFinderHeightRatio, mDecodeFormats);
+	}
+	
 	private static Point findBestPreviewSizeValue(Camera.Parameters parameters, Point screenResolution) {
 		List<Camera.Size> rawSupportedSizes = parameters.getSupportedPreviewSizes();
 		if (rawSupportedSizes == null) {
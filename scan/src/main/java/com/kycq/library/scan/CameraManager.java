@@ -1,17 +1,35 @@
 package com.kycq.library.scan;
 
 import android.content.Context;
+import android.graphics.ImageFormat;
 import android.graphics.Point;
 import android.hardware.Camera;
+import android.os.Looper;
 import android.view.SurfaceHolder;
 
+import com.google.zxing.BarcodeFormat;
+
 import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 
-class CameraManager {
+/**
+ * 使用 {@link Camera} 的采集后端，所有设备都可用
+ */
+class CameraManager implements CaptureBackend {
+	/** 默认预览缓冲区数量 */
+	private static final int PREVIEW_BUFFER_COUNT = 3;
+	
 	private Context mContext;
 	
 	private CameraConfigManager mCameraConfigManager;
 	private OpenCamera mOpenCamera;
+	/** 相机参数快照，相机打开期间有效 */
+	private CameraParameters mCameraParameters;
 	
 	private boolean mIsInitialized;
 	private boolean mIsPreviewing;
@@ -20,127 +38,315 @@ class CameraManager {
 	
 	private boolean mIsFlashMode;
 	
+	/** 预览缓冲区数量 */
+	private int mPreviewBufferCount = PREVIEW_BUFFER_COUNT;
+	/** 预览缓冲区池 */
+	private final List<byte[]> mPreviewBuffers = new ArrayList<>(PREVIEW_BUFFER_COUNT);
+	/** 未交给相机也未被持有的缓冲区 */
+	private final ArrayDeque<byte[]> mFreePreviewBuffers = new ArrayDeque<>(PREVIEW_BUFFER_COUNT);
+	/** 已回调给解码端、尚未归还的缓冲区 */
+	private final Map<byte[], Boolean> mHeldPreviewBuffers = new IdentityHashMap<>(PREVIEW_BUFFER_COUNT);
+	private FrameCallback mFrameCallback;
+	private final Camera.PreviewCallback mBufferPreviewCallback = new Camera.PreviewCallback() {
+		@Override
+		public void onPreviewFrame(byte[] data, Camera camera) {
+			FrameCallback frameCallback;
+			CaptureFrame frame;
+			synchronized (CameraManager.this) {
+				frameCallback = mFrameCallback;
+				if (data == null || frameCallback == null) {
+					return;
+				}
+				mHeldPreviewBuffers.put(data, Boolean.TRUE);
+				
+				Point cameraResolution = mCameraConfigManager.mCameraResolution;
+				frame = new CaptureFrame();
+				frame.backend = CameraManager.this;
+				frame.data = data;
+				frame.width = cameraResolution.x;
+				frame.height = cameraResolution.y;
+			}
+			frameCallback.onFrame(frame);
+		}
+	};
+	
 	CameraManager(Context context) {
 		mContext = context;
-		mCameraConfigManager = new CameraConfigManager();
+		mCameraConfigManager = new CameraConfigManager(new CameraProfileStore(context));
+	}
+	
+	@Override
+	public boolean isCamera2() {
+		return false;
 	}
 	
-	synchronized boolean isOpen() {
+	@Override
+	public synchronized boolean isOpen() {
 		return mOpenCamera != null && mOpenCamera.getCamera() != null;
 	}
 	
-	Point getCameraResolution() {
+	@Override
+	public Point getCameraResolution() {
 		return mCameraConfigManager.mCameraResolution;
 	}
 	
-	Point getPreviewResolution() {
+	@Override
+	public Point getPreviewResolution() {
 		return mCameraConfigManager.mPreviewResolution;
 	}
 	
-	int getCameraRotationAngle() {
+	@Override
+	public int getCameraRotationAngle() {
 		return mCameraConfigManager.mCameraRotationAngle;
 	}
 	
-	void setPreviewCallback(Camera.PreviewCallback previewCallback) {
-		if (isOpen()) {
-			mOpenCamera.getCamera().setOneShotPreviewCallback(previewCallback);
+	@Override
+	public boolean isPreviewMirrored() {
+		return mCameraConfigManager.mIsPreviewMirrored;
+	}
+	
+	@Override
+	public synchronized void setFrameBufferCount(int frameBufferCount) {
+		mPreviewBufferCount = frameBufferCount;
+	}
+	
+	/**
+	 * 使用复用缓冲区持续回调预览帧
+	 * <p>
+	 * 回调得到的帧需通过 {@link #releaseFrame(CaptureFrame)} 归还，传入 null 停止回调。
+	 *
+	 * @param frameCallback 帧回调
+	 */
+	@Override
+	public synchronized void setFrameCallback(FrameCallback frameCallback) {
+		if (!isOpen()) {
+			return;
+		}
+		Camera theCamera = mOpenCamera.getCamera();
+		
+		if (frameCallback == null) {
+			if (mFrameCallback != null) {
+				mFrameCallback = null;
+				// 回调置空后相机会清空缓冲队列
+				theCamera.setPreviewCallbackWithBuffer(null);
+				mFreePreviewBuffers.clear();
+				for (byte[] buffer : mPreviewBuffers) {
+					if (!mHeldPreviewBuffers.containsKey(buffer)) {
+						mFreePreviewBuffers.add(buffer);
+					}
+				}
+			}
+			return;
+		}
+		
+		int bufferSize = getPreviewBufferSize();
+		if (mPreviewBuffers.size() != mPreviewBufferCount || mPreviewBuffers.get(0).length != bufferSize) {
+			if (mFrameCallback != null) {
+				theCamera.setPreviewCallbackWithBuffer(null);
+			}
+			mPreviewBuffers.clear();
+			mFreePreviewBuffers.clear();
+			mHeldPreviewBuffers.clear();
+			for (int index = 0; index < mPreviewBufferCount; index++) {
+				byte[] buffer = new byte[bufferSize];
+				mPreviewBuffers.add(buffer);
+				mFreePreviewBuffers.add(buffer);
+			}
+		}
+		
+		mFrameCallback = frameCallback;
+		theCamera.setPreviewCallbackWithBuffer(mBufferPreviewCallback);
+		byte[] buffer;
+		while ((buffer = mFreePreviewBuffers.poll()) != null) {
+			theCamera.addCallbackBuffer(buffer);
 		}
 	}
 	
-	void setFlashMode(boolean isFlashMode) {
+	/**
+	 * 归还预览帧，缓冲区重新交给相机
+	 *
+	 * @param frame 帧回调得到的帧
+	 */
+	@Override
+	public synchronized void releaseFrame(CaptureFrame frame) {
+		byte[] buffer = frame.data;
+		if (buffer == null || mHeldPreviewBuffers.remove(buffer) == null) {
+			return;
+		}
+		if (isOpen() && mFrameCallback != null) {
+			mOpenCamera.getCamera().addCallbackBuffer(buffer);
+		} else {
+			mFreePreviewBuffers.add(buffer);
+		}
+	}
+	
+	private int getPreviewBufferSize() {
+		Point cameraResolution = mCameraConfigManager.mCameraResolution;
+		int bitsPerPixel = ImageFormat.getBitsPerPixel(ImageFormat.NV21);
+		return cameraResolution.x * cameraResolution.y * bitsPerPixel / 8;
+	}
+	
+	@Override
+	public synchronized void setFlashMode(boolean isFlashMode) {
 		mIsFlashMode = isFlashMode;
 		
 		if (isOpen()) {
-			Camera.Parameters parameters = mOpenCamera.getCamera().getParameters();
-			if (isFlashMode) {
-				parameters.setFlashMode(Camera.Parameters.FLASH_MODE_TORCH);
-			} else {
-				parameters.setFlashMode(Camera.Parameters.FLASH_MODE_OFF);
+			editFlashMode(mCameraParameters);
+			try {
+				mCameraParameters.apply();
+			} catch (RuntimeException e) {
+				e.printStackTrace();
 			}
-			mOpenCamera.getCamera().setParameters(parameters);
 		}
 	}
 	
-	boolean isFlashMode() {
+	/**
+	 * 在参数快照上设置闪光灯，相机不支持或已是目标模式时不修改
+	 */
+	private void editFlashMode(CameraParameters cameraParameters) {
+		Camera.Parameters parameters = cameraParameters.get();
+		String flashMode = mIsFlashMode ? Camera.Parameters.FLASH_MODE_TORCH : Camera.Parameters.FLASH_MODE_OFF;
+		List<String> supportedFlashModes = parameters.getSupportedFlashModes();
+		if (supportedFlashModes == null || !supportedFlashModes.contains(flashMode)
+				|| flashMode.equals(parameters.getFlashMode())) {
+			return;
+		}
+		cameraParameters.edit().setFlashMode(flashMode);
+	}
+	
+	@Override
+	public synchronized boolean isFlashMode() {
 		return mIsFlashMode;
 	}
 	
-	synchronized void openDriver(SurfaceHolder surfaceHolder) throws IOException {
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * 选择策略为 null 时按屏幕分辨率选择。
+	 */
+	@Override
+	public synchronized void setPreviewSizePolicy(PreviewSizePolicy previewSizePolicy,
+	                                              Collection<BarcodeFormat> decodeFormats,
+	                                              float finderWidthRatio, float finderHeightRatio) {
+		mCameraConfigManager.mPreviewSizePolicy = previewSizePolicy;
+		mCameraConfigManager.mDecodeFormats = decodeFormats;
+		mCameraConfigManager.mFinderWidthRatio = finderWidthRatio;
+		mCameraConfigManager.mFinderHeightRatio = finderHeightRatio;
+		if (!isOpen()) {
+			// 重新选择分辨率
+			mIsInitialized = false;
+		}
+	}
+	
+	@Override
+	public synchronized void prepareDriver() throws IOException {
 		if (isOpen()) {
 			return;
 		}
-		OpenCamera theOpenCamera = mOpenCamera;
+		OpenCamera theOpenCamera;
+		try {
+			theOpenCamera = OpenCamera.open();
+		} catch (RuntimeException e) {
+			throw new IOException(e.toString());
+		}
 		if (theOpenCamera == null) {
-			try {
-				theOpenCamera = OpenCamera.open();
-			} catch (Exception ignored) {
-				ignored.printStackTrace();
-			}
-			if (theOpenCamera == null) {
-				return;
-			}
-			mOpenCamera = theOpenCamera;
+			throw new IOException("No camera available");
 		}
+		mOpenCamera = theOpenCamera;
 		
-		theOpenCamera.getCamera().setPreviewDisplay(surfaceHolder);
-		Camera.Parameters parameters = theOpenCamera.getCamera().getParameters();
-		if (mIsFlashMode) {
-			parameters.setFlashMode(Camera.Parameters.FLASH_MODE_TORCH);
-		} else {
-			parameters.setFlashMode(Camera.Parameters.FLASH_MODE_OFF);
-		}
-		theOpenCamera.getCamera().setParameters(parameters);
+		CameraParameters cameraParameters = new CameraParameters(theOpenCamera.getCamera());
+		mCameraParameters = cameraParameters;
 		
 		if (!mIsInitialized) {
 			mIsInitialized = true;
-			mCameraConfigManager.initFromCameraParameters(mContext, theOpenCamera);
+			mCameraConfigManager.initFromCameraParameters(mContext, theOpenCamera, cameraParameters.get());
 		}
 		
-		Camera theCamera = theOpenCamera.getCamera();
-		Camera.Parameters cameraParameters = theCamera.getParameters();
-		String parametersFlattened = cameraParameters == null ? null : cameraParameters.flatten();
+		// 闪光灯、对焦模式和预览分辨率合并为一次 setParameters
+		editFlashMode(cameraParameters);
+		mCameraConfigManager.configureCamera(theOpenCamera, cameraParameters);
+		// 完整参数被拒绝时快照已重新读取，闪光灯修改随之丢弃，单独再设置一次；已生效时不再调用相机
+		editFlashMode(cameraParameters);
 		try {
-			mCameraConfigManager.setDesiredCameraParameters(theOpenCamera, false);
-		} catch (RuntimeException re) {
-			re.printStackTrace();
-			if (parametersFlattened != null) {
-				cameraParameters = theCamera.getParameters();
-				cameraParameters.unflatten(parametersFlattened);
-				try {
-					theCamera.setParameters(cameraParameters);
-					mCameraConfigManager.setDesiredCameraParameters(theOpenCamera, true);
-				} catch (RuntimeException ignored) {
-					ignored.printStackTrace();
-				}
-			}
+			cameraParameters.apply();
+		} catch (RuntimeException e) {
+			e.printStackTrace();
 		}
-		theCamera.setPreviewDisplay(surfaceHolder);
 	}
 	
-	synchronized void closeDriver() {
+	@Override
+	public synchronized void openDriver(SurfaceHolder surfaceHolder) throws IOException {
+		prepareDriver();
+		mOpenCamera.getCamera().setPreviewDisplay(surfaceHolder);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * 预览未停止时先停止预览和对焦，打开失败时也能恢复到初始状态。
+	 */
+	@Override
+	public synchronized void closeDriver() {
+		stopPreview();
 		if (isOpen()) {
 			mOpenCamera.getCamera().release();
 			mOpenCamera = null;
 		}
+		mCameraParameters = null;
+		mFrameCallback = null;
+		mPreviewBuffers.clear();
+		mFreePreviewBuffers.clear();
+		mHeldPreviewBuffers.clear();
 	}
 	
-	synchronized void startPreview() {
+	@Override
+	public synchronized void startPreview() {
 		OpenCamera theOpenCamera = mOpenCamera;
 		if (theOpenCamera != null && !mIsPreviewing) {
 			theOpenCamera.getCamera().startPreview();
 			mIsPreviewing = true;
-			mAutoFocusManager = new AutoFocusManager(theOpenCamera.getCamera(), true);
+			Looper looper = Looper.myLooper();
+			mAutoFocusManager = new AutoFocusManager(theOpenCamera.getCamera(),
+					mCameraParameters, this, true,
+					looper != null ? looper : Looper.getMainLooper());
+		}
+	}
+	
+	@Override
+	public synchronized void onFrameBlurry() {
+		if (mAutoFocusManager != null) {
+			mAutoFocusManager.onFrameBlurry();
+		}
+	}
+	
+	@Override
+	public synchronized void onDecodeFailed() {
+		if (mAutoFocusManager != null) {
+			mAutoFocusManager.onDecodeFailed();
+		}
+	}
+	
+	@Override
+	public synchronized void onDecodeSucceeded() {
+		if (mAutoFocusManager != null) {
+			mAutoFocusManager.onDecodeSucceeded();
 		}
 	}
 	
-	synchronized void stopPreview() {
+	@Override
+	public synchronized void stopPreview() {
 		if (mAutoFocusManager != null) {
 			mAutoFocusManager.stop();
 			mAutoFocusManager = null;
 		}
 		if (mOpenCamera != null && mIsPreviewing) {
-			mOpenCamera.getCamera().stopPreview();
 			mIsPreviewing = false;
+			try {
+				mOpenCamera.getCamera().stopPreview();
+			} catch (RuntimeException e) {
+				// 相机出错时仍需继续关闭
+				e.printStackTrace();
+			}
 		}
 	}
 }
@@ -0,0 +1,67 @@
+package com.kycq.library.scan;
+
+import android.hardware.Camera;
+
+/**
+ * 相机参数缓存
+ * <p>
+ * {@link Camera#getParameters()} 和 {@link Camera#setParameters(Camera.Parameters)} 每次都要经过字符串序列化和 HAL 调用，
+ * 打开相机后只读取一次参数作为快照，之后读取都使用快照；修改只记录在快照上，
+ * 调用 {@link #apply()} 时合并为一次 setParameters。不是线程安全的，由调用方加锁。
+ */
+final class CameraParameters {
+	private final Camera mCamera;
+	private Camera.Parameters mParameters;
+	/** 快照是否有未应用的修改 */
+	private boolean mIsDirty;
+	
+	CameraParameters(Camera camera) {
+		mCamera = camera;
+		mParameters = camera.getParameters();
+	}
+	
+	/**
+	 * 获取参数快照，只用于读取
+	 */
+	Camera.Parameters get() {
+		return mParameters;
+	}
+	
+	/**
+	 * 获取参数快照用于修改，修改在 {@link #apply()} 时生效
+	 */
+	Camera.Parameters edit() {
+		mIsDirty = true;
+		return mParameters;
+	}
+	
+	/**
+	 * 将修改一次性应用到相机，没有修改时忽略
+	 *
+	 * @throws RuntimeException 相机拒绝参数，此时快照重新读取为相机当前参数
+	 */
+	void apply() {
+		if (!mIsDirty) {
+			return;
+		}
+		try {
+			mCamera.setParameters(mParameters);
+		} catch (RuntimeException e) {
+			// 参数整体未生效，丢弃修改
+			reload();
+			throw e;
+		}
+		mIsDirty = false;
+	}
+	
+	/**
+	 * 重新读取相机当前参数，丢弃未应用的修改
+	 * <p>
+	 * 部分设备会调整已设置的参数，需要确认实际值时调用。
+	 */
+	Camera.Parameters reload() {
+		mParameters = mCamera.getParameters();
+		mIsDirty = false;
+		return mParameters;
+	}
+}
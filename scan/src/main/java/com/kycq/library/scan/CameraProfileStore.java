@@ -0,0 +1,166 @@
+package com.kycq.library.scan;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.hardware.Camera;
+import android.os.Build;
+
+import java.util.List;
+
+/**
+ * 按设备和摄像头保存已验证可用的相机配置
+ * <p>
+ * 记录选定的预览分辨率、对焦模式，以及完整参数是否被相机拒绝。
+ * 下次启动时选择条件一致且仍被相机支持则直接使用，跳过分辨率排序和选择；
+ * 系统版本（{@link Build#FINGERPRINT}）变化后全部失效。
+ */
+final class CameraProfileStore {
+	private static final String PREFERENCES_NAME = "com.kycq.library.scan.camera_profile";
+	/** 选择逻辑变化时递增，使旧配置失效 */
+	private static final int PROFILE_VERSION = 1;
+	
+	private static final String KEY_FINGERPRINT = "fingerprint";
+	private static final String KEY_VERSION = "version";
+	private static final String KEY_SELECTION = "selection";
+	private static final String KEY_PREVIEW_WIDTH = "previewWidth";
+	private static final String KEY_PREVIEW_HEIGHT = "previewHeight";
+	private static final String KEY_FOCUS_MODE = "focusMode";
+	private static final String KEY_SAFE_MODE = "safeMode";
+	
+	private final Context mContext;
+	/** 首次使用时读取，避免在主线程读取文件 */
+	private SharedPreferences mPreferences;
+	
+	CameraProfileStore(Context context) {
+		mContext = context.getApplicationContext();
+	}
+	
+	private SharedPreferences getPreferences() {
+		if (mPreferences == null) {
+			SharedPreferences preferences = mContext.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+			if (!Build.FINGERPRINT.equals(preferences.getString(KEY_FINGERPRINT, null))
+					|| preferences.getInt(KEY_VERSION, 0) != PROFILE_VERSION) {
+				preferences.edit()
+						.clear()
+						.putString(KEY_FINGERPRINT, Build.FINGERPRINT)
+						.putInt(KEY_VERSION, PROFILE_VERSION)
+						.apply();
+			}
+			mPreferences = preferences;
+		}
+		return mPreferences;
+	}
+	
+	/**
+	 * 读取配置
+	 *
+	 * @param cameraIndex  摄像头编号
+	 * @param selectionKey 分辨率选择条件，不一致时配置无效
+	 * @return 没有配置或选择条件不一致时返回 null
+	 */
+	Profile load(int cameraIndex, String selectionKey) {
+		SharedPreferences preferences = getPreferences();
+		String prefix = getPrefix(cameraIndex);
+		if (!selectionKey.equals(preferences.getString(prefix + KEY_SELECTION, null))) {
+			return null;
+		}
+		int previewWidth = preferences.getInt(prefix + KEY_PREVIEW_WIDTH, 0);
+		int previewHeight = preferences.getInt(prefix + KEY_PREVIEW_HEIGHT, 0);
+		if (previewWidth <= 0 || previewHeight <= 0) {
+			return null;
+		}
+		
+		Profile profile = new Profile();
+		profile.selectionKey = selectionKey;
+		profile.previewWidth = previewWidth;
+		profile.previewHeight = previewHeight;
+		profile.focusMode = preferences.getString(prefix + KEY_FOCUS_MODE, null);
+		profile.safeMode = preferences.getBoolean(prefix + KEY_SAFE_MODE, false);
+		return profile;
+	}
+	
+	/**
+	 * 异步保存配置
+	 *
+	 * @param cameraIndex 摄像头编号
+	 */
+	void save(int cameraIndex, Profile profile) {
+		String prefix = getPrefix(cameraIndex);
+		getPreferences().edit()
+				.putString(prefix + KEY_SELECTION, profile.selectionKey)
+				.putInt(prefix + KEY_PREVIEW_WIDTH, profile.previewWidth)
+				.putInt(prefix + KEY_PREVIEW_HEIGHT, profile.previewHeight)
+				.putString(prefix + KEY_FOCUS_MODE, profile.focusMode)
+				.putBoolean(prefix + KEY_SAFE_MODE, profile.safeMode)
+				.apply();
+	}
+	
+	/**
+	 * 删除配置，配置无法应用时调用
+	 *
+	 * @param cameraIndex 摄像头编号
+	 */
+	void clear(int cameraIndex) {
+		String prefix = getPrefix(cameraIndex);
+		getPreferences().edit()
+				.remove(prefix + KEY_SELECTION)
+				.remove(prefix + KEY_PREVIEW_WIDTH)
+				.remove(prefix + KEY_PREVIEW_HEIGHT)
+				.remove(prefix + KEY_FOCUS_MODE)
+				.remove(prefix + KEY_SAFE_MODE)
+				.apply();
+	}
+	
+	private static String getPrefix(int cameraIndex) {
+		return "camera" + cameraIndex + ".";
+	}
+	
+	/**
+	 * 相机配置
+	 */
+	static final class Profile {
+		/** 分辨率选择条件 */
+		String selectionKey;
+		/** 预览分辨率（相机方向），为相机实际采用的值 */
+		int previewWidth;
+		int previewHeight;
+		/** 对焦模式，只设置预览分辨率时为 null */
+		String focusMode;
+		/** 完整参数被相机拒绝，只设置预览分辨率 */
+		boolean safeMode;
+		
+		/**
+		 * 相机是否仍支持该配置
+		 */
+		boolean isSupportedBy(Camera.Parameters parameters) {
+			List<Camera.Size> supportedSizes = parameters.getSupportedPreviewSizes();
+			if (supportedSizes == null) {
+				return false;
+			}
+			boolean isSizeSupported = false;
+			for (Camera.Size size : supportedSizes) {
+				if (size.width == previewWidth && size.height == previewHeight) {
+					isSizeSupported = true;
+					break;
+				}
+			}
+			if (!isSizeSupported) {
+				return false;
+			}
+			if (focusMode == null) {
+				return true;
+			}
+			List<String> supportedFocusModes = parameters.getSupportedFocusModes();
+			return supportedFocusModes != null && supportedFocusModes.contains(focusMode);
+		}
+		
+		boolean isSameAs(Profile profile) {
+			return profile != null
+					&& selectionKey.equals(profile.selectionKey)
+					&& previewWidth == profile.previewWidth
+					&& previewHeight == profile.previewHeight
+					&& (focusMode == null ? profile.focusMode == null : focusMode.equals(profile.focusMode))
+					&& safeMode == profile.safeMode;
+		}
+	}
+}
@@ -0,0 +1,136 @@
+package com.kycq.library.scan;
+
+import android.graphics.Point;
+import android.view.SurfaceHolder;
+
+import com.google.zxing.BarcodeFormat;
+
+import java.io.IOException;
+import java.util.Collection;
+
+/**
+ * 相机采集后端
+ * <p>
+ * 负责打开相机、显示预览并持续回调预览帧，帧在后端的缓冲区池中循环使用。
+ * 默认使用 {@link android.hardware.Camera} 实现，Android 5.0 及以上可使用 Camera2 实现，
+ * 测试时可使用回放录制帧的实现。
+ */
+interface CaptureBackend {
+	
+	/**
+	 * 预览帧回调
+	 */
+	interface FrameCallback {
+		/**
+		 * @param frame 预览帧，处理完成后需归还
+		 */
+		void onFrame(CaptureFrame frame);
+	}
+	
+	/**
+	 * 是否为 Camera2 实现
+	 * <p>
+	 * 用于切换后端时判断当前实现，Android 5.0 以下不能加载 Camera2 实现类，不能使用 instanceof 判断。
+	 */
+	boolean isCamera2();
+	
+	boolean isOpen();
+	
+	/**
+	 * 打开相机并完成配置，不关联预览画面，用于在预览画面创建前预热，已打开时忽略
+	 * <p>
+	 * 耗时较长，不应在主线程调用。
+	 *
+	 * @throws IOException 相机无法打开
+	 */
+	void prepareDriver() throws IOException;
+	
+	/**
+	 * 打开相机并关联预览画面，已通过 {@link #prepareDriver()} 打开时只关联预览画面
+	 * <p>
+	 * 耗时较长，不应在主线程调用。
+	 *
+	 * @param surfaceHolder 预览画面
+	 * @throws IOException 相机无法打开
+	 */
+	void openDriver(SurfaceHolder surfaceHolder) throws IOException;
+	
+	void closeDriver();
+	
+	void startPreview();
+	
+	void stopPreview();
+	
+	/**
+	 * 获取预览帧分辨率（相机方向）
+	 *
+	 * @return 未打开过相机时为 null
+	 */
+	Point getCameraResolution();
+	
+	/**
+	 * 获取预览画面分辨率（屏幕方向）
+	 *
+	 * @return 未打开过相机时为 null
+	 */
+	Point getPreviewResolution();
+	
+	/**
+	 * 获取预览帧顺时针旋转到屏幕方向的角度
+	 */
+	int getCameraRotationAngle();
+	
+	/**
+	 * 预览画面是否镜像显示（前置摄像头）
+	 */
+	boolean isPreviewMirrored();
+	
+	void setFlashMode(boolean flashMode);
+	
+	boolean isFlashMode();
+	
+	/**
+	 * 设置预览分辨率选择策略，下次打开相机时生效
+	 *
+	 * @param previewSizePolicy 选择策略，为 null 时使用后端的默认选择
+	 * @param decodeFormats     解码格式
+	 * @param finderWidthRatio  扫描框宽度占预览画面的比例
+	 * @param finderHeightRatio 扫描框高度占预览画面的比例
+	 */
+	void setPreviewSizePolicy(PreviewSizePolicy previewSizePolicy,
+	                          Collection<BarcodeFormat> decodeFormats,
+	                          float finderWidthRatio, float finderHeightRatio);
+	
+	/**
+	 * 设置帧缓冲区数量，下次设置帧回调时生效
+	 *
+	 * @param frameBufferCount 缓冲区数量
+	 */
+	void setFrameBufferCount(int frameBufferCount);
+	
+	/**
+	 * 设置帧回调，传入 null 停止回调
+	 *
+	 * @param frameCallback 帧回调
+	 */
+	void setFrameCallback(FrameCallback frameCallback);
+	
+	/**
+	 * 归还帧回调得到的帧
+	 *
+	 * @param frame 预览帧
+	 */
+	void releaseFrame(CaptureFrame frame);
+	
+	/**
+	 * 帧质量检测判定为模糊，用于判断是否失焦
+	 */
+	void onFrameBlurry();
+	
+	/**
+	 * 帧清晰但未识别，用于判断是否失焦
+	 */
+	void onDecodeFailed();
+	
+	void onDecodeSucceeded();
+}
@@ -0,0 +1,29 @@
+package com.kycq.library.scan;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 采集后端回调的预览帧
+ * <p>
+ * 亮度数据为 NV21 数组或按跨度存储的亮度平面之一，解码完成后需通过
+ * {@link CaptureBackend#releaseFrame(CaptureFrame)} 归还，归还后数据不再有效。
+ * 可在任意线程归还。
+ */
+final class CaptureFrame {
+	/** NV21 数据，使用亮度平面时为 null */
+	byte[] data;
+	/** 亮度平面，使用 NV21 数据时为 null */
+	ByteBuffer plane;
+	/** 亮度平面行跨度 */
+	int rowStride;
+	/** 亮度平面像素跨度 */
+	int pixelStride;
+	/** 帧宽度（相机方向） */
+	int width;
+	/** 帧高度（相机方向） */
+	int height;
+	/** 产生该帧的后端，用于归还 */
+	CaptureBackend backend;
+	/** 后端归还帧时使用的对象 */
+	Object token;
+}
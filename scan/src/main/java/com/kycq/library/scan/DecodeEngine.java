@@ -0,0 +1,388 @@
+package com.kycq.library.scan;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.ReaderException;
+import com.google.zxing.Result;
+
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * 预览帧解码引擎
+ * <p>
+ * 不依赖界面和 Android 类，输入亮度或 NV21 数据及其尺寸、旋转角度和扫描区域，
+ * 依次进行帧质量检测、二值化和解码，可用于自有相机、外接相机或录制视频，也可在普通 JVM 中运行。
+ * 二值化缓冲区由引擎持有，帧尺寸不变时逐帧复用。
+ * 同一实例同一时间只能在一个线程中使用，多线程解码时每个线程各自创建。
+ */
+public final class DecodeEngine {
+	/** 识别成功 */
+	public static final int STATUS_SUCCESS = 0;
+	/** 未识别到条码 */
+	public static final int STATUS_NOT_FOUND = 1;
+	/** 帧质量检测未通过，未解码 */
+	public static final int STATUS_REJECTED = 2;
+	/** 解码器内部出错 */
+	public static final int STATUS_ERROR = 3;
+	
+	/** 扫描区域短边不小于该值时才先缩小解码 */
+	private static final int MIN_DOWNSCALE_SIZE = 400;
+	/** 扫描区域短边不小于该值时才放大中心区域解码 */
+	private static final int MIN_UPSCALE_SIZE = 64;
+	
+	private final FormatReader.Ranking mFormatRanking;
+	private final FrameQualityGate mFrameQualityGate;
+	private final ScanMetrics mScanMetrics;
+	
+	private Map<DecodeHintType, Object> mDecodeHints;
+	private boolean mIsMultipleDecode;
+	private FormatReader mFormatReader;
+	private MultipleFormatReader mMultipleFormatReader;
+	
+	/** 多尺度解码的亮度金字塔，未开启时为 null */
+	private LuminancePyramid mLuminancePyramid;
+	
+	/** 原尺寸二值化缓冲区，帧尺寸不变时逐帧复用 */
+	private final ReusableHybridBinarizer.Buffers mBinarizerBuffers = new ReusableHybridBinarizer.Buffers();
+	/** 缩小层二值化缓冲区 */
+	private ReusableHybridBinarizer.Buffers mDownscaledBuffers;
+	/** 放大层二值化缓冲区 */
+	private ReusableHybridBinarizer.Buffers mUpscaledBuffers;
+	
+	private Result[] mResults;
+	/** 最近一帧的质量检测结果 */
+	private int mFrameQuality = FrameQualityGate.QUALITY_OK;
+	
+	/**
+	 * 创建识别全部常用格式的解码引擎
+	 */
+	public DecodeEngine() {
+		this(DecodeFormat.createDecodeHints(DecodeFormat.getDefaultFormats()),
+				new FormatReader.Ranking(), new FrameQualityGate(), new ScanMetrics());
+	}
+	
+	/**
+	 * @param hints            解码参数
+	 * @param formatRanking    格式成功记录，可在多个引擎间共享
+	 * @param frameQualityGate 帧质量检测，可在多个引擎间共享
+	 * @param scanMetrics      扫描统计，可在多个引擎间共享
+	 */
+	DecodeEngine(Map<DecodeHintType, Object> hints, FormatReader.Ranking formatRanking,
+	             FrameQualityGate frameQualityGate, ScanMetrics scanMetrics) {
+		mDecodeHints = hints;
+		mFormatRanking = formatRanking;
+		mFrameQualityGate = frameQualityGate;
+		mScanMetrics = scanMetrics;
+	}
+	
+	/**
+	 * 设置扫描模式，只解码模式对应的格式
+	 *
+	 * @param scanModes 扫描模式，如 {@link DecodeFormat#ONE_D_MODE}、{@link DecodeFormat#QR_CODE_MODE}
+	 */
+	public void setScanModes(String... scanModes) {
+		setDecodeFormats(DecodeFormat.getFormatsForModes(scanModes));
+	}
+	
+	/**
+	 * 设置解码格式，格式越少每帧解码越快
+	 *
+	 * @param decodeFormats 解码格式
+	 */
+	public void setDecodeFormats(Collection<BarcodeFormat> decodeFormats) {
+		mDecodeHints = DecodeFormat.createDecodeHints(decodeFormats);
+		mFormatReader = null;
+		mMultipleFormatReader = null;
+	}
+	
+	/**
+	 * 设置是否识别一帧中的多个条码
+	 *
+	 * @param multipleDecode 是否识别多个条码
+	 */
+	public void setMultipleDecode(boolean multipleDecode) {
+		mIsMultipleDecode = multipleDecode;
+	}
+	
+	public boolean isMultipleDecode() {
+		return mIsMultipleDecode;
+	}
+	
+	public boolean isPyramidDecode() {
+		return mLuminancePyramid != null;
+	}
+	
+	/**
+	 * 设置是否多尺度解码，默认关闭
+	 * <p>
+	 * 开启后扫描区域较大时先在缩小一半的区域上识别近距离的大条码，原尺寸未识别时再将中心区域放大一倍，
+	 * 识别远距离的小而密的条码。各层使用预分配的缓冲区，未识别的帧最多解码三次。
+	 *
+	 * @param pyramidDecode 是否多尺度解码
+	 */
+	public void setPyramidDecode(boolean pyramidDecode) {
+		if (!pyramidDecode) {
+			mLuminancePyramid = null;
+			mDownscaledBuffers = null;
+			mUpscaledBuffers = null;
+		} else if (mLuminancePyramid == null) {
+			mLuminancePyramid = new LuminancePyramid();
+			mDownscaledBuffers = new ReusableHybridBinarizer.Buffers();
+			mUpscaledBuffers = new ReusableHybridBinarizer.Buffers();
+		}
+	}
+	
+	/**
+	 * 获取帧质量检测，用于调整阈值和读取跳过次数
+	 */
+	public FrameQualityGate getFrameQualityGate() {
+		return mFrameQualityGate;
+	}
+	
+	/**
+	 * 获取扫描统计，默认关闭，需调用 {@link ScanMetrics#setEnabled(boolean)} 开启
+	 */
+	public ScanMetrics getScanMetrics() {
+		return mScanMetrics;
+	}
+	
+	/**
+	 * 解码整帧
+	 *
+	 * @see #decode(byte[], int, int, int, int, int, int, int)
+	 */
+	public int decode(byte[] data, int dataWidth, int dataHeight, int rotationAngle) {
+		return decode(data, dataWidth, dataHeight, rotationAngle,
+				0, 0,
+				RotatedLuminanceSource.getRotatedWidth(dataWidth, dataHeight, rotationAngle),
+				RotatedLuminanceSource.getRotatedHeight(dataWidth, dataHeight, rotationAngle));
+	}
+	
+	/**
+	 * 解码一帧中的扫描区域，识别成功后通过 {@link #getResults()} 获取结果
+	 *
+	 * @param data          亮度数据或 NV21 数据，只读取前 dataWidth * dataHeight 字节的亮度
+	 * @param dataWidth     数据宽度
+	 * @param dataHeight    数据高度
+	 * @param rotationAngle 顺时针旋转角度，仅支持 0、90、180、270
+	 * @param left          扫描区域左边界（旋转后坐标）
+	 * @param top           扫描区域上边界（旋转后坐标）
+	 * @param width         扫描区域宽度（旋转后坐标）
+	 * @param height        扫描区域高度（旋转后坐标）
+	 * @return {@link #STATUS_SUCCESS}、{@link #STATUS_NOT_FOUND}、{@link #STATUS_REJECTED} 或 {@link #STATUS_ERROR}
+	 * @throws IllegalArgumentException 数据不足、旋转角度不支持或扫描区域超出帧范围
+	 */
+	public int decode(byte[] data, int dataWidth, int dataHeight, int rotationAngle,
+	                  int left, int top, int width, int height) {
+		checkFrame(dataWidth, dataHeight, rotationAngle, left, top, width, height);
+		if (data.length < dataWidth * dataHeight) {
+			throw new IllegalArgumentException("Data too small: " + data.length
+					+ " < " + dataWidth + " * " + dataHeight);
+		}
+		return decodeFrame(data, null, dataWidth, 1,
+				dataWidth, dataHeight, rotationAngle,
+				left, top, width, height);
+	}
+	
+	/**
+	 * 解码按行跨度和像素跨度存储的亮度平面中的扫描区域，如 YUV_420_888 图像的 Y 平面，不复制整帧数据
+	 *
+	 * @param plane         亮度平面，解码期间不能释放
+	 * @param rowStride     行跨度
+	 * @param pixelStride   像素跨度
+	 * @param dataWidth     图像宽度
+	 * @param dataHeight    图像高度
+	 * @param rotationAngle 顺时针旋转角度，仅支持 0、90、180、270
+	 * @param left          扫描区域左边界（旋转后坐标）
+	 * @param top           扫描区域上边界（旋转后坐标）
+	 * @param width         扫描区域宽度（旋转后坐标）
+	 * @param height        扫描区域高度（旋转后坐标）
+	 * @return {@link #STATUS_SUCCESS}、{@link #STATUS_NOT_FOUND}、{@link #STATUS_REJECTED} 或 {@link #STATUS_ERROR}
+	 * @throws IllegalArgumentException 跨度无效、平面数据不足、旋转角度不支持或扫描区域超出帧范围
+	 */
+	public int decode(ByteBuffer plane, int rowStride, int pixelStride,
+	                  int dataWidth, int dataHeight, int rotationAngle,
+	                  int left, int top, int width, int height) {
+		checkFrame(dataWidth, dataHeight, rotationAngle, left, top, width, height);
+		if (pixelStride < 1 || rowStride < (dataWidth - 1) * pixelStride + 1) {
+			throw new IllegalArgumentException("Bad stride: row " + rowStride + ", pixel " + pixelStride);
+		}
+		if (plane.limit() < (dataHeight - 1) * rowStride + (dataWidth - 1) * pixelStride + 1) {
+			throw new IllegalArgumentException("Plane too small: " + plane.limit());
+		}
+		return decodeFrame(null, plane, rowStride, pixelStride,
+				dataWidth, dataHeight, rotationAngle,
+				left, top, width, height);
+	}
+	
+	/**
+	 * 检查帧尺寸、旋转角度和扫描区域，调用方传入错误参数时直接抛出，不当作解码失败
+	 */
+	private static void checkFrame(int dataWidth, int dataHeight, int rotationAngle,
+	                               int left, int top, int width, int height) {
+		if (dataWidth <= 0 || dataHeight <= 0) {
+			throw new IllegalArgumentException("Bad data size: " + dataWidth + "x" + dataHeight);
+		}
+		if (rotationAngle != 0 && rotationAngle != 90 && rotationAngle != 180 && rotationAngle != 270) {
+			throw new IllegalArgumentException("Bad rotation: " + rotationAngle);
+		}
+		int rotatedWidth = RotatedLuminanceSource.getRotatedWidth(dataWidth, dataHeight, rotationAngle);
+		int rotatedHeight = RotatedLuminanceSource.getRotatedHeight(dataWidth, dataHeight, rotationAngle);
+		if (width <= 0 || height <= 0 || left < 0 || top < 0
+				|| left + width > rotatedWidth || top + height > rotatedHeight) {
+			throw new IllegalArgumentException("Crop rectangle does not fit within image data.");
+		}
+	}
+	
+	/**
+	 * @param data  亮度数组，为 null 时读取 plane
+	 * @param plane 亮度平面
+	 */
+	private int decodeFrame(byte[] data, ByteBuffer plane, int rowStride, int pixelStride,
+	                        int dataWidth, int dataHeight, int rotationAngle,
+	                        int left, int top, int width, int height) {
+		mResults = null;
+		mFrameQuality = FrameQualityGate.QUALITY_OK;
+		ScanMetrics scanMetrics = mScanMetrics;
+		boolean isMeasuring = scanMetrics.isEnabled();
+		long startNanos = isMeasuring ? System.nanoTime() : 0;
+		long decodeStartNanos = 0;
+		
+		try {
+			FrameLuminanceSource source;
+			if (data != null) {
+				source = new RotatedLuminanceSource(data,
+						dataWidth, dataHeight,
+						rotationAngle,
+						left, top, width, height);
+			} else {
+				source = new PlaneLuminanceSource(plane,
+						rowStride, pixelStride,
+						dataWidth, dataHeight,
+						rotationAngle,
+						left, top, width, height);
+			}
+			mFrameQuality = mFrameQualityGate.check(source);
+			if (mFrameQuality != FrameQualityGate.QUALITY_OK) {
+				scanMetrics.recordFrameRejected();
+				return STATUS_REJECTED;
+			}
+			
+			if (isMeasuring) {
+				decodeStartNanos = System.nanoTime();
+				scanMetrics.recordStage(ScanMetrics.Stage.SOURCE, decodeStartNanos - startNanos);
+			}
+			
+			LuminancePyramid luminancePyramid = mLuminancePyramid;
+			Result[] results = null;
+			if (luminancePyramid != null && Math.min(width, height) >= MIN_DOWNSCALE_SIZE) {
+				// 先在缩小一半的区域上快速识别近距离的大条码
+				results = decodeLevel(luminancePyramid, luminancePyramid.downscale(source), mDownscaledBuffers);
+			}
+			if (results == null) {
+				BinaryBitmap binaryBitmap = new BinaryBitmap(new ReusableHybridBinarizer(source, mBinarizerBuffers));
+				if (isMeasuring) {
+					long binarizeStartNanos = System.nanoTime();
+					// 统计时提前二值化以单独计时，结果由 BinaryBitmap 缓存
+					binaryBitmap.getBlackMatrix();
+					long binarizeNanos = System.nanoTime() - binarizeStartNanos;
+					scanMetrics.recordStage(ScanMetrics.Stage.BINARIZE, binarizeNanos);
+					decodeStartNanos += binarizeNanos;
+				}
+				results = decodeBitmap(binaryBitmap);
+			}
+			if (results == null && luminancePyramid != null && Math.min(width, height) >= MIN_UPSCALE_SIZE) {
+				// 再放大中心区域识别远距离的小条码
+				results = decodeLevel(luminancePyramid, luminancePyramid.upscaleCenter(source), mUpscaledBuffers);
+			}
+			if (results == null) {
+				throw NotFoundException.getNotFoundInstance();
+			}
+			
+			for (Result result : results) {
+				scanMetrics.recordSuccess(result.getBarcodeFormat());
+			}
+			mResults = results;
+			return STATUS_SUCCESS;
+		} catch (ReaderException ignored) {
+			scanMetrics.recordFailure();
+			return STATUS_NOT_FOUND;
+		} catch (RuntimeException e) {
+			// 参数已检查，此处只有解码器内部错误
+			scanMetrics.recordError(e);
+			return STATUS_ERROR;
+		} finally {
+			if (isMeasuring) {
+				long endNanos = System.nanoTime();
+				if (decodeStartNanos != 0) {
+					scanMetrics.recordStage(ScanMetrics.Stage.DECODE, endNanos - decodeStartNanos);
+				}
+				scanMetrics.recordStage(ScanMetrics.Stage.TOTAL, endNanos - startNanos);
+			}
+		}
+	}
+	
+	/**
+	 * 解码金字塔中的一层，结果定位点换算回扫描区域坐标
+	 *
+	 * @return 未识别时返回 null
+	 */
+	private Result[] decodeLevel(LuminancePyramid luminancePyramid, LuminanceSource levelSource,
+	                             ReusableHybridBinarizer.Buffers buffers) {
+		Result[] results = decodeBitmap(new BinaryBitmap(new ReusableHybridBinarizer(levelSource, buffers)));
+		if (results != null) {
+			for (int index = 0; index < results.length; index++) {
+				results[index] = luminancePyramid.mapResult(results[index]);
+			}
+		}
+		return results;
+	}
+	
+	/**
+	 * @return 未识别时返回 null
+	 */
+	private Result[] decodeBitmap(BinaryBitmap binaryBitmap) {
+		FormatReader formatReader = getFormatReader();
+		try {
+			if (mIsMultipleDecode) {
+				if (mMultipleFormatReader == null) {
+					mMultipleFormatReader = new MultipleFormatReader(mDecodeHints, formatReader);
+				}
+				return mMultipleFormatReader.decodeMultiple(binaryBitmap);
+			}
+			return new Result[]{formatReader.decode(binaryBitmap)};
+		} catch (ReaderException ignored) {
+			return null;
+		} finally {
+			formatReader.reset();
+		}
+	}
+	
+	private FormatReader getFormatReader() {
+		if (mFormatReader == null) {
+			mFormatReader = new FormatReader(mDecodeHints, mFormatRanking);
+		}
+		return mFormatReader;
+	}
+	
+	/**
+	 * 获取最近一帧的质量检测结果，如 {@link FrameQualityGate#QUALITY_BLURRY}
+	 */
+	int getFrameQuality() {
+		return mFrameQuality;
+	}
+	
+	/**
+	 * 获取最近一次解码的结果，单条码模式只有一个元素
+	 *
+	 * @return 最近一次未识别成功时返回 null
+	 */
+	public Result[] getResults() {
+		return mResults;
+	}
+}
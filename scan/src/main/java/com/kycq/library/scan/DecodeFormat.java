@@ -1,21 +1,28 @@
 package com.kycq.library.scan;
 
 import com.google.zxing.BarcodeFormat;
+import com.google.zxing.DecodeHintType;
 
+import java.util.Collection;
+import java.util.EnumMap;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.regex.Pattern;
 
-class DecodeFormat {
+public final class DecodeFormat {
 	public static final String MODE = "SCAN_MODE";
-	private static final String ONE_D_MODE = "ONE_D_MODE";
-	private static final String PRODUCT_MODE = "PRODUCT_MODE";
-	private static final String QR_CODE_MODE = "QR_CODE_MODE";
-	private static final String DATA_MATRIX_MODE = "DATA_MATRIX_MODE";
-	private static final String AZTEC_MODE = "AZTEC_MODE";
-	private static final String PDF417_MODE = "PDF417_MODE";
+	/** 一维码，包含商品码和工业码 */
+	public static final String ONE_D_MODE = "ONE_D_MODE";
+	/** 商品码，UPC、EAN、RSS */
+	public static final String PRODUCT_MODE = "PRODUCT_MODE";
+	/** 工业码，CODE 39/93/128、ITF、CODABAR */
+	public static final String INDUSTRIAL_MODE = "INDUSTRIAL_MODE";
+	public static final String QR_CODE_MODE = "QR_CODE_MODE";
+	public static final String DATA_MATRIX_MODE = "DATA_MATRIX_MODE";
+	public static final String AZTEC_MODE = "AZTEC_MODE";
+	public static final String PDF417_MODE = "PDF417_MODE";
 	
 	public static final String FORMATS = "SCAN_FORMATS";
 	
@@ -42,6 +49,7 @@ class DecodeFormat {
 		FORMATS_FOR_MODE = new HashMap<>();
 		FORMATS_FOR_MODE.put(ONE_D_MODE, ONE_D_FORMATS);
 		FORMATS_FOR_MODE.put(PRODUCT_MODE, PRODUCT_FORMATS);
+		FORMATS_FOR_MODE.put(INDUSTRIAL_MODE, INDUSTRIAL_FORMATS);
 		FORMATS_FOR_MODE.put(QR_CODE_MODE, QR_CODE_FORMATS);
 		FORMATS_FOR_MODE.put(DATA_MATRIX_MODE, DATA_MATRIX_FORMATS);
 		FORMATS_FOR_MODE.put(AZTEC_MODE, AZTEC_FORMATS);
@@ -50,4 +58,55 @@ class DecodeFormat {
 	
 	private DecodeFormat() {
 	}
+	
+	/**
+	 * 获取扫描模式对应的解码格式
+	 *
+	 * @param scanModes 扫描模式
+	 * @return 解码格式
+	 */
+	static Set<BarcodeFormat> getFormatsForModes(String... scanModes) {
+		Set<BarcodeFormat> decodeFormats = EnumSet.noneOf(BarcodeFormat.class);
+		for (String scanMode : scanModes) {
+			Set<BarcodeFormat> formats = FORMATS_FOR_MODE.get(scanMode);
+			if (formats == null) {
+				throw new IllegalArgumentException("Bad scan mode: " + scanMode);
+			}
+			decodeFormats.addAll(formats);
+		}
+		return decodeFormats;
+	}
+	
+	/**
+	 * 获取默认解码格式，包含一维码、二维码、DataMatrix、Aztec 和 PDF417
+	 */
+	static Set<BarcodeFormat> getDefaultFormats() {
+		Set<BarcodeFormat> decodeFormats = EnumSet.noneOf(BarcodeFormat.class);
+		decodeFormats.addAll(PRODUCT_FORMATS);
+		decodeFormats.addAll(INDUSTRIAL_FORMATS);
+		decodeFormats.addAll(QR_CODE_FORMATS);
+		decodeFormats.addAll(DATA_MATRIX_FORMATS);
+		decodeFormats.addAll(AZTEC_FORMATS);
+		decodeFormats.addAll(PDF417_FORMATS);
+		return decodeFormats;
+	}
+	
+	/**
+	 * 创建只解码指定格式的解码参数
+	 *
+	 * @param decodeFormats 解码格式，不能为空
+	 * @return 解码参数
+	 */
+	static Map<DecodeHintType, Object> createDecodeHints(Collection<BarcodeFormat> decodeFormats) {
+		if (decodeFormats == null || decodeFormats.isEmpty()) {
+			throw new IllegalArgumentException("Decode formats must not be empty");
+		}
+		Map<DecodeHintType, Object> hints = new EnumMap<>(DecodeHintType.class);
+		hints.put(DecodeHintType.POSSIBLE_FORMATS, EnumSet.copyOf(decodeFormats));
+		//if (characterSet != null) {
+		//	hints.put(DecodeHintType.CHARACTER_SET, characterSet);
+		//}
+		return hints;
+	}
+
 }
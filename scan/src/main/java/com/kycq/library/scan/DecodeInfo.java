@@ -2,13 +2,18 @@ package com.kycq.library.scan;
 
 import android.graphics.Rect;
 
+import com.google.zxing.Result;
+
 import java.io.File;
 
 class DecodeInfo {
 	File file;
-	byte[] data;
-	int dataWidth;
-	int dataHeight;
+	/** 预览帧，解码完成后归还给采集后端 */
+	CaptureFrame frame;
 	int rotationAngle;
 	Rect decodeRect;
+	/** 解码结果 */
+	Result result;
+	/** 多条码模式下的全部解码结果 */
+	Result[] results;
 }
@@ -0,0 +1,356 @@
+package com.kycq.library.scan;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 图片解码结果缓存
+ * <p>
+ * 按文件路径、大小和修改时间，或按文件内容摘要记录解码结果，再次解码同一文件时直接返回，
+ * 不再读取和解码图片。未识别的结果同样缓存。内存中保留有限数量的最近结果，
+ * 可选地写入磁盘目录，超出数量时删除最久未使用的文件。
+ * 解码格式、多条码模式等参数不同时视为不同的结果。可在多个线程中使用。
+ */
+public final class DecodeResultCache {
+	/** 缓存文件格式版本 */
+	private static final int DISK_VERSION = 1;
+	private static final String DISK_SUFFIX = ".result";
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+	
+	private final LinkedHashMap<String, Result[]> mMemoryCache;
+	/** 磁盘缓存目录，为 null 时只缓存在内存中 */
+	private final File mDirectory;
+	private final int mMaxDiskEntries;
+	
+	/** 是否按文件内容摘要区分文件 */
+	private volatile boolean mIsContentKey;
+	
+	/**
+	 * 创建只缓存在内存中的结果缓存
+	 *
+	 * @param maxMemoryEntries 内存中最多保留的文件数
+	 */
+	public DecodeResultCache(int maxMemoryEntries) {
+		this(maxMemoryEntries, null, 0);
+	}
+	
+	/**
+	 * @param maxMemoryEntries 内存中最多保留的文件数
+	 * @param directory        磁盘缓存目录，为 null 时不写入磁盘
+	 * @param maxDiskEntries   磁盘中最多保留的文件数
+	 */
+	public DecodeResultCache(final int maxMemoryEntries, File directory, int maxDiskEntries) {
+		if (maxMemoryEntries < 1) {
+			throw new IllegalArgumentException("Max memory entries must be positive: " + maxMemoryEntries);
+		}
+		if (directory != null && maxDiskEntries < 1) {
+			throw new IllegalArgumentException("Max disk entries must be positive: " + maxDiskEntries);
+		}
+		mMemoryCache = new LinkedHashMap<String, Result[]>(maxMemoryEntries, 0.75F, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Result[]> eldest) {
+				return size() > maxMemoryEntries;
+			}
+		};
+		mDirectory = directory;
+		mMaxDiskEntries = maxDiskEntries;
+	}
+	
+	/**
+	 * 设置是否按文件内容摘要区分文件，默认关闭
+	 * <p>
+	 * 默认按路径、大小和修改时间区分，无需读取文件；开启后每次需完整读取一遍文件计算摘要，
+	 * 但复制、重命名后的同一图片也能命中。
+	 *
+	 * @param contentKey 是否按内容区分
+	 */
+	public void setContentKey(boolean contentKey) {
+		mIsContentKey = contentKey;
+	}
+	
+	/**
+	 * 清空内存和磁盘中的全部结果
+	 */
+	public synchronized void clear() {
+		mMemoryCache.clear();
+		File[] files = listDiskFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+	}
+	
+	/**
+	 * 生成缓存键
+	 *
+	 * @param file         图片文件
+	 * @param decodeConfig 解码参数描述，参数不同的结果互不命中
+	 */
+	String createKey(File file, String decodeConfig) throws IOException {
+		String fileKey;
+		if (mIsContentKey) {
+			InputStream inputStream = new FileInputStream(file);
+			try {
+				MessageDigest messageDigest = newDigest();
+				byte[] buffer = new byte[8192];
+				int count;
+				while ((count = inputStream.read(buffer)) != -1) {
+					messageDigest.update(buffer, 0, count);
+				}
+				fileKey = "content:" + toHex(messageDigest.digest());
+			} finally {
+				inputStream.close();
+			}
+		} else {
+			fileKey = "file:" + file.getAbsolutePath() + ":" + file.length() + ":" + file.lastModified();
+		}
+		return fileKey + "|" + decodeConfig;
+	}
+	
+	/**
+	 * 获取缓存的结果
+	 *
+	 * @return 未缓存时返回 null，缓存的未识别结果为空数组
+	 */
+	synchronized Result[] get(String key) {
+		Result[] results = mMemoryCache.get(key);
+		if (results != null || mDirectory == null) {
+			return results;
+		}
+		
+		File diskFile = getDiskFile(key);
+		if (!diskFile.isFile()) {
+			return null;
+		}
+		try {
+			results = readResults(diskFile, key);
+		} catch (IOException | RuntimeException ignored) {
+			// 文件损坏或版本不同时作废
+			diskFile.delete();
+			return null;
+		}
+		if (results != null) {
+			mMemoryCache.put(key, results);
+			// 以修改时间记录最近使用，清理时保留常用的结果
+			diskFile.setLastModified(System.currentTimeMillis());
+		}
+		return results;
+	}
+	
+	/**
+	 * 缓存结果
+	 *
+	 * @param results 解码结果，未识别时为空数组
+	 */
+	synchronized void put(String key, Result[] results) {
+		mMemoryCache.put(key, results);
+		if (mDirectory == null) {
+			return;
+		}
+		
+		if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+			return;
+		}
+		File diskFile = getDiskFile(key);
+		try {
+			writeResults(diskFile, key, results);
+		} catch (IOException ignored) {
+			diskFile.delete();
+			return;
+		}
+		trimDisk();
+	}
+	
+	private void trimDisk() {
+		File[] files = listDiskFiles();
+		if (files == null || files.length <= mMaxDiskEntries) {
+			return;
+		}
+		Arrays.sort(files, new Comparator<File>() {
+			@Override
+			public int compare(File lhs, File rhs) {
+				long lhsModified = lhs.lastModified();
+				long rhsModified = rhs.lastModified();
+				return lhsModified < rhsModified ? -1 : (lhsModified == rhsModified ? 0 : 1);
+			}
+		});
+		for (int index = 0; index < files.length - mMaxDiskEntries; index++) {
+			files[index].delete();
+		}
+	}
+	
+	private File[] listDiskFiles() {
+		if (mDirectory == null) {
+			return null;
+		}
+		return mDirectory.listFiles(new FileFilter() {
+			@Override
+			public boolean accept(File file) {
+				return file.getName().endsWith(DISK_SUFFIX);
+			}
+		});
+	}
+	
+	private File getDiskFile(String key) {
+		MessageDigest messageDigest = newDigest();
+		return new File(mDirectory, toHex(messageDigest.digest(key.getBytes(UTF_8))) + DISK_SUFFIX);
+	}
+	
+	/**
+	 * 写入结果，保留定位点和原始数据，不保留附加信息
+	 */
+	private static void writeResults(File file, String key, Result[] results) throws IOException {
+		DataOutputStream outputStream = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(file)));
+		try {
+			outputStream.writeInt(DISK_VERSION);
+			writeString(outputStream, key);
+			outputStream.writeInt(results.length);
+			for (Result result : results) {
+				outputStream.writeUTF(result.getBarcodeFormat().name());
+				writeString(outputStream, result.getText());
+				writeBytes(outputStream, result.getRawBytes());
+				outputStream.writeInt(result.getNumBits());
+				ResultPoint[] points = result.getResultPoints();
+				outputStream.writeInt(points != null ? points.length : -1);
+				if (points != null) {
+					for (ResultPoint point : points) {
+						outputStream.writeBoolean(point != null);
+						if (point != null) {
+							outputStream.writeFloat(point.getX());
+							outputStream.writeFloat(point.getY());
+						}
+					}
+				}
+				outputStream.writeLong(result.getTimestamp());
+			}
+		} finally {
+			outputStream.close();
+		}
+	}
+	
+	/**
+	 * @return 文件中的键与传入的键不同（摘要冲突）时返回 null
+	 */
+	private static Result[] readResults(File file, String key) throws IOException {
+		// 文件损坏时长度字段可能为任意值，不超过文件大小
+		int maxLength = (int) Math.min(file.length(), Integer.MAX_VALUE);
+		DataInputStream inputStream = new DataInputStream(
+				new BufferedInputStream(new FileInputStream(file)));
+		try {
+			if (inputStream.readInt() != DISK_VERSION) {
+				throw new IOException("Unsupported cache version");
+			}
+			if (!key.equals(readString(inputStream, maxLength))) {
+				return null;
+			}
+			
+			Result[] results = new Result[readLength(inputStream, maxLength)];
+			for (int index = 0; index < results.length; index++) {
+				BarcodeFormat format;
+				try {
+					format = BarcodeFormat.valueOf(inputStream.readUTF());
+				} catch (IllegalArgumentException e) {
+					throw new IOException("Unknown barcode format");
+				}
+				String text = readString(inputStream, maxLength);
+				byte[] rawBytes = readBytes(inputStream, maxLength);
+				int numBits = inputStream.readInt();
+				int pointCount = inputStream.readInt();
+				if (pointCount > maxLength) {
+					throw new IOException("Bad point count: " + pointCount);
+				}
+				ResultPoint[] points = null;
+				if (pointCount >= 0) {
+					points = new ResultPoint[pointCount];
+					for (int pointIndex = 0; pointIndex < pointCount; pointIndex++) {
+						if (inputStream.readBoolean()) {
+							points[pointIndex] = new ResultPoint(inputStream.readFloat(), inputStream.readFloat());
+						}
+					}
+				}
+				long timestamp = inputStream.readLong();
+				results[index] = new Result(text, rawBytes, numBits, points, format, timestamp);
+			}
+			return results;
+		} finally {
+			inputStream.close();
+		}
+	}
+	
+	private static void writeString(DataOutputStream outputStream, String value) throws IOException {
+		writeBytes(outputStream, value != null ? value.getBytes(UTF_8) : null);
+	}
+	
+	private static String readString(DataInputStream inputStream, int maxLength) throws IOException {
+		byte[] bytes = readBytes(inputStream, maxLength);
+		return bytes != null ? new String(bytes, UTF_8) : null;
+	}
+	
+	private static void writeBytes(DataOutputStream outputStream, byte[] bytes) throws IOException {
+		outputStream.writeInt(bytes != null ? bytes.length : -1);
+		if (bytes != null) {
+			outputStream.write(bytes);
+		}
+	}
+	
+	private static byte[] readBytes(DataInputStream inputStream, int maxLength) throws IOException {
+		int length = inputStream.readInt();
+		if (length < 0) {
+			return null;
+		}
+		if (length > maxLength) {
+			throw new IOException("Bad length: " + length);
+		}
+		byte[] bytes = new byte[length];
+		inputStream.readFully(bytes);
+		return bytes;
+	}
+	
+	private static int readLength(DataInputStream inputStream, int maxLength) throws IOException {
+		int length = inputStream.readInt();
+		if (length < 0 || length > maxLength) {
+			throw new IOException("Bad length: " + length);
+		}
+		return length;
+	}
+	
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			// 所有 Java 平台都必须支持 SHA-1
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	private static String toHex(byte[] bytes) {
+		char[] chars = new char[bytes.length * 2];
+		for (int index = 0; index < bytes.length; index++) {
+			chars[index * 2] = HEX_DIGITS[(bytes[index] >> 4) & 0x0F];
+			chars[index * 2 + 1] = HEX_DIGITS[bytes[index] & 0x0F];
+		}
+		return new String(chars);
+	}
+}
@@ -1,31 +1,43 @@
 package com.kycq.library.scan;
 
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.os.AsyncTask;
-import android.util.DisplayMetrics;
 
-import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
 import com.google.zxing.MultiFormatReader;
-import com.google.zxing.PlanarYUVLuminanceSource;
-import com.google.zxing.RGBLuminanceSource;
+import com.google.zxing.ReaderException;
 import com.google.zxing.Result;
-import com.google.zxing.common.HybridBinarizer;
+import com.google.zxing.multi.MultipleBarcodeReader;
 
+import java.io.IOException;
 import java.lang.ref.WeakReference;
+import java.util.Map;
 
-class DecodeTask extends AsyncTask<DecodeInfo, Void, Result> {
-	private DisplayMetrics mDisplayMetrics;
-	
+class DecodeTask extends AsyncTask<DecodeInfo, Void, Result[]> {
 	private final WeakReference<ScanView> mScanViewReference;
 	private final WeakReference<MultiFormatReader> mMultiFormatReaderReference;
+	private final Map<DecodeHintType, ?> mHints;
+	/** 解码亮度图的最大边长 */
+	private final int mMaxImageSize;
+	/** 多条码解码器，单条码模式为 null */
+	private MultipleBarcodeReader mMultipleBarcodeReader;
+	/** 解码结果缓存，未设置时为 null */
+	private DecodeResultCache mDecodeResultCache;
 	private boolean mNotifyFailure;
 	
-	DecodeTask(ScanView scanView, MultiFormatReader multiFormatReader) {
+	DecodeTask(ScanView scanView, MultiFormatReader multiFormatReader,
+	           Map<DecodeHintType, ?> hints, int maxImageSize) {
 		mScanViewReference = new WeakReference<>(scanView);
 		mMultiFormatReaderReference = new WeakReference<>(multiFormatReader);
-		
-		mDisplayMetrics = scanView.getContext().getResources().getDisplayMetrics();
+		mHints = hints;
+		mMaxImageSize = maxImageSize;
+	}
+	
+	void setMultipleBarcodeReader(MultipleBarcodeReader multipleBarcodeReader) {
+		mMultipleBarcodeReader = multipleBarcodeReader;
+	}
+	
+	void setDecodeResultCache(DecodeResultCache decodeResultCache) {
+		mDecodeResultCache = decodeResultCache;
 	}
 	
 	void setNotifyFailure(boolean notifyFailure) {
@@ -33,7 +45,7 @@ class DecodeTask extends AsyncTask<DecodeInfo, Void, Result> {
 	}
 	
 	@Override
-	protected Result doInBackground(DecodeInfo... decodeInfoArray) {
+	protected Result[] doInBackground(DecodeInfo... decodeInfoArray) {
 		DecodeInfo decodeInfo = decodeInfoArray[0];
 		MultiFormatReader multiFormatReader = mMultiFormatReaderReference.get();
 		if (multiFormatReader == null) {
@@ -41,96 +53,63 @@ class DecodeTask extends AsyncTask<DecodeInfo, Void, Result> {
 		}
 		
 		try {
-			if (decodeInfo.data != null) {
-				return decodeByte(decodeInfo, multiFormatReader);
-			} else if (decodeInfo.file != null) {
+			if (decodeInfo.file != null) {
 				return decodeFile(decodeInfo, multiFormatReader);
 			}
 		} catch (Exception ignored) {
 			ignored.printStackTrace();
+			ScanView scanView = mScanViewReference.get();
+			if (scanView != null) {
+				scanView.getScanMetrics().recordError(ignored);
+			}
 		} finally {
 			multiFormatReader.reset();
 		}
 		return null;
 	}
 	
-	private Result decodeByte(DecodeInfo decodeInfo, MultiFormatReader multiFormatReader) throws Exception {
-		DecodeInfo resultInfo = rotateData(decodeInfo.data,
-				decodeInfo.dataWidth, decodeInfo.dataHeight,
-				decodeInfo.rotationAngle);
-		if (isCancelled()) {
-			return null;
+	private Result[] decodeFile(DecodeInfo decodeInfo, MultiFormatReader multiFormatReader) throws Exception {
+		DecodeResultCache decodeResultCache = mDecodeResultCache;
+		String cacheKey = null;
+		if (decodeResultCache != null) {
+			cacheKey = createCacheKey(decodeResultCache, decodeInfo);
+			Result[] cachedResults = cacheKey != null ? decodeResultCache.get(cacheKey) : null;
+			if (cachedResults != null) {
+				return cachedResults.length > 0 ? cachedResults : null;
+			}
 		}
 		
-		PlanarYUVLuminanceSource source = new PlanarYUVLuminanceSource(
-				resultInfo.data, resultInfo.dataWidth, resultInfo.dataHeight,
-				decodeInfo.decodeRect.left, decodeInfo.decodeRect.top,
-				decodeInfo.decodeRect.width(), decodeInfo.decodeRect.height(),
-				false);
-		if (isCancelled()) {
+		StillImageDecoder stillImageDecoder = new StillImageDecoder(mMaxImageSize);
+		Result[] results;
+		try {
+			results = stillImageDecoder.decode(new FileImageSource(decodeInfo.file),
+					multiFormatReader, mMultipleBarcodeReader, mHints);
+		} catch (ReaderException ignored) {
+			results = new Result[0];
+		} catch (OutOfMemoryError ignored) {
+			// 内存不足不代表图片中没有条码，不缓存
 			return null;
 		}
-		
-		BinaryBitmap binaryBitmap = new BinaryBitmap(new HybridBinarizer(source));
-		return multiFormatReader.decodeWithState(binaryBitmap);
-	}
-	
-	private Result decodeFile(DecodeInfo decodeInfo, MultiFormatReader multiFormatReader) throws Exception {
-		try {
-			BitmapFactory.Options options = new BitmapFactory.Options();
-			options.inJustDecodeBounds = true;
-			BitmapFactory.decodeFile(decodeInfo.file.getPath(), options);
-			
-			options.inSampleSize = calculateInSampleSize(options, mDisplayMetrics.widthPixels, mDisplayMetrics.heightPixels);
-			
-			double widthScale = ((double) options.outWidth) / ((double) mDisplayMetrics.widthPixels);
-			double heightScale = ((double) options.outHeight) / ((double) mDisplayMetrics.heightPixels);
-			double startScale = widthScale > heightScale ? widthScale : heightScale;
-			options.inScaled = true;
-			options.inDensity = (int) (mDisplayMetrics.densityDpi * startScale);
-			options.inTargetDensity = mDisplayMetrics.densityDpi;
-			
-			options.inJustDecodeBounds = false;
-			options.inMutable = true;
-			options.inPreferredConfig = Bitmap.Config.RGB_565;
-			Bitmap bitmap = BitmapFactory.decodeFile(decodeInfo.file.getPath(), options);
-			int width = bitmap.getWidth();
-			int height = bitmap.getHeight();
-			
-			int[] pixels = new int[width * height];
-			
-			bitmap.getPixels(pixels, 0, width, 0, 0, width, height);
-			bitmap.recycle();
-			
-			RGBLuminanceSource source = new RGBLuminanceSource(width, height, pixels);
-			BinaryBitmap binaryBitmap = new BinaryBitmap(new HybridBinarizer(source));
-			return multiFormatReader.decodeWithState(binaryBitmap);
-		} catch (OutOfMemoryError error) {
-			System.gc();
+		if (cacheKey != null && !isCancelled()) {
+			decodeResultCache.put(cacheKey, results);
 		}
-		return null;
+		return results.length > 0 ? results : null;
 	}
 	
-	private int calculateInSampleSize(BitmapFactory.Options options, int requestWidth, int requestHeight) {
-		final int height = options.outHeight;
-		final int width = options.outWidth;
-		int inSampleSize = 1;
-		
-		if (height > requestHeight || width > requestWidth) {
-			final int halfHeight = height / 2;
-			final int halfWidth = width / 2;
-			
-			while ((halfHeight / inSampleSize) > requestHeight
-					&& (halfWidth / inSampleSize) > requestWidth) {
-				inSampleSize *= 2;
-			}
+	/**
+	 * @return 文件无法读取时返回 null，不使用缓存
+	 */
+	private String createCacheKey(DecodeResultCache decodeResultCache, DecodeInfo decodeInfo) {
+		String decodeConfig = mHints + "|multiple=" + (mMultipleBarcodeReader != null) + "|max=" + mMaxImageSize;
+		try {
+			return decodeResultCache.createKey(decodeInfo.file, decodeConfig);
+		} catch (IOException ignored) {
+			return null;
 		}
-		
-		return inSampleSize;
 	}
 	
 	@Override
-	protected void onPostExecute(Result result) {
+	protected void onPostExecute(Result[] results) {
 		if (isCancelled()) {
 			return;
 		}
@@ -140,63 +119,7 @@ class DecodeTask extends AsyncTask<DecodeInfo, Void, Result> {
 			return;
 		}
 		
-		if (result == null) {
-			scanView.requestPreview();
-			if (mNotifyFailure && scanView.mOnScanListener != null) {
-				scanView.mOnScanListener.decodeFailure();
-			}
-			return;
-		}
-		
-		if (scanView.mOnScanListener != null) {
-			scanView.mOnScanListener.scanSuccess(result.getText());
-		}
-	}
-	
-	@SuppressWarnings("SuspiciousNameCombination")
-	private DecodeInfo rotateData(byte[] data,
-	                              int dataWidth, int dataHeight,
-	                              int rotationAngle) {
-		DecodeInfo resultInfo = new DecodeInfo();
-		resultInfo.data = new byte[data.length];
-		switch (rotationAngle) {
-			case 0: {
-				resultInfo.data = data;
-				resultInfo.dataWidth = dataWidth;
-				resultInfo.dataHeight = dataHeight;
-				break;
-			}
-			case 90: {
-				for (int y = 0; y < dataHeight; y++) {
-					for (int x = 0; x < dataWidth; x++) {
-						resultInfo.data[x * dataHeight + dataHeight - y - 1] = data[x + y * dataWidth];
-					}
-				}
-				resultInfo.dataWidth = dataHeight;
-				resultInfo.dataHeight = dataWidth;
-				break;
-			}
-			case 180: {
-				int length = dataWidth * dataHeight;
-				for (int index = 0; index < length; index++) {
-					resultInfo.data[index] = data[length - index - 1];
-				}
-				resultInfo.dataWidth = dataWidth;
-				resultInfo.dataHeight = dataHeight;
-				break;
-			}
-			case 270: {
-				for (int y = 0; y < dataHeight; y++) {
-					for (int x = 0; x < dataWidth; x++) {
-						resultInfo.data[(dataWidth - x - 1) * dataHeight + y] = data[x + y * dataWidth];
-					}
-				}
-				resultInfo.dataWidth = dataHeight;
-				resultInfo.dataHeight = dataWidth;
-				break;
-			}
-		}
-		return resultInfo;
+		scanView.onDecodeFileFinished(results, mNotifyFailure);
 	}
 	
 }
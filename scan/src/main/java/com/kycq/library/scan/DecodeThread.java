@@ -0,0 +1,166 @@
+package com.kycq.library.scan;
+
+import android.graphics.Rect;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Message;
+import android.os.Process;
+
+import com.google.zxing.Result;
+
+/**
+ * 预览帧解码线程
+ * <p>
+ * 长期持有一个解码线程和独立的 {@link DecodeEngine}，
+ * 待解码帧只保留一个槽位，新帧到达时直接替换未处理的旧帧，保证下一次总是解码最新帧。
+ * 解码结果通过 {@link #MSG_DECODE_SUCCEEDED}、{@link #MSG_DECODE_FAILED}、{@link #MSG_FRAME_REJECTED}
+ * 发送到结果 Handler，
+ * {@link Message#obj} 为对应的 {@link DecodeInfo}，{@link Message#arg1} 为帧质量检测结果。
+ * 预览帧在发送结果前已归还给采集后端。
+ */
+final class DecodeThread implements Handler.Callback {
+	static final int MSG_DECODE_SUCCEEDED = 1;
+	static final int MSG_DECODE_FAILED = 2;
+	/** 帧质量检测未通过，未解码 */
+	static final int MSG_FRAME_REJECTED = 3;
+	
+	private static final int MSG_DECODE = 0;
+	
+	private final HandlerThread mHandlerThread;
+	private final Handler mHandler;
+	private final Handler mResultHandler;
+	private final DecodeEngine mDecodeEngine;
+	
+	/** 待解码帧槽位 */
+	private DecodeInfo mPendingInfo;
+	private boolean mIsQuit;
+	
+	/**
+	 * @param resultHandler 接收解码结果
+	 * @param decodeEngine  解码引擎，只在本线程中使用
+	 */
+	DecodeThread(Handler resultHandler, DecodeEngine decodeEngine) {
+		mResultHandler = resultHandler;
+		mDecodeEngine = decodeEngine;
+		
+		mHandlerThread = new HandlerThread("DecodeThread", Process.THREAD_PRIORITY_DISPLAY);
+		mHandlerThread.start();
+		mHandler = new Handler(mHandlerThread.getLooper(), this);
+	}
+	
+	/**
+	 * 提交待解码帧
+	 *
+	 * @param decodeInfo 帧信息
+	 * @return 被替换而放弃解码的帧，没有则返回 null；线程已退出时返回传入的帧
+	 */
+	synchronized DecodeInfo offer(DecodeInfo decodeInfo) {
+		if (mIsQuit) {
+			return decodeInfo;
+		}
+		DecodeInfo displacedInfo = mPendingInfo;
+		mPendingInfo = decodeInfo;
+		if (displacedInfo == null) {
+			mHandler.sendEmptyMessage(MSG_DECODE);
+		}
+		return displacedInfo;
+	}
+	
+	/**
+	 * 清空待解码帧
+	 *
+	 * @return 被清除的帧，没有则返回 null
+	 */
+	synchronized DecodeInfo clear() {
+		DecodeInfo pendingInfo = mPendingInfo;
+		mPendingInfo = null;
+		return pendingInfo;
+	}
+	
+	/**
+	 * 退出解码线程，正在解码的帧仍会发送结果
+	 *
+	 * @return 未解码的帧，没有则返回 null
+	 */
+	synchronized DecodeInfo quit() {
+		mIsQuit = true;
+		mHandlerThread.quit();
+		return clear();
+	}
+	
+	@Override
+	public boolean handleMessage(Message msg) {
+		if (msg.what != MSG_DECODE) {
+			return false;
+		}
+		
+		DecodeInfo decodeInfo = clear();
+		if (decodeInfo == null) {
+			return true;
+		}
+		
+		int what = decode(decodeInfo);
+		// 解码完成立即归还帧，不等待结果 Handler 处理，主线程繁忙时相机缓冲区也不会耗尽
+		CaptureFrame frame = decodeInfo.frame;
+		decodeInfo.frame = null;
+		frame.backend.releaseFrame(frame);
+		Message.obtain(mResultHandler, what, mDecodeEngine.getFrameQuality(), 0, decodeInfo).sendToTarget();
+		return true;
+	}
+	
+	/**
+	 * 解码，结果写入 {@link DecodeInfo#result}，多条码模式同时写入 {@link DecodeInfo#results}
+	 *
+	 * @return 结果消息类型
+	 */
+	private int decode(DecodeInfo decodeInfo) {
+		decodeInfo.result = null;
+		decodeInfo.results = null;
+		
+		CaptureFrame frame = decodeInfo.frame;
+		int rotationAngle = decodeInfo.rotationAngle;
+		Rect decodeRect = decodeInfo.decodeRect;
+		int left = 0;
+		int top = 0;
+		int width = RotatedLuminanceSource.getRotatedWidth(frame.width, frame.height, rotationAngle);
+		int height = RotatedLuminanceSource.getRotatedHeight(frame.width, frame.height, rotationAngle);
+		if (decodeRect != null) {
+			// 扫描框按之前的分辨率计算时可能超出本帧，只保留帧内部分
+			int right = Math.min(decodeRect.right, width);
+			int bottom = Math.min(decodeRect.bottom, height);
+			int cropLeft = Math.max(decodeRect.left, 0);
+			int cropTop = Math.max(decodeRect.top, 0);
+			if (cropLeft < right && cropTop < bottom) {
+				left = cropLeft;
+				top = cropTop;
+				width = right - cropLeft;
+				height = bottom - cropTop;
+			}
+		}
+		int status;
+		if (frame.plane != null) {
+			// 直接读取亮度平面，不复制整帧
+			status = mDecodeEngine.decode(frame.plane, frame.rowStride, frame.pixelStride,
+					frame.width, frame.height, rotationAngle,
+					left, top, width, height);
+		} else {
+			status = mDecodeEngine.decode(frame.data,
+					frame.width, frame.height, rotationAngle,
+					left, top, width, height);
+		}
+		
+		switch (status) {
+			case DecodeEngine.STATUS_SUCCESS:
+				Result[] results = mDecodeEngine.getResults();
+				decodeInfo.result = results[0];
+				if (mDecodeEngine.isMultipleDecode()) {
+					decodeInfo.results = results;
+				}
+				return MSG_DECODE_SUCCEEDED;
+			case DecodeEngine.STATUS_REJECTED:
+				return MSG_FRAME_REJECTED;
+			default:
+				return MSG_DECODE_FAILED;
+		}
+	}
+}
@@ -0,0 +1,200 @@
+package com.kycq.library.scan;
+
+import android.graphics.Point;
+import android.view.SurfaceHolder;
+
+import com.google.zxing.BarcodeFormat;
+
+import java.nio.ByteBuffer;
+import java.util.Collection;
+
+/**
+ * 回放录制帧的采集后端，用于不依赖相机的测试
+ * <p>
+ * 开始预览后由 {@link FrameReplayer} 在独立线程中按固定间隔循环回调预先添加的帧，帧未归还时跳过，
+ * 与相机缓冲区全部被持有时的表现一致。不显示预览画面，忽略分辨率选择策略和对焦信号。
+ */
+final class FakeCaptureBackend implements CaptureBackend {
+	private final int mFrameWidth;
+	private final int mFrameHeight;
+	private final int mRotationAngle;
+	private final FrameReplayer mFrameReplayer;
+	
+	private boolean mIsOpen;
+	private boolean mIsFlashMode;
+	
+	private Point mCameraResolution;
+	private Point mPreviewResolution;
+	
+	/**
+	 * @param frameWidth          帧宽度（相机方向）
+	 * @param frameHeight         帧高度（相机方向）
+	 * @param rotationAngle       帧顺时针旋转到屏幕方向的角度
+	 * @param frameIntervalMillis 回调间隔，单位毫秒
+	 */
+	FakeCaptureBackend(int frameWidth, int frameHeight, int rotationAngle, long frameIntervalMillis) {
+		mFrameWidth = frameWidth;
+		mFrameHeight = frameHeight;
+		mRotationAngle = rotationAngle;
+		mFrameReplayer = new FrameReplayer(frameIntervalMillis);
+	}
+	
+	/**
+	 * 添加 NV21 或亮度数据帧
+	 *
+	 * @param data 数据，至少 frameWidth * frameHeight 字节
+	 */
+	void addFrame(byte[] data) {
+		CaptureFrame frame = createFrame();
+		frame.data = data;
+		mFrameReplayer.addFrame(frame);
+	}
+	
+	/**
+	 * 添加按跨度存储的亮度平面帧，模拟 Camera2 的 Y 平面
+	 *
+	 * @param plane       亮度平面
+	 * @param rowStride   行跨度
+	 * @param pixelStride 像素跨度
+	 */
+	void addFrame(ByteBuffer plane, int rowStride, int pixelStride) {
+		CaptureFrame frame = createFrame();
+		frame.plane = plane;
+		frame.rowStride = rowStride;
+		frame.pixelStride = pixelStride;
+		mFrameReplayer.addFrame(frame);
+	}
+	
+	private CaptureFrame createFrame() {
+		CaptureFrame frame = new CaptureFrame();
+		frame.backend = this;
+		frame.width = mFrameWidth;
+		frame.height = mFrameHeight;
+		return frame;
+	}
+	
+	/**
+	 * @return 已回调的帧数
+	 */
+	int getDeliveredCount() {
+		return mFrameReplayer.getDeliveredCount();
+	}
+	
+	@Override
+	public boolean isCamera2() {
+		return false;
+	}
+	
+	@Override
+	public synchronized boolean isOpen() {
+		return mIsOpen;
+	}
+	
+	@Override
+	public synchronized void prepareDriver() {
+		mIsOpen = true;
+	}
+	
+	@Override
+	public synchronized void openDriver(SurfaceHolder surfaceHolder) {
+		mIsOpen = true;
+	}
+	
+	@Override
+	public synchronized void closeDriver() {
+		stopPreview();
+		mIsOpen = false;
+		mFrameReplayer.clearHeldFrames();
+	}
+	
+	@Override
+	public synchronized void startPreview() {
+		if (mIsOpen) {
+			mFrameReplayer.start();
+		}
+	}
+	
+	@Override
+	public void stopPreview() {
+		mFrameReplayer.stop();
+	}
+	
+	@Override
+	public synchronized Point getCameraResolution() {
+		if (mCameraResolution == null) {
+			mCameraResolution = new Point(mFrameWidth, mFrameHeight);
+		}
+		return mCameraResolution;
+	}
+	
+	@Override
+	public synchronized Point getPreviewResolution() {
+		if (mPreviewResolution == null) {
+			mPreviewResolution = new Point(
+					RotatedLuminanceSource.getRotatedWidth(mFrameWidth, mFrameHeight, mRotationAngle),
+					RotatedLuminanceSource.getRotatedHeight(mFrameWidth, mFrameHeight, mRotationAngle));
+		}
+		return mPreviewResolution;
+	}
+	
+	@Override
+	public int getCameraRotationAngle() {
+		return mRotationAngle;
+	}
+	
+	@Override
+	public boolean isPreviewMirrored() {
+		return false;
+	}
+	
+	@Override
+	public synchronized void setFlashMode(boolean flashMode) {
+		mIsFlashMode = flashMode;
+	}
+	
+	@Override
+	public synchronized boolean isFlashMode() {
+		return mIsFlashMode;
+	}
+	
+	@Override
+	public void setPreviewSizePolicy(PreviewSizePolicy previewSizePolicy,
+	                                 Collection<BarcodeFormat> decodeFormats,
+	                                 float finderWidthRatio, float finderHeightRatio) {
+	}
+	
+	@Override
+	public void setFrameBufferCount(int frameBufferCount) {
+	}
+	
+	@Override
+	public void setFrameCallback(final FrameCallback frameCallback) {
+		if (frameCallback == null) {
+			mFrameReplayer.setCallback(null);
+			return;
+		}
+		mFrameReplayer.setCallback(new FrameReplayer.Callback() {
+			@Override
+			public void onFrame(CaptureFrame frame) {
+				frameCallback.onFrame(frame);
+			}
+		});
+	}
+	
+	@Override
+	public void releaseFrame(CaptureFrame frame) {
+		mFrameReplayer.releaseFrame(frame);
+	}
+	
+	@Override
+	public void onFrameBlurry() {
+	}
+	
+	@Override
+	public void onDecodeFailed() {
+	}
+	
+	@Override
+	public void onDecodeSucceeded() {
+	}
+}
@@ -0,0 +1,27 @@
+package com.kycq.library.scan;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 文件图片来源
+ */
+final class FileImageSource implements ImageSource {
+	private final File mFile;
+	
+	FileImageSource(File file) {
+		mFile = file;
+	}
+	
+	@Override
+	public InputStream openStream() throws IOException {
+		return new FileInputStream(mFile);
+	}
+	
+	@Override
+	public String toString() {
+		return mFile.getPath();
+	}
+}
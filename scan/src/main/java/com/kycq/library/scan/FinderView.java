@@ -68,6 +68,14 @@ public class FinderView extends View {
 		return mFinderRect;
 	}
 	
+	@Override
+	protected void onSizeChanged(int width, int height, int oldWidth, int oldHeight) {
+		super.onSizeChanged(width, height, oldWidth, oldHeight);
+		
+		// 尺寸变化后重新计算扫描框
+		mFinderRect = null;
+	}
+	
 	@Override
 	protected void onDraw(Canvas canvas) {
 		if (!this.isScanning) {
@@ -0,0 +1,165 @@
+package com.kycq.library.scan;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.Reader;
+import com.google.zxing.ReaderException;
+import com.google.zxing.Result;
+import com.google.zxing.aztec.AztecReader;
+import com.google.zxing.datamatrix.DataMatrixReader;
+import com.google.zxing.maxicode.MaxiCodeReader;
+import com.google.zxing.oned.MultiFormatOneDReader;
+import com.google.zxing.pdf417.PDF417Reader;
+import com.google.zxing.qrcode.QRCodeReader;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 按格式分组的解码器
+ * <p>
+ * 只创建解码格式对应的子解码器，并按各格式最近一次解码成功的先后顺序尝试，
+ * 最近成功过的格式最先尝试。
+ */
+final class FormatReader implements Reader {
+	private final Map<DecodeHintType, ?> mHints;
+	private final Ranking mRanking;
+	
+	private final ReaderGroup[] mReaderGroups;
+	/** 本帧尝试顺序，复用避免每帧分配 */
+	private final ReaderGroup[] mOrderedGroups;
+	
+	/**
+	 * @param hints   解码参数，{@link DecodeHintType#POSSIBLE_FORMATS} 为空时使用全部格式
+	 * @param ranking 格式成功记录，可在多个解码器间共享
+	 */
+	FormatReader(Map<DecodeHintType, ?> hints, Ranking ranking) {
+		mHints = hints;
+		mRanking = ranking;
+		
+		Set<BarcodeFormat> formats = getPossibleFormats(hints);
+		boolean tryHarder = hints != null && hints.containsKey(DecodeHintType.TRY_HARDER);
+		
+		List<ReaderGroup> readerGroups = new ArrayList<>();
+		Set<BarcodeFormat> oneDFormats = EnumSet.noneOf(BarcodeFormat.class);
+		oneDFormats.addAll(DecodeFormat.PRODUCT_FORMATS);
+		oneDFormats.addAll(DecodeFormat.INDUSTRIAL_FORMATS);
+		oneDFormats.retainAll(formats);
+		ReaderGroup oneDGroup = null;
+		if (!oneDFormats.isEmpty()) {
+			oneDGroup = new ReaderGroup(new MultiFormatOneDReader(hints), oneDFormats);
+			if (!tryHarder) {
+				readerGroups.add(oneDGroup);
+			}
+		}
+		if (formats.contains(BarcodeFormat.QR_CODE)) {
+			readerGroups.add(new ReaderGroup(new QRCodeReader(), EnumSet.of(BarcodeFormat.QR_CODE)));
+		}
+		if (formats.contains(BarcodeFormat.DATA_MATRIX)) {
+			readerGroups.add(new ReaderGroup(new DataMatrixReader(), EnumSet.of(BarcodeFormat.DATA_MATRIX)));
+		}
+		if (formats.contains(BarcodeFormat.AZTEC)) {
+			readerGroups.add(new ReaderGroup(new AztecReader(), EnumSet.of(BarcodeFormat.AZTEC)));
+		}
+		if (formats.contains(BarcodeFormat.PDF_417)) {
+			readerGroups.add(new ReaderGroup(new PDF417Reader(), EnumSet.of(BarcodeFormat.PDF_417)));
+		}
+		if (formats.contains(BarcodeFormat.MAXICODE)) {
+			readerGroups.add(new ReaderGroup(new MaxiCodeReader(), EnumSet.of(BarcodeFormat.MAXICODE)));
+		}
+		if (oneDGroup != null && tryHarder) {
+			readerGroups.add(oneDGroup);
+		}
+		
+		mReaderGroups = readerGroups.toArray(new ReaderGroup[readerGroups.size()]);
+		mOrderedGroups = new ReaderGroup[mReaderGroups.length];
+	}
+	
+	@SuppressWarnings("unchecked")
+	private static Set<BarcodeFormat> getPossibleFormats(Map<DecodeHintType, ?> hints) {
+		Collection<BarcodeFormat> possibleFormats = hints == null ? null
+				: (Collection<BarcodeFormat>) hints.get(DecodeHintType.POSSIBLE_FORMATS);
+		if (possibleFormats == null || possibleFormats.isEmpty()) {
+			return EnumSet.allOf(BarcodeFormat.class);
+		}
+		return EnumSet.copyOf(possibleFormats);
+	}
+	
+	@Override
+	public Result decode(BinaryBitmap image) throws NotFoundException {
+		return decode(image, mHints);
+	}
+	
+	@Override
+	public Result decode(BinaryBitmap image, Map<DecodeHintType, ?> hints) throws NotFoundException {
+		ReaderGroup[] orderedGroups = mOrderedGroups;
+		int length = mReaderGroups.length;
+		// 插入排序，最近成功的排前，从未成功的保持原有顺序
+		for (int index = 0; index < length; index++) {
+			ReaderGroup readerGroup = mReaderGroups[index];
+			readerGroup.lastSuccess = mRanking.getLastSuccess(readerGroup.formats);
+			int position = index;
+			while (position > 0 && orderedGroups[position - 1].lastSuccess < readerGroup.lastSuccess) {
+				orderedGroups[position] = orderedGroups[position - 1];
+				position--;
+			}
+			orderedGroups[position] = readerGroup;
+		}
+		
+		for (int index = 0; index < length; index++) {
+			try {
+				Result result = orderedGroups[index].reader.decode(image, hints);
+				mRanking.recordSuccess(result.getBarcodeFormat());
+				return result;
+			} catch (ReaderException ignored) {
+			}
+		}
+		throw NotFoundException.getNotFoundInstance();
+	}
+	
+	@Override
+	public void reset() {
+		for (ReaderGroup readerGroup : mReaderGroups) {
+			readerGroup.reader.reset();
+		}
+	}
+	
+	private static final class ReaderGroup {
+		final Reader reader;
+		final BarcodeFormat[] formats;
+		long lastSuccess;
+		
+		ReaderGroup(Reader reader, Set<BarcodeFormat> formats) {
+			this.reader = reader;
+			this.formats = formats.toArray(new BarcodeFormat[formats.size()]);
+		}
+	}
+	
+	/**
+	 * 各格式最近一次解码成功的序号，线程安全
+	 */
+	static final class Ranking {
+		private final AtomicLong mSequence = new AtomicLong();
+		private final AtomicLongArray mLastSuccess = new AtomicLongArray(BarcodeFormat.values().length);
+		
+		void recordSuccess(BarcodeFormat format) {
+			mLastSuccess.set(format.ordinal(), mSequence.incrementAndGet());
+		}
+		
+		long getLastSuccess(BarcodeFormat[] formats) {
+			long lastSuccess = 0;
+			for (BarcodeFormat format : formats) {
+				lastSuccess = Math.max(lastSuccess, mLastSuccess.get(format.ordinal()));
+			}
+			return lastSuccess;
+		}
+	}
+}
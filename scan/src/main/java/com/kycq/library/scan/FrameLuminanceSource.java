@@ -0,0 +1,39 @@
+package com.kycq.library.scan;
+
+import com.google.zxing.LuminanceSource;
+
+/**
+ * 预览帧亮度数据源
+ * <p>
+ * 直接读取相机帧中旋转、裁剪后的扫描区域，支持逐点读取和写入已分配的数组，
+ * 帧质量检测和二值化据此避免复制整帧数据。
+ */
+abstract class FrameLuminanceSource extends LuminanceSource {
+	
+	FrameLuminanceSource(int width, int height) {
+		super(width, height);
+	}
+	
+	/**
+	 * 读取单个像素亮度
+	 *
+	 * @param x 裁剪区域内横坐标
+	 * @param y 裁剪区域内纵坐标
+	 * @return 0~255
+	 */
+	abstract int getLuminance(int x, int y);
+	
+	/**
+	 * 将裁剪区域亮度按行写入已分配的数组，避免每帧分配
+	 *
+	 * @param matrix 长度不小于 width * height
+	 */
+	abstract void copyMatrix(byte[] matrix);
+	
+	@Override
+	public byte[] getMatrix() {
+		byte[] matrix = new byte[getWidth() * getHeight()];
+		copyMatrix(matrix);
+		return matrix;
+	}
+}
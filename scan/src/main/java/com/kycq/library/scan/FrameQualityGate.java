@@ -0,0 +1,206 @@
+package com.kycq.library.scan;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 预览帧质量检测
+ * <p>
+ * 解码前在扫描区域内按网格抽样亮度，统计平均亮度、对比度和梯度能量，
+ * 过暗、过亮、没有纹理或明显模糊的帧直接跳过，不进行二值化和解码。
+ * 阈值可随时调整，各类跳过次数可用于观察检测效果。多个解码线程共享同一实例。
+ * <p>
+ * 默认关闭：固定阈值会跳过较暗或对比度较低但仍可识别的条码，需按使用场景调整阈值后开启。
+ */
+public final class FrameQualityGate {
+	/** 通过检测 */
+	static final int QUALITY_OK = 0;
+	/** 过暗 */
+	static final int QUALITY_DARK = 1;
+	/** 过亮 */
+	static final int QUALITY_BRIGHT = 2;
+	/** 对比度不足 */
+	static final int QUALITY_FLAT = 3;
+	/** 模糊 */
+	static final int QUALITY_BLURRY = 4;
+	
+	/** 每个方向最多抽样点数 */
+	private static final int MAX_SAMPLES_PER_SIDE = 96;
+	
+	private volatile boolean mIsEnabled;
+	private volatile int mMinBrightness = 20;
+	private volatile int mMaxBrightness = 240;
+	private volatile int mMinContrast = 8;
+	private volatile int mMinSharpness = 30;
+	
+	private final AtomicLong mAcceptedCount = new AtomicLong();
+	private final AtomicLong mDarkCount = new AtomicLong();
+	private final AtomicLong mBrightCount = new AtomicLong();
+	private final AtomicLong mFlatCount = new AtomicLong();
+	private final AtomicLong mBlurryCount = new AtomicLong();
+	
+	public boolean isEnabled() {
+		return mIsEnabled;
+	}
+	
+	/**
+	 * 设置是否启用检测，默认关闭，关闭后所有帧都进行解码
+	 *
+	 * @param enabled 是否启用
+	 */
+	public void setEnabled(boolean enabled) {
+		mIsEnabled = enabled;
+	}
+	
+	/**
+	 * 设置最低平均亮度，低于该值视为过暗
+	 *
+	 * @param minBrightness 0~255，默认 20
+	 */
+	public void setMinBrightness(int minBrightness) {
+		mMinBrightness = minBrightness;
+	}
+	
+	/**
+	 * 设置最高平均亮度，高于该值视为过亮
+	 *
+	 * @param maxBrightness 0~255，默认 240
+	 */
+	public void setMaxBrightness(int maxBrightness) {
+		mMaxBrightness = maxBrightness;
+	}
+	
+	/**
+	 * 设置最低对比度（亮度标准差），低于该值视为没有可识别的纹理
+	 *
+	 * @param minContrast 默认 8
+	 */
+	public void setMinContrast(int minContrast) {
+		mMinContrast = minContrast;
+	}
+	
+	/**
+	 * 设置最低清晰度（相邻像素亮度差的平方均值），低于该值视为模糊
+	 *
+	 * @param minSharpness 默认 30
+	 */
+	public void setMinSharpness(int minSharpness) {
+		mMinSharpness = minSharpness;
+	}
+	
+	/** 通过检测的帧数 */
+	public long getAcceptedCount() {
+		return mAcceptedCount.get();
+	}
+	
+	/** 因过暗跳过的帧数 */
+	public long getDarkCount() {
+		return mDarkCount.get();
+	}
+	
+	/** 因过亮跳过的帧数 */
+	public long getBrightCount() {
+		return mBrightCount.get();
+	}
+	
+	/** 因对比度不足跳过的帧数 */
+	public long getFlatCount() {
+		return mFlatCount.get();
+	}
+	
+	/** 因模糊跳过的帧数 */
+	public long getBlurryCount() {
+		return mBlurryCount.get();
+	}
+	
+	/** 跳过的帧数总和 */
+	public long getRejectedCount() {
+		return mDarkCount.get() + mBrightCount.get() + mFlatCount.get() + mBlurryCount.get();
+	}
+	
+	/**
+	 * 清空统计次数
+	 */
+	public void resetCounts() {
+		mAcceptedCount.set(0);
+		mDarkCount.set(0);
+		mBrightCount.set(0);
+		mFlatCount.set(0);
+		mBlurryCount.set(0);
+	}
+	
+	/**
+	 * 检测帧质量并计数
+	 *
+	 * @param source 扫描区域亮度数据
+	 * @return 检测结果，{@link #QUALITY_OK} 表示可以解码
+	 */
+	int check(FrameLuminanceSource source) {
+		if (!mIsEnabled) {
+			return QUALITY_OK;
+		}
+		
+		int quality = measure(source);
+		switch (quality) {
+			case QUALITY_DARK:
+				mDarkCount.incrementAndGet();
+				break;
+			case QUALITY_BRIGHT:
+				mBrightCount.incrementAndGet();
+				break;
+			case QUALITY_FLAT:
+				mFlatCount.incrementAndGet();
+				break;
+			case QUALITY_BLURRY:
+				mBlurryCount.incrementAndGet();
+				break;
+			default:
+				mAcceptedCount.incrementAndGet();
+				break;
+		}
+		return quality;
+	}
+	
+	private int measure(FrameLuminanceSource source) {
+		int width = source.getWidth();
+		int height = source.getHeight();
+		if (width < 2 || height < 2) {
+			return QUALITY_OK;
+		}
+		
+		int stepX = Math.max(1, (width - 1) / MAX_SAMPLES_PER_SIDE);
+		int stepY = Math.max(1, (height - 1) / MAX_SAMPLES_PER_SIDE);
+		
+		long sum = 0;
+		long squareSum = 0;
+		long gradientEnergy = 0;
+		int count = 0;
+		for (int y = 0; y < height - 1; y += stepY) {
+			for (int x = 0; x < width - 1; x += stepX) {
+				int luminance = source.getLuminance(x, y);
+				int dx = source.getLuminance(x + 1, y) - luminance;
+				int dy = source.getLuminance(x, y + 1) - luminance;
+				sum += luminance;
+				squareSum += luminance * luminance;
+				gradientEnergy += dx * dx + dy * dy;
+				count++;
+			}
+		}
+		
+		long mean = sum / count;
+		if (mean < mMinBrightness) {
+			return QUALITY_DARK;
+		}
+		if (mean > mMaxBrightness) {
+			return QUALITY_BRIGHT;
+		}
+		long variance = squareSum / count - mean * mean;
+		int minContrast = mMinContrast;
+		if (variance < minContrast * minContrast) {
+			return QUALITY_FLAT;
+		}
+		if (gradientEnergy / count < mMinSharpness) {
+			return QUALITY_BLURRY;
+		}
+		return QUALITY_OK;
+	}
+}
@@ -0,0 +1,164 @@
+package com.kycq.library.scan;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 循环回放预先添加的帧，{@link FakeCaptureBackend} 的回放逻辑
+ * <p>
+ * 只读写帧的数据字段，不调用 {@link CaptureBackend} 和 Android 类，可在 JVM 上测试。
+ * 可由 {@link #start()} 在独立线程中按固定间隔回调，也可直接调用 {@link #deliverNextFrame()} 逐帧回调。
+ * 帧未归还时跳过，与相机缓冲区全部被持有时的表现一致。
+ */
+final class FrameReplayer {
+	
+	/**
+	 * 回放帧回调
+	 */
+	interface Callback {
+		/**
+		 * @param frame 回放的帧，处理完成后需通过 {@link #releaseFrame(CaptureFrame)} 归还
+		 */
+		void onFrame(CaptureFrame frame);
+	}
+	
+	private final long mFrameIntervalMillis;
+	
+	private final List<CaptureFrame> mFrames = new ArrayList<>();
+	/** 已回调、尚未归还的帧 */
+	private final Map<CaptureFrame, Boolean> mHeldFrames = new IdentityHashMap<>();
+	private volatile Callback mCallback;
+	
+	private Thread mFeedThread;
+	/** 下一次回调的帧序号 */
+	private int mFrameIndex;
+	/** 已回调的帧数 */
+	private int mDeliveredCount;
+	
+	/**
+	 * @param frameIntervalMillis 回调间隔，单位毫秒
+	 */
+	FrameReplayer(long frameIntervalMillis) {
+		mFrameIntervalMillis = frameIntervalMillis;
+	}
+	
+	/**
+	 * 添加帧，按添加顺序循环回放
+	 *
+	 * @param frame 已填写数据和尺寸的帧
+	 */
+	synchronized void addFrame(CaptureFrame frame) {
+		mFrames.add(frame);
+	}
+	
+	/**
+	 * 设置帧回调，传入 null 停止回调
+	 *
+	 * @param callback 帧回调
+	 */
+	void setCallback(Callback callback) {
+		mCallback = callback;
+	}
+	
+	/**
+	 * @return 已回调的帧数
+	 */
+	synchronized int getDeliveredCount() {
+		return mDeliveredCount;
+	}
+	
+	/**
+	 * @return 已回调、尚未归还的帧数
+	 */
+	synchronized int getHeldCount() {
+		return mHeldFrames.size();
+	}
+	
+	/**
+	 * 在独立线程中按固定间隔回调，已开始时忽略
+	 */
+	synchronized void start() {
+		if (mFeedThread != null) {
+			return;
+		}
+		mFeedThread = new Thread("FrameReplayer") {
+			@Override
+			public void run() {
+				feedFrames(this);
+			}
+		};
+		mFeedThread.start();
+	}
+	
+	/**
+	 * 停止回调线程，不等待正在进行的回调
+	 */
+	void stop() {
+		Thread feedThread;
+		synchronized (this) {
+			feedThread = mFeedThread;
+			mFeedThread = null;
+		}
+		if (feedThread != null) {
+			feedThread.interrupt();
+		}
+	}
+	
+	private void feedFrames(Thread feedThread) {
+		while (true) {
+			try {
+				Thread.sleep(mFrameIntervalMillis);
+			} catch (InterruptedException e) {
+				return;
+			}
+			synchronized (this) {
+				if (mFeedThread != feedThread) {
+					return;
+				}
+			}
+			deliverNextFrame();
+		}
+	}
+	
+	/**
+	 * 按添加顺序回调下一帧，在调用线程回调
+	 *
+	 * @return 没有帧回调、没有帧或下一帧尚未归还时返回 false
+	 */
+	boolean deliverNextFrame() {
+		Callback callback = mCallback;
+		CaptureFrame frame;
+		synchronized (this) {
+			if (callback == null || mFrames.isEmpty()) {
+				return false;
+			}
+			frame = mFrames.get(mFrameIndex % mFrames.size());
+			mFrameIndex++;
+			if (mHeldFrames.containsKey(frame)) {
+				return false;
+			}
+			mHeldFrames.put(frame, Boolean.TRUE);
+			mDeliveredCount++;
+		}
+		callback.onFrame(frame);
+		return true;
+	}
+	
+	/**
+	 * 归还帧回调得到的帧
+	 *
+	 * @param frame 预览帧
+	 */
+	synchronized void releaseFrame(CaptureFrame frame) {
+		mHeldFrames.remove(frame);
+	}
+	
+	/**
+	 * 丢弃未归还帧的记录，关闭相机时调用
+	 */
+	synchronized void clearHeldFrames() {
+		mHeldFrames.clear();
+	}
+}
@@ -0,0 +1,17 @@
+package com.kycq.library.scan;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 图片数据来源
+ */
+public interface ImageSource {
+	/**
+	 * 打开图片数据流，解码时可能多次调用，每次都应从头读取，调用方负责关闭
+	 *
+	 * @return 图片数据流
+	 * @throws IOException 无法打开
+	 */
+	InputStream openStream() throws IOException;
+}
@@ -0,0 +1,93 @@
+package com.kycq.library.scan;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 耗时直方图
+ * <p>
+ * 按微秒以 2 的幂分桶，第 i 个桶统计 [2^(i-1), 2^i) 微秒的次数，记录无锁且不分配内存。
+ * 分位数返回所在桶的上限，精度为 2 倍以内。
+ */
+public final class LatencyHistogram {
+	private static final int BUCKET_COUNT = 32;
+	
+	private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKET_COUNT);
+	private final AtomicLong mCount = new AtomicLong();
+	private final AtomicLong mTotalNanos = new AtomicLong();
+	private final AtomicLong mMaxNanos = new AtomicLong();
+	
+	void record(long nanos) {
+		if (nanos < 0) {
+			nanos = 0;
+		}
+		long micros = nanos / 1000;
+		int bucket = Math.min(BUCKET_COUNT - 1, 64 - Long.numberOfLeadingZeros(micros));
+		mBuckets.incrementAndGet(bucket);
+		mCount.incrementAndGet();
+		mTotalNanos.addAndGet(nanos);
+		long maxNanos;
+		while (nanos > (maxNanos = mMaxNanos.get())) {
+			if (mMaxNanos.compareAndSet(maxNanos, nanos)) {
+				break;
+			}
+		}
+	}
+	
+	void reset() {
+		for (int index = 0; index < BUCKET_COUNT; index++) {
+			mBuckets.set(index, 0);
+		}
+		mCount.set(0);
+		mTotalNanos.set(0);
+		mMaxNanos.set(0);
+	}
+	
+	/** 记录次数 */
+	public long getCount() {
+		return mCount.get();
+	}
+	
+	/** 平均耗时，单位微秒 */
+	public long getMeanMicros() {
+		long count = mCount.get();
+		return count == 0 ? 0 : mTotalNanos.get() / count / 1000;
+	}
+	
+	/** 最大耗时，单位微秒 */
+	public long getMaxMicros() {
+		return mMaxNanos.get() / 1000;
+	}
+	
+	/**
+	 * 获取分位耗时
+	 *
+	 * @param percentile 分位，0~100，如 50、90、99
+	 * @return 分位所在桶的上限，单位微秒
+	 */
+	public long getPercentileMicros(double percentile) {
+		long count = mCount.get();
+		if (count == 0) {
+			return 0;
+		}
+		long threshold = (long) Math.ceil(count * percentile / 100D);
+		long accumulated = 0;
+		for (int index = 0; index < BUCKET_COUNT; index++) {
+			accumulated += mBuckets.get(index);
+			if (accumulated >= threshold) {
+				return 1L << index;
+			}
+		}
+		return getMaxMicros();
+	}
+	
+	@Override
+	public String toString() {
+		return "count: " + getCount()
+				+ ", mean: " + getMeanMicros() + "us"
+				+ ", p50: " + getPercentileMicros(50) + "us"
+				+ ", p90: " + getPercentileMicros(90) + "us"
+				+ ", p99: " + getPercentileMicros(99) + "us"
+				+ ", max: " + getMaxMicros() + "us";
+	}
+}
@@ -0,0 +1,131 @@
+package com.kycq.library.scan;
+
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+
+/**
+ * 亮度金字塔
+ * <p>
+ * 在扫描区域上生成两层额外的亮度数据：缩小一半的整个区域，用于快速识别近距离的大条码；
+ * 放大一倍的中心区域，用于识别远距离的小而密的条码。各层数据写入预分配的缓冲区，
+ * 尺寸不变时不再分配内存。同一实例只能在一个线程中使用。
+ */
+final class LuminancePyramid {
+	private byte[] mDownscaledBuffer;
+	private byte[] mUpscaledBuffer;
+	private byte[] mRowBuffer;
+	private byte[] mNextRowBuffer;
+	
+	/** 最近生成的一层坐标换算到扫描区域坐标的比例 */
+	private float mScale;
+	/** 最近生成的一层在扫描区域中的横向偏移 */
+	private int mOffsetX;
+	/** 最近生成的一层在扫描区域中的纵向偏移 */
+	private int mOffsetY;
+	
+	/**
+	 * 生成缩小一半的整个扫描区域，相邻 2x2 像素取平均
+	 */
+	LuminanceSource downscale(LuminanceSource source) {
+		int width = source.getWidth() / 2;
+		int height = source.getHeight() / 2;
+		byte[] buffer = mDownscaledBuffer = ensureCapacity(mDownscaledBuffer, width * height);
+		byte[] row = mRowBuffer = ensureCapacity(mRowBuffer, source.getWidth());
+		byte[] nextRow = mNextRowBuffer = ensureCapacity(mNextRowBuffer, source.getWidth());
+		
+		for (int y = 0; y < height; y++) {
+			source.getRow(y * 2, row);
+			source.getRow(y * 2 + 1, nextRow);
+			int offset = y * width;
+			for (int x = 0; x < width; x++) {
+				int sourceX = x * 2;
+				int sum = (row[sourceX] & 0xFF) + (row[sourceX + 1] & 0xFF)
+						+ (nextRow[sourceX] & 0xFF) + (nextRow[sourceX + 1] & 0xFF);
+				buffer[offset + x] = (byte) ((sum + 2) >> 2);
+			}
+		}
+		
+		mScale = 2F;
+		mOffsetX = 0;
+		mOffsetY = 0;
+		return new PlanarYUVLuminanceSource(buffer, width, height, 0, 0, width, height, false);
+	}
+	
+	/**
+	 * 生成放大一倍的中心区域，中心区域边长为扫描区域的一半，线性插值
+	 */
+	LuminanceSource upscaleCenter(LuminanceSource source) {
+		int sourceWidth = source.getWidth();
+		int sourceHeight = source.getHeight();
+		int centerWidth = sourceWidth / 2;
+		int centerHeight = sourceHeight / 2;
+		int left = (sourceWidth - centerWidth) / 2;
+		int top = (sourceHeight - centerHeight) / 2;
+		
+		int width = centerWidth * 2;
+		int height = centerHeight * 2;
+		byte[] buffer = mUpscaledBuffer = ensureCapacity(mUpscaledBuffer, width * height);
+		byte[] row = mRowBuffer = ensureCapacity(mRowBuffer, sourceWidth);
+		byte[] nextRow = mNextRowBuffer = ensureCapacity(mNextRowBuffer, sourceWidth);
+		
+		source.getRow(top, row);
+		for (int y = 0; y < centerHeight; y++) {
+			// 中心区域在扫描区域内部，下一行总是存在
+			source.getRow(top + y + 1, nextRow);
+			int evenOffset = y * 2 * width;
+			int oddOffset = evenOffset + width;
+			for (int x = 0; x < centerWidth; x++) {
+				int sourceX = left + x;
+				int current = row[sourceX] & 0xFF;
+				int right = row[sourceX + 1] & 0xFF;
+				int below = nextRow[sourceX] & 0xFF;
+				int belowRight = nextRow[sourceX + 1] & 0xFF;
+				buffer[evenOffset + x * 2] = (byte) current;
+				buffer[evenOffset + x * 2 + 1] = (byte) ((current + right + 1) >> 1);
+				buffer[oddOffset + x * 2] = (byte) ((current + below + 1) >> 1);
+				buffer[oddOffset + x * 2 + 1] = (byte) ((current + right + below + belowRight + 2) >> 2);
+			}
+			byte[] swap = row;
+			row = nextRow;
+			nextRow = swap;
+		}
+		
+		mScale = 0.5F;
+		mOffsetX = left;
+		mOffsetY = top;
+		return new PlanarYUVLuminanceSource(buffer, width, height, 0, 0, width, height, false);
+	}
+	
+	/**
+	 * 将最近生成的一层上的解码结果定位点换算到扫描区域坐标
+	 */
+	Result mapResult(Result result) {
+		ResultPoint[] points = result.getResultPoints();
+		if (points == null) {
+			return result;
+		}
+		
+		ResultPoint[] mappedPoints = new ResultPoint[points.length];
+		for (int index = 0; index < points.length; index++) {
+			ResultPoint point = points[index];
+			if (point != null) {
+				mappedPoints[index] = new ResultPoint(
+						point.getX() * mScale + mOffsetX,
+						point.getY() * mScale + mOffsetY);
+			}
+		}
+		Result mappedResult = new Result(result.getText(), result.getRawBytes(), result.getNumBits(),
+				mappedPoints, result.getBarcodeFormat(), result.getTimestamp());
+		mappedResult.putAllMetadata(result.getResultMetadata());
+		return mappedResult;
+	}
+	
+	private static byte[] ensureCapacity(byte[] buffer, int capacity) {
+		if (buffer == null || buffer.length < capacity) {
+			return new byte[capacity];
+		}
+		return buffer;
+	}
+}
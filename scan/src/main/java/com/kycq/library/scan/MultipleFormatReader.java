@@ -0,0 +1,86 @@
+package com.kycq.library.scan;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.Result;
+import com.google.zxing.multi.GenericMultipleBarcodeReader;
+import com.google.zxing.multi.MultipleBarcodeReader;
+import com.google.zxing.multi.qrcode.QRCodeMultiReader;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 单帧多条码解码器
+ * <p>
+ * 二维码使用 {@link QRCodeMultiReader} 一次定位所有定位图形，
+ * 其余格式使用 {@link GenericMultipleBarcodeReader} 围绕已识别条码分块递归查找，
+ * 相同格式和内容的结果只保留一个。
+ */
+final class MultipleFormatReader implements MultipleBarcodeReader {
+	private final Map<DecodeHintType, ?> mHints;
+	private final FormatReader mFormatReader;
+	private final GenericMultipleBarcodeReader mGenericReader;
+	private final QRCodeMultiReader mQRCodeMultiReader;
+	
+	MultipleFormatReader(Map<DecodeHintType, ?> hints, FormatReader formatReader) {
+		mHints = hints;
+		mFormatReader = formatReader;
+		mGenericReader = new GenericMultipleBarcodeReader(formatReader);
+		
+		Object possibleFormats = hints == null ? null : hints.get(DecodeHintType.POSSIBLE_FORMATS);
+		boolean hasQRCode = possibleFormats == null
+				|| ((Collection<?>) possibleFormats).isEmpty()
+				|| ((Collection<?>) possibleFormats).contains(BarcodeFormat.QR_CODE);
+		mQRCodeMultiReader = hasQRCode ? new QRCodeMultiReader() : null;
+	}
+	
+	@Override
+	public Result[] decodeMultiple(BinaryBitmap image) throws NotFoundException {
+		return decodeMultiple(image, mHints);
+	}
+	
+	@Override
+	public Result[] decodeMultiple(BinaryBitmap image, Map<DecodeHintType, ?> hints) throws NotFoundException {
+		List<Result> results = new ArrayList<>();
+		if (mQRCodeMultiReader != null) {
+			try {
+				addResults(results, mQRCodeMultiReader.decodeMultiple(image, hints));
+			} catch (NotFoundException ignored) {
+			} finally {
+				mQRCodeMultiReader.reset();
+			}
+		}
+		try {
+			addResults(results, mGenericReader.decodeMultiple(image, hints));
+		} catch (NotFoundException ignored) {
+		} finally {
+			mFormatReader.reset();
+		}
+		
+		if (results.isEmpty()) {
+			throw NotFoundException.getNotFoundInstance();
+		}
+		return results.toArray(new Result[results.size()]);
+	}
+	
+	private static void addResults(List<Result> results, Result[] newResults) {
+		for (Result newResult : newResults) {
+			boolean isDuplicate = false;
+			for (Result result : results) {
+				if (result.getBarcodeFormat() == newResult.getBarcodeFormat()
+						&& result.getText().equals(newResult.getText())) {
+					isDuplicate = true;
+					break;
+				}
+			}
+			if (!isDuplicate) {
+				results.add(newResult);
+			}
+		}
+	}
+}
@@ -0,0 +1,17 @@
+package com.kycq.library.scan;
+
+public interface OnBatchDecodeListener {
+	/**
+	 * 单张图片解码完成，按完成先后回调，在主线程执行
+	 *
+	 * @param result 解码结果
+	 */
+	void onItemDecoded(BatchResult result);
+	
+	/**
+	 * 全部图片解码完成，批次取消后不再回调
+	 *
+	 * @param batch 批次
+	 */
+	void onBatchFinished(BatchDecoder.Batch batch);
+}
@@ -0,0 +1,13 @@
+package com.kycq.library.scan;
+
+public interface OnCameraReadyListener {
+	/**
+	 * 相机已在后台线程打开并开始预览，在主线程执行
+	 */
+	void onCameraReady();
+	
+	/**
+	 * 相机无法打开，如没有权限或被其他应用占用，在主线程执行
+	 */
+	void onCameraError();
+}
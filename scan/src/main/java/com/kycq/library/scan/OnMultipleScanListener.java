@@ -0,0 +1,15 @@
+package com.kycq.library.scan;
+
+import java.util.List;
+
+/**
+ * 多条码扫描回调，通过 {@link ScanView#setMultipleDecode(boolean)} 开启后生效
+ */
+public interface OnMultipleScanListener extends OnScanListener {
+	/**
+	 * 单帧扫描到一个或多个条码
+	 *
+	 * @param results 各条码结果信息
+	 */
+	void scanSuccess(List<String> results);
+}
@@ -0,0 +1,10 @@
+package com.kycq.library.scan;
+
+public interface OnScanMetricsListener {
+	/**
+	 * 定时回调扫描统计，在主线程执行
+	 *
+	 * @param scanMetrics 扫描统计
+	 */
+	void onScanMetrics(ScanMetrics scanMetrics);
+}
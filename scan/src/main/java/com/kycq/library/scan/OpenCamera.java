@@ -17,6 +17,10 @@ final class OpenCamera {
 		this.orientation = orientation;
 	}
 	
+	int getIndex() {
+		return index;
+	}
+	
 	Camera getCamera() {
 		return camera;
 	}
@@ -0,0 +1,170 @@
+package com.kycq.library.scan;
+
+import com.google.zxing.LuminanceSource;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 按行跨度和像素跨度读取的亮度数据源
+ * <p>
+ * 直接读取 YUV_420_888 图像 Y 平面的 {@link ByteBuffer}，按行跨度和像素跨度定位像素，
+ * 按旋转角度读取裁剪区域，不复制整帧数据。缓冲区只在图像关闭前有效。
+ */
+final class PlaneLuminanceSource extends FrameLuminanceSource {
+	private final ByteBuffer mPlane;
+	/** 按行整体读取时使用，不改变原缓冲区的位置 */
+	private final ByteBuffer mRowBuffer;
+	private final int mRowStride;
+	private final int mPixelStride;
+	private final int mDataWidth;
+	private final int mDataHeight;
+	private final int mRotationAngle;
+	
+	/** 裁剪区域左上角在缓冲区中的下标 */
+	private final int mOrigin;
+	/** 旋转后横向移动一个像素对应缓冲区下标的步长 */
+	private final int mStepX;
+	/** 旋转后纵向移动一个像素对应缓冲区下标的步长 */
+	private final int mStepY;
+	
+	private final int mLeft;
+	private final int mTop;
+	
+	/**
+	 * @param plane         Y 平面数据
+	 * @param rowStride     行跨度
+	 * @param pixelStride   像素跨度
+	 * @param dataWidth     图像宽度
+	 * @param dataHeight    图像高度
+	 * @param rotationAngle 顺时针旋转角度，仅支持 0、90、180、270
+	 * @param left          裁剪区域左边界（旋转后坐标）
+	 * @param top           裁剪区域上边界（旋转后坐标）
+	 * @param width         裁剪区域宽度（旋转后坐标）
+	 * @param height        裁剪区域高度（旋转后坐标）
+	 */
+	PlaneLuminanceSource(ByteBuffer plane,
+	                     int rowStride, int pixelStride,
+	                     int dataWidth, int dataHeight,
+	                     int rotationAngle,
+	                     int left, int top,
+	                     int width, int height) {
+		super(width, height);
+		
+		int rotatedWidth = RotatedLuminanceSource.getRotatedWidth(dataWidth, dataHeight, rotationAngle);
+		int rotatedHeight = RotatedLuminanceSource.getRotatedHeight(dataWidth, dataHeight, rotationAngle);
+		if (left < 0 || top < 0 || left + width > rotatedWidth || top + height > rotatedHeight) {
+			throw new IllegalArgumentException("Crop rectangle does not fit within image data.");
+		}
+		
+		mPlane = plane;
+		mRowBuffer = plane.duplicate();
+		mRowStride = rowStride;
+		mPixelStride = pixelStride;
+		mDataWidth = dataWidth;
+		mDataHeight = dataHeight;
+		mRotationAngle = rotationAngle;
+		mLeft = left;
+		mTop = top;
+		
+		int base;
+		switch (rotationAngle) {
+			case 0:
+				base = 0;
+				mStepX = pixelStride;
+				mStepY = rowStride;
+				break;
+			case 90:
+				base = (dataHeight - 1) * rowStride;
+				mStepX = -rowStride;
+				mStepY = pixelStride;
+				break;
+			case 180:
+				base = (dataHeight - 1) * rowStride + (dataWidth - 1) * pixelStride;
+				mStepX = -pixelStride;
+				mStepY = -rowStride;
+				break;
+			case 270:
+				base = (dataWidth - 1) * pixelStride;
+				mStepX = rowStride;
+				mStepY = -pixelStride;
+				break;
+			default:
+				throw new IllegalArgumentException("Bad rotation: " + rotationAngle);
+		}
+		mOrigin = base + left * mStepX + top * mStepY;
+	}
+	
+	@Override
+	int getLuminance(int x, int y) {
+		return mPlane.get(mOrigin + x * mStepX + y * mStepY) & 0xFF;
+	}
+	
+	@Override
+	public byte[] getRow(int y, byte[] row) {
+		if (y < 0 || y >= getHeight()) {
+			throw new IllegalArgumentException("Requested row is outside the image: " + y);
+		}
+		int width = getWidth();
+		if (row == null || row.length < width) {
+			row = new byte[width];
+		}
+		readRow(mOrigin + y * mStepY, row, 0, width);
+		return row;
+	}
+	
+	@Override
+	void copyMatrix(byte[] matrix) {
+		int width = getWidth();
+		int height = getHeight();
+		for (int y = 0; y < height; y++) {
+			readRow(mOrigin + y * mStepY, matrix, y * width, width);
+		}
+	}
+	
+	private void readRow(int inputOffset, byte[] output, int outputOffset, int width) {
+		int stepX = mStepX;
+		if (stepX == 1) {
+			// 连续存储的行整体读取
+			mRowBuffer.position(inputOffset);
+			mRowBuffer.get(output, outputOffset, width);
+			return;
+		}
+		ByteBuffer plane = mPlane;
+		for (int x = 0; x < width; x++) {
+			output[outputOffset + x] = plane.get(inputOffset);
+			inputOffset += stepX;
+		}
+	}
+	
+	@Override
+	public boolean isCropSupported() {
+		return true;
+	}
+	
+	@Override
+	public LuminanceSource crop(int left, int top, int width, int height) {
+		return new PlaneLuminanceSource(mPlane,
+				mRowStride, mPixelStride,
+				mDataWidth, mDataHeight,
+				mRotationAngle,
+				mLeft + left, mTop + top,
+				width, height);
+	}
+	
+	@Override
+	public boolean isRotateSupported() {
+		return true;
+	}
+	
+	@Override
+	public LuminanceSource rotateCounterClockwise() {
+		// 整帧逆时针旋转 90 度后，裁剪区域随之旋转
+		int rotatedWidth = RotatedLuminanceSource.getRotatedWidth(mDataWidth, mDataHeight, mRotationAngle);
+		return new PlaneLuminanceSource(mPlane,
+				mRowStride, mPixelStride,
+				mDataWidth, mDataHeight,
+				(mRotationAngle + 270) % 360,
+				mTop, rotatedWidth - mLeft - getWidth(),
+				getHeight(), getWidth());
+	}
+}
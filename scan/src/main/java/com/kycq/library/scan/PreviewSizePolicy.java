@@ -0,0 +1,264 @@
+package com.kycq.library.scan;
+
+import android.graphics.Point;
+
+import com.google.zxing.BarcodeFormat;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 按解码需求选择预览分辨率
+ * <p>
+ * 根据解码格式估算条码宽度方向的模块数，要求条码在扫描框中占一定比例时每个模块不少于若干像素，
+ * 从而得到扫描框在预览帧中至少需要的像素数（一维码和 PDF417 按扫描框长边，其余二维码按短边），
+ * 再选择满足要求的最小预览分辨率，
+ * 优先与屏幕宽高比接近的分辨率。分辨率越小每帧的读取、二值化和解码越快。
+ * 需在相机打开前设置，之后修改在下次打开相机时生效。
+ */
+public final class PreviewSizePolicy {
+	/** 默认最少像素数 */
+	private static final int DEFAULT_MIN_PIXELS = 480 * 320;
+	/** 默认最多像素数 */
+	private static final int DEFAULT_MAX_PIXELS = 1920 * 1080;
+	/** 与屏幕宽高比的最大偏差 */
+	private static final float MAX_ASPECT_DISTORTION = 0.15F;
+	
+	/** 各格式条码宽度方向的常见模块数，含静区 */
+	private static final Map<BarcodeFormat, Integer> DEFAULT_MODULE_COUNTS = new EnumMap<>(BarcodeFormat.class);
+	
+	static {
+		// 二维码按中等容量估算
+		DEFAULT_MODULE_COUNTS.put(BarcodeFormat.QR_CODE, 57 + 8);
+		DEFAULT_MODULE_COUNTS.put(BarcodeFormat.DATA_MATRIX, 48 + 2);
+		DEFAULT_MODULE_COUNTS.put(BarcodeFormat.AZTEC, 45);
+		DEFAULT_MODULE_COUNTS.put(BarcodeFormat.PDF_417, 17 * 5 + 69 + 4);
+		DEFAULT_MODULE_COUNTS.put(BarcodeFormat.MAXICODE, 33);
+		// 一维码按物流、资产标签常见的 12 个字符左右估算
+		DEFAULT_MODULE_COUNTS.put(BarcodeFormat.CODE_128, 11 * 12 + 35 + 20);
+		DEFAULT_MODULE_COUNTS.put(BarcodeFormat.CODE_39, 16 * 12 + 20);
+		DEFAULT_MODULE_COUNTS.put(BarcodeFormat.CODE_93, 9 * 16 + 1 + 20);
+		DEFAULT_MODULE_COUNTS.put(BarcodeFormat.CODABAR, 12 * 12 + 20);
+		DEFAULT_MODULE_COUNTS.put(BarcodeFormat.ITF, 9 * 14 + 9 + 20);
+		DEFAULT_MODULE_COUNTS.put(BarcodeFormat.EAN_13, 95 + 18);
+		DEFAULT_MODULE_COUNTS.put(BarcodeFormat.EAN_8, 67 + 14);
+		DEFAULT_MODULE_COUNTS.put(BarcodeFormat.UPC_A, 95 + 18);
+		DEFAULT_MODULE_COUNTS.put(BarcodeFormat.UPC_E, 51 + 18);
+		DEFAULT_MODULE_COUNTS.put(BarcodeFormat.UPC_EAN_EXTENSION, 47);
+		DEFAULT_MODULE_COUNTS.put(BarcodeFormat.RSS_14, 96 + 2);
+		DEFAULT_MODULE_COUNTS.put(BarcodeFormat.RSS_EXPANDED, 17 * 12 + 2);
+	}
+	
+	private final Map<BarcodeFormat, Integer> mModuleCounts = new EnumMap<>(DEFAULT_MODULE_COUNTS);
+	/** 一维码解码器每模块约 1.5 像素即可稳定识别 */
+	private float mModulePixels = 1.5F;
+	/** 扫描时条码通常占扫描框的大部分 */
+	private float mCodeRatio = 0.75F;
+	private int mMinPixels = DEFAULT_MIN_PIXELS;
+	private int mMaxPixels = DEFAULT_MAX_PIXELS;
+	
+	/**
+	 * 设置每个模块至少需要的像素数
+	 *
+	 * @param modulePixels 像素数，默认 1.5
+	 */
+	public void setModulePixels(float modulePixels) {
+		if (modulePixels <= 0) {
+			throw new IllegalArgumentException("Module pixels must be positive: " + modulePixels);
+		}
+		mModulePixels = modulePixels;
+	}
+	
+	/**
+	 * 设置条码宽度占扫描框的最小比例，条码越小需要的分辨率越高
+	 *
+	 * @param codeRatio 0~1，默认 0.75
+	 */
+	public void setCodeRatio(float codeRatio) {
+		if (codeRatio <= 0 || codeRatio > 1) {
+			throw new IllegalArgumentException("Bad code ratio: " + codeRatio);
+		}
+		mCodeRatio = codeRatio;
+	}
+	
+	/**
+	 * 设置格式的条码宽度方向模块数，用于高容量二维码或长一维码
+	 *
+	 * @param format      解码格式
+	 * @param moduleCount 模块数，含静区
+	 */
+	public void setModuleCount(BarcodeFormat format, int moduleCount) {
+		if (moduleCount < 1) {
+			throw new IllegalArgumentException("Module count must be positive: " + moduleCount);
+		}
+		mModuleCounts.put(format, moduleCount);
+	}
+	
+	/**
+	 * 设置预览分辨率的像素数范围，无论解码需求如何都不超出该范围
+	 *
+	 * @param minPixels 最少像素数，默认 480 * 320
+	 * @param maxPixels 最多像素数，默认 1920 * 1080
+	 */
+	public void setPixelBudget(int minPixels, int maxPixels) {
+		if (minPixels < 0 || maxPixels < minPixels) {
+			throw new IllegalArgumentException("Bad pixel budget: " + minPixels + " - " + maxPixels);
+		}
+		mMinPixels = minPixels;
+		mMaxPixels = maxPixels;
+	}
+	
+	/**
+	 * 获取扫描框在预览帧中至少需要的像素数
+	 *
+	 * @param decodeFormats 解码格式
+	 * @param linear        为 true 时只计算一维码和 PDF417，沿扫描框长边排列；否则只计算其余二维码，按短边计算
+	 */
+	int getRequiredFinderPixels(Collection<BarcodeFormat> decodeFormats, boolean linear) {
+		int maxModuleCount = 0;
+		for (BarcodeFormat format : decodeFormats) {
+			if (isLinear(format) != linear) {
+				continue;
+			}
+			Integer moduleCount = mModuleCounts.get(format);
+			if (moduleCount != null) {
+				maxModuleCount = Math.max(maxModuleCount, moduleCount);
+			}
+		}
+		return (int) Math.ceil(maxModuleCount * mModulePixels / mCodeRatio);
+	}
+	
+	/**
+	 * 获取影响分辨率选择的参数，用于判断保存的相机配置是否仍然适用
+	 */
+	String getSelectionKey() {
+		return mModulePixels + "," + mCodeRatio + "," + mMinPixels + "," + mMaxPixels + "," + mModuleCounts;
+	}
+	
+	private static boolean isLinear(BarcodeFormat format) {
+		return DecodeFormat.PRODUCT_FORMATS.contains(format)
+				|| DecodeFormat.INDUSTRIAL_FORMATS.contains(format)
+				|| format == BarcodeFormat.PDF_417;
+	}
+	
+	/**
+	 * 选择预览分辨率
+	 *
+	 * @param supportedSizes    相机支持的分辨率（相机方向）
+	 * @param screenResolution  屏幕分辨率
+	 * @param rotationAngle     预览帧顺时针旋转到屏幕方向的角度
+	 * @param finderWidthRatio  扫描框宽度占预览画面宽度的比例
+	 * @param finderHeightRatio 扫描框高度占预览画面高度的比例
+	 * @param decodeFormats     解码格式
+	 * @return 支持列表为空时返回 null
+	 */
+	Point selectPreviewSize(List<Point> supportedSizes, Point screenResolution, int rotationAngle,
+	                        float finderWidthRatio, float finderHeightRatio,
+	                        Collection<BarcodeFormat> decodeFormats) {
+		int[] widths = new int[supportedSizes.size()];
+		int[] heights = new int[supportedSizes.size()];
+		for (int index = 0; index < widths.length; index++) {
+			Point size = supportedSizes.get(index);
+			widths[index] = size.x;
+			heights[index] = size.y;
+		}
+		int index = selectPreviewSizeIndex(widths, heights, screenResolution.x, screenResolution.y,
+				rotationAngle, finderWidthRatio, finderHeightRatio, decodeFormats);
+		return index >= 0 ? supportedSizes.get(index) : null;
+	}
+	
+	/**
+	 * 选择预览分辨率，分辨率以宽高数组表示，不依赖 Android 类
+	 *
+	 * @param widths            相机支持的分辨率宽度（相机方向）
+	 * @param heights           相机支持的分辨率高度（相机方向），与宽度一一对应
+	 * @param screenWidth       屏幕宽度
+	 * @param screenHeight      屏幕高度
+	 * @param rotationAngle     预览帧顺时针旋转到屏幕方向的角度
+	 * @param finderWidthRatio  扫描框宽度占预览画面宽度的比例
+	 * @param finderHeightRatio 扫描框高度占预览画面高度的比例
+	 * @param decodeFormats     解码格式
+	 * @return 选中分辨率的序号，支持列表为空时返回 -1
+	 */
+	int selectPreviewSizeIndex(final int[] widths, final int[] heights, int screenWidth, int screenHeight,
+	                           int rotationAngle, float finderWidthRatio, float finderHeightRatio,
+	                           Collection<BarcodeFormat> decodeFormats) {
+		List<Integer> candidates = new ArrayList<>(widths.length);
+		for (int index = 0; index < widths.length; index++) {
+			candidates.add(index);
+		}
+		Collections.sort(candidates, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				// 低分辨率排前，高分辨率排后
+				long aPixels = (long) widths[a] * heights[a];
+				long bPixels = (long) widths[b] * heights[b];
+				return aPixels < bPixels ? -1 : (aPixels == bPixels ? 0 : 1);
+			}
+		});
+		candidates = applyPixelBudget(candidates, widths, heights);
+		if (candidates.isEmpty()) {
+			return -1;
+		}
+		
+		int requiredShortPixels = getRequiredFinderPixels(decodeFormats, false);
+		int requiredLongPixels = getRequiredFinderPixels(decodeFormats, true);
+		float screenAspect = (float) Math.max(screenWidth, screenHeight)
+				/ Math.min(screenWidth, screenHeight);
+		int fallbackIndex = -1;
+		for (int index : candidates) {
+			int width = widths[index];
+			int height = heights[index];
+			int frameWidth = RotatedLuminanceSource.getRotatedWidth(width, height, rotationAngle);
+			int frameHeight = RotatedLuminanceSource.getRotatedHeight(width, height, rotationAngle);
+			float finderWidth = frameWidth * finderWidthRatio;
+			float finderHeight = frameHeight * finderHeightRatio;
+			if (Math.min(finderWidth, finderHeight) < requiredShortPixels
+					|| Math.max(finderWidth, finderHeight) < requiredLongPixels) {
+				continue;
+			}
+			
+			float aspect = (float) Math.max(width, height) / Math.min(width, height);
+			if (Math.abs(aspect - screenAspect) / screenAspect <= MAX_ASPECT_DISTORTION) {
+				return index;
+			}
+			if (fallbackIndex < 0) {
+				fallbackIndex = index;
+			}
+		}
+		if (fallbackIndex >= 0) {
+			return fallbackIndex;
+		}
+		// 都不满足解码需求时取范围内最大的分辨率
+		return candidates.get(candidates.size() - 1);
+	}
+	
+	/**
+	 * 保留像素数范围内的分辨率，没有时保留不超过最多像素数的最大分辨率，仍没有时保留最小分辨率
+	 *
+	 * @param sortedIndexes 分辨率序号，按像素数升序排列
+	 */
+	private List<Integer> applyPixelBudget(List<Integer> sortedIndexes, int[] widths, int[] heights) {
+		List<Integer> indexes = new ArrayList<>(sortedIndexes.size());
+		Integer largestAllowed = null;
+		for (Integer index : sortedIndexes) {
+			long pixels = (long) widths[index] * heights[index];
+			if (pixels > mMaxPixels) {
+				continue;
+			}
+			largestAllowed = index;
+			if (pixels >= mMinPixels) {
+				indexes.add(index);
+			}
+		}
+		if (indexes.isEmpty() && !sortedIndexes.isEmpty()) {
+			indexes.add(largestAllowed != null ? largestAllowed : sortedIndexes.get(0));
+		}
+		return indexes;
+	}
+}
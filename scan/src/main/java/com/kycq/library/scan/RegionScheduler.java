@@ -0,0 +1,137 @@
+package com.kycq.library.scan;
+
+import android.graphics.Rect;
+
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+
+/**
+ * 解码区域调度
+ * <p>
+ * 大多数帧只解码扫描框中心的小区域，或上次识别成功的位置附近；
+ * 每隔几帧扩大到整个扫描框，再隔更多帧解码整帧，兼顾偏离中心的条码。
+ * 返回的区域均为旋转后预览帧坐标，只读，可在多个帧间共享。
+ */
+final class RegionScheduler {
+	/** 中心区域边长占扫描框的比例 */
+	private static final float CENTER_RATIO = 0.5F;
+	/** 每隔多少帧解码整个扫描框 */
+	private static final int FINDER_INTERVAL = 3;
+	/** 每隔多少帧解码整帧 */
+	private static final int FRAME_INTERVAL = 10;
+	/** 识别成功的位置保留的帧数 */
+	private static final int HIT_FRAMES = 30;
+	
+	private int mFrameWidth;
+	private int mFrameHeight;
+	/** 扫描框区域，为 null 时表示整帧 */
+	private Rect mFinderRect;
+	private Rect mCenterRect;
+	
+	/** 最近识别成功的区域 */
+	private Rect mHitRect;
+	private int mHitFramesLeft;
+	
+	private int mFrameIndex;
+	
+	/**
+	 * 设置帧尺寸和扫描框，布局或相机参数变化后调用
+	 *
+	 * @param finderRect  扫描框区域，为 null 时以整帧为扫描框
+	 * @param frameWidth  旋转后帧宽度
+	 * @param frameHeight 旋转后帧高度
+	 */
+	synchronized void setBounds(Rect finderRect, int frameWidth, int frameHeight) {
+		mFrameWidth = frameWidth;
+		mFrameHeight = frameHeight;
+		mFinderRect = finderRect;
+		
+		Rect baseRect = finderRect != null ? finderRect : new Rect(0, 0, frameWidth, frameHeight);
+		int centerWidth = (int) (baseRect.width() * CENTER_RATIO);
+		int centerHeight = (int) (baseRect.height() * CENTER_RATIO);
+		int centerLeft = baseRect.centerX() - centerWidth / 2;
+		int centerTop = baseRect.centerY() - centerHeight / 2;
+		mCenterRect = new Rect(centerLeft, centerTop, centerLeft + centerWidth, centerTop + centerHeight);
+		
+		mHitRect = null;
+		mHitFramesLeft = 0;
+		mFrameIndex = 0;
+	}
+	
+	/**
+	 * 获取下一帧的解码区域
+	 *
+	 * @return 解码区域，为 null 时解码整帧
+	 */
+	synchronized Rect nextRegion() {
+		if (mCenterRect == null) {
+			return null;
+		}
+		
+		int frameIndex = mFrameIndex++;
+		if (mHitFramesLeft > 0 && --mHitFramesLeft == 0) {
+			mHitRect = null;
+		}
+		
+		if (frameIndex % FRAME_INTERVAL == FRAME_INTERVAL - 1) {
+			return null;
+		}
+		if (frameIndex % FINDER_INTERVAL == FINDER_INTERVAL - 1) {
+			return mFinderRect;
+		}
+		return mHitRect != null ? mHitRect : mCenterRect;
+	}
+	
+	/**
+	 * 记录识别成功的位置，之后优先解码该位置附近
+	 *
+	 * @param decodeRect 解码区域，为 null 时表示整帧
+	 * @param results    解码结果，定位点坐标相对解码区域
+	 */
+	synchronized void recordSuccess(Rect decodeRect, Result[] results) {
+		if (mCenterRect == null) {
+			return;
+		}
+		
+		float minX = Float.MAX_VALUE;
+		float minY = Float.MAX_VALUE;
+		float maxX = -Float.MAX_VALUE;
+		float maxY = -Float.MAX_VALUE;
+		for (Result result : results) {
+			ResultPoint[] points = result.getResultPoints();
+			if (points == null) {
+				continue;
+			}
+			for (ResultPoint point : points) {
+				if (point == null) {
+					continue;
+				}
+				minX = Math.min(minX, point.getX());
+				minY = Math.min(minY, point.getY());
+				maxX = Math.max(maxX, point.getX());
+				maxY = Math.max(maxY, point.getY());
+			}
+		}
+		if (minX > maxX) {
+			return;
+		}
+		
+		// 定位点通常只覆盖条码的一部分，四周各留出条码大小一半的余量，且不小于中心区域
+		int offsetX = decodeRect != null ? decodeRect.left : 0;
+		int offsetY = decodeRect != null ? decodeRect.top : 0;
+		float width = Math.max((maxX - minX) * 2, mCenterRect.width());
+		float height = Math.max((maxY - minY) * 2, mCenterRect.height());
+		float centerX = offsetX + (minX + maxX) / 2;
+		float centerY = offsetY + (minY + maxY) / 2;
+		Rect hitRect = new Rect(
+				(int) (centerX - width / 2),
+				(int) (centerY - height / 2),
+				(int) (centerX + width / 2),
+				(int) (centerY + height / 2));
+		if (!hitRect.intersect(0, 0, mFrameWidth, mFrameHeight)) {
+			return;
+		}
+		mHitRect = hitRect;
+		mHitFramesLeft = HIT_FRAMES;
+	}
+}
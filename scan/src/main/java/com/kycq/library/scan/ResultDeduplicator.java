@@ -0,0 +1,110 @@
+package com.kycq.library.scan;
+
+import com.google.zxing.Result;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 连续扫描结果去重
+ * <p>
+ * 按格式和内容记录最近出现的条码，容量有限，超出时淘汰最久未出现的条码。
+ * 同一条码在时间窗口或帧数窗口内再次出现视为重复，并刷新出现时间，
+ * 条码一直停留在画面中时只回调一次。只在主线程中使用。
+ */
+final class ResultDeduplicator {
+	/** 默认记录的条码数量 */
+	static final int DEFAULT_CAPACITY = 32;
+	/** 默认时间窗口，单位毫秒 */
+	static final long DEFAULT_WINDOW_MILLIS = 2000;
+	
+	private final LinkedHashMap<String, Sighting> mSightings;
+	
+	private long mWindowMillis = DEFAULT_WINDOW_MILLIS;
+	private int mWindowFrames;
+	/** 已解码的帧数，用于帧数窗口 */
+	private long mFrameIndex;
+	
+	ResultDeduplicator(final int capacity) {
+		mSightings = new LinkedHashMap<String, Sighting>(capacity, 0.75F, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Sighting> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+	
+	/**
+	 * 设置去重窗口，同一条码距上次出现未超过任一窗口时视为重复
+	 *
+	 * @param windowMillis 时间窗口，单位毫秒，小于等于 0 时不按时间去重
+	 * @param windowFrames 帧数窗口，小于等于 0 时不按帧数去重
+	 */
+	void setWindow(long windowMillis, int windowFrames) {
+		mWindowMillis = windowMillis;
+		mWindowFrames = windowFrames;
+	}
+	
+	/**
+	 * 记录一帧解码完成，无论是否识别成功
+	 */
+	void nextFrame() {
+		mFrameIndex++;
+	}
+	
+	/**
+	 * 清空记录，之后出现的条码都视为新条码
+	 */
+	void clear() {
+		mSightings.clear();
+	}
+	
+	/**
+	 * 过滤重复结果，并记录本次出现
+	 *
+	 * @param results   解码结果
+	 * @param nowMillis 当前时间，单位毫秒
+	 * @return 新出现的结果，全部重复时为空数组
+	 */
+	Result[] filter(Result[] results, long nowMillis) {
+		List<Result> newResults = new ArrayList<>(results.length);
+		for (Result result : results) {
+			String key = result.getBarcodeFormat() + ":" + result.getText();
+			Sighting sighting = mSightings.get(key);
+			if (sighting == null) {
+				mSightings.put(key, new Sighting(nowMillis, mFrameIndex));
+				newResults.add(result);
+				continue;
+			}
+			
+			if (!isDuplicate(sighting, nowMillis)) {
+				newResults.add(result);
+			}
+			sighting.mMillis = nowMillis;
+			sighting.mFrameIndex = mFrameIndex;
+		}
+		return newResults.toArray(new Result[newResults.size()]);
+	}
+	
+	private boolean isDuplicate(Sighting sighting, long nowMillis) {
+		if (mWindowMillis > 0 && nowMillis - sighting.mMillis <= mWindowMillis) {
+			return true;
+		}
+		return mWindowFrames > 0 && mFrameIndex - sighting.mFrameIndex <= mWindowFrames;
+	}
+	
+	/**
+	 * 条码最近一次出现
+	 */
+	private static final class Sighting {
+		long mMillis;
+		long mFrameIndex;
+		
+		Sighting(long millis, long frameIndex) {
+			mMillis = millis;
+			mFrameIndex = frameIndex;
+		}
+	}
+}
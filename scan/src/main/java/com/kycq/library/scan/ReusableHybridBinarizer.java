@@ -0,0 +1,302 @@
+package com.kycq.library.scan;
+
+import com.google.zxing.Binarizer;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.common.BitArray;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.GlobalHistogramBinarizer;
+import com.google.zxing.common.HybridBinarizer;
+
+/**
+ * 复用缓冲区的局部阈值二值化
+ * <p>
+ * 算法与 {@link HybridBinarizer} 一致，亮度数据、分块阈值表、结果矩阵以及一维条码使用的行亮度和直方图保存在 {@link Buffers} 中，
+ * 由解码线程长期持有，连续相同尺寸的帧不再分配。
+ * 裁剪、旋转等派生图像仍使用普通的 {@link HybridBinarizer}，避免与当前帧共用缓冲区。
+ */
+final class ReusableHybridBinarizer extends Binarizer {
+	private static final int BLOCK_SIZE_POWER = 3;
+	private static final int BLOCK_SIZE = 1 << BLOCK_SIZE_POWER;
+	private static final int BLOCK_SIZE_MASK = BLOCK_SIZE - 1;
+	private static final int MINIMUM_DIMENSION = BLOCK_SIZE * 5;
+	private static final int MIN_DYNAMIC_RANGE = 24;
+	
+	private static final int LUMINANCE_BITS = 5;
+	private static final int LUMINANCE_SHIFT = 8 - LUMINANCE_BITS;
+	private static final int LUMINANCE_BUCKETS = 1 << LUMINANCE_BITS;
+	
+	private final Buffers mBuffers;
+	private BitMatrix mMatrix;
+	
+	/**
+	 * @param source  亮度数据
+	 * @param buffers 复用的缓冲区，同一时间只能被一个二值化器使用
+	 */
+	ReusableHybridBinarizer(LuminanceSource source, Buffers buffers) {
+		super(source);
+		mBuffers = buffers;
+	}
+	
+	@Override
+	public BitMatrix getBlackMatrix() throws NotFoundException {
+		if (mMatrix != null) {
+			return mMatrix;
+		}
+		
+		LuminanceSource source = getLuminanceSource();
+		int width = source.getWidth();
+		int height = source.getHeight();
+		if (width < MINIMUM_DIMENSION || height < MINIMUM_DIMENSION) {
+			// 图像过小时使用全局直方图，与 HybridBinarizer 一致
+			mMatrix = new GlobalHistogramBinarizer(source).getBlackMatrix();
+			return mMatrix;
+		}
+		
+		Buffers buffers = mBuffers;
+		byte[] luminances;
+		if (source instanceof FrameLuminanceSource) {
+			luminances = buffers.mLuminances = ensureCapacity(buffers.mLuminances, width * height);
+			((FrameLuminanceSource) source).copyMatrix(luminances);
+		} else {
+			luminances = source.getMatrix();
+		}
+		
+		int subWidth = width >> BLOCK_SIZE_POWER;
+		if ((width & BLOCK_SIZE_MASK) != 0) {
+			subWidth++;
+		}
+		int subHeight = height >> BLOCK_SIZE_POWER;
+		if ((height & BLOCK_SIZE_MASK) != 0) {
+			subHeight++;
+		}
+		int[] blackPoints = buffers.mBlackPoints;
+		if (blackPoints == null || blackPoints.length < subWidth * subHeight) {
+			blackPoints = buffers.mBlackPoints = new int[subWidth * subHeight];
+		}
+		calculateBlackPoints(luminances, subWidth, subHeight, width, height, blackPoints);
+		
+		BitMatrix matrix = buffers.mMatrix;
+		if (matrix == null || matrix.getWidth() != width || matrix.getHeight() != height) {
+			matrix = buffers.mMatrix = new BitMatrix(width, height);
+		} else {
+			matrix.clear();
+		}
+		calculateThresholdForBlock(luminances, subWidth, subHeight, width, height, blackPoints, matrix);
+		mMatrix = matrix;
+		return matrix;
+	}
+	
+	/**
+	 * 按行直方图二值化单行，供一维条码识别使用
+	 */
+	@Override
+	public BitArray getBlackRow(int y, BitArray row) throws NotFoundException {
+		LuminanceSource source = getLuminanceSource();
+		int width = source.getWidth();
+		if (row == null || row.getSize() < width) {
+			row = new BitArray(width);
+		} else {
+			row.clear();
+		}
+		
+		Buffers buffers = mBuffers;
+		byte[] luminances = buffers.mRow = source.getRow(y, ensureCapacity(buffers.mRow, width));
+		int[] buckets = buffers.mBuckets;
+		for (int index = 0; index < LUMINANCE_BUCKETS; index++) {
+			buckets[index] = 0;
+		}
+		for (int x = 0; x < width; x++) {
+			buckets[(luminances[x] & 0xFF) >> LUMINANCE_SHIFT]++;
+		}
+		int blackPoint = estimateBlackPoint(buckets);
+		
+		if (width < 3) {
+			for (int x = 0; x < width; x++) {
+				if ((luminances[x] & 0xFF) < blackPoint) {
+					row.set(x);
+				}
+			}
+		} else {
+			// -1 4 -1 锐化后与黑点比较
+			int left = luminances[0] & 0xFF;
+			int center = luminances[1] & 0xFF;
+			for (int x = 1; x < width - 1; x++) {
+				int right = luminances[x + 1] & 0xFF;
+				if ((center * 4 - left - right) / 2 < blackPoint) {
+					row.set(x);
+				}
+				left = center;
+				center = right;
+			}
+		}
+		return row;
+	}
+	
+	@Override
+	public Binarizer createBinarizer(LuminanceSource source) {
+		return new HybridBinarizer(source);
+	}
+	
+	private static byte[] ensureCapacity(byte[] buffer, int capacity) {
+		if (buffer == null || buffer.length < capacity) {
+			return new byte[capacity];
+		}
+		return buffer;
+	}
+	
+	/**
+	 * 在直方图中取最高的两个峰之间靠近亮峰的谷底为黑点
+	 */
+	private static int estimateBlackPoint(int[] buckets) throws NotFoundException {
+		int maxBucketCount = 0;
+		int firstPeak = 0;
+		int firstPeakSize = 0;
+		for (int x = 0; x < LUMINANCE_BUCKETS; x++) {
+			if (buckets[x] > firstPeakSize) {
+				firstPeak = x;
+				firstPeakSize = buckets[x];
+			}
+			if (buckets[x] > maxBucketCount) {
+				maxBucketCount = buckets[x];
+			}
+		}
+		
+		int secondPeak = 0;
+		int secondPeakScore = 0;
+		for (int x = 0; x < LUMINANCE_BUCKETS; x++) {
+			int distanceToBiggest = x - firstPeak;
+			int score = buckets[x] * distanceToBiggest * distanceToBiggest;
+			if (score > secondPeakScore) {
+				secondPeak = x;
+				secondPeakScore = score;
+			}
+		}
+		if (firstPeak > secondPeak) {
+			int temp = firstPeak;
+			firstPeak = secondPeak;
+			secondPeak = temp;
+		}
+		// 对比度过低时不解码，避免误识别
+		if (secondPeak - firstPeak <= LUMINANCE_BUCKETS / 16) {
+			throw NotFoundException.getNotFoundInstance();
+		}
+		
+		int bestValley = secondPeak - 1;
+		int bestValleyScore = -1;
+		for (int x = secondPeak - 1; x > firstPeak; x--) {
+			int fromFirst = x - firstPeak;
+			int score = fromFirst * fromFirst * (secondPeak - x) * (maxBucketCount - buckets[x]);
+			if (score > bestValleyScore) {
+				bestValley = x;
+				bestValleyScore = score;
+			}
+		}
+		return bestValley << LUMINANCE_SHIFT;
+	}
+	
+	/**
+	 * 按 5x5 个相邻分块的平均黑点阈值二值化每个分块
+	 */
+	private static void calculateThresholdForBlock(byte[] luminances, int subWidth, int subHeight,
+	                                               int width, int height, int[] blackPoints, BitMatrix matrix) {
+		int maxYOffset = height - BLOCK_SIZE;
+		int maxXOffset = width - BLOCK_SIZE;
+		for (int y = 0; y < subHeight; y++) {
+			int yOffset = Math.min(y << BLOCK_SIZE_POWER, maxYOffset);
+			int top = cap(y, subHeight - 3);
+			for (int x = 0; x < subWidth; x++) {
+				int xOffset = Math.min(x << BLOCK_SIZE_POWER, maxXOffset);
+				int left = cap(x, subWidth - 3);
+				int sum = 0;
+				for (int z = -2; z <= 2; z++) {
+					int rowOffset = (top + z) * subWidth + left;
+					sum += blackPoints[rowOffset - 2] + blackPoints[rowOffset - 1] + blackPoints[rowOffset]
+							+ blackPoints[rowOffset + 1] + blackPoints[rowOffset + 2];
+				}
+				thresholdBlock(luminances, xOffset, yOffset, sum / 25, width, matrix);
+			}
+		}
+	}
+	
+	private static int cap(int value, int max) {
+		return value < 2 ? 2 : value > max ? max : value;
+	}
+	
+	private static void thresholdBlock(byte[] luminances, int xOffset, int yOffset,
+	                                   int threshold, int stride, BitMatrix matrix) {
+		for (int y = 0, offset = yOffset * stride + xOffset; y < BLOCK_SIZE; y++, offset += stride) {
+			for (int x = 0; x < BLOCK_SIZE; x++) {
+				// 使用 <=，阈值为 0 时纯黑像素仍为黑色
+				if ((luminances[offset + x] & 0xFF) <= threshold) {
+					matrix.set(xOffset + x, yOffset + y);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * 计算每个 8x8 分块的黑点阈值，对比度不足的分块参考相邻分块
+	 */
+	private static void calculateBlackPoints(byte[] luminances, int subWidth, int subHeight,
+	                                         int width, int height, int[] blackPoints) {
+		int maxYOffset = height - BLOCK_SIZE;
+		int maxXOffset = width - BLOCK_SIZE;
+		for (int y = 0; y < subHeight; y++) {
+			int yOffset = Math.min(y << BLOCK_SIZE_POWER, maxYOffset);
+			for (int x = 0; x < subWidth; x++) {
+				int xOffset = Math.min(x << BLOCK_SIZE_POWER, maxXOffset);
+				int sum = 0;
+				int min = 0xFF;
+				int max = 0;
+				for (int yy = 0, offset = yOffset * width + xOffset; yy < BLOCK_SIZE; yy++, offset += width) {
+					for (int xx = 0; xx < BLOCK_SIZE; xx++) {
+						int pixel = luminances[offset + xx] & 0xFF;
+						sum += pixel;
+						if (pixel < min) {
+							min = pixel;
+						}
+						if (pixel > max) {
+							max = pixel;
+						}
+					}
+					// 对比度足够后剩余行只累加
+					if (max - min > MIN_DYNAMIC_RANGE) {
+						for (yy++, offset += width; yy < BLOCK_SIZE; yy++, offset += width) {
+							for (int xx = 0; xx < BLOCK_SIZE; xx++) {
+								sum += luminances[offset + xx] & 0xFF;
+							}
+						}
+					}
+				}
+				
+				int average = sum >> (BLOCK_SIZE_POWER * 2);
+				if (max - min <= MIN_DYNAMIC_RANGE) {
+					// 分块内只有亮或只有暗的像素，取最小值的一半，并参考已计算的相邻分块
+					average = min / 2;
+					if (y > 0 && x > 0) {
+						int index = y * subWidth + x;
+						int averageNeighborBlackPoint = (blackPoints[index - subWidth]
+								+ 2 * blackPoints[index - 1]
+								+ blackPoints[index - subWidth - 1]) / 4;
+						if (min < averageNeighborBlackPoint) {
+							average = averageNeighborBlackPoint;
+						}
+					}
+				}
+				blackPoints[y * subWidth + x] = average;
+			}
+		}
+	}
+	
+	/**
+	 * 二值化缓冲区，由解码线程持有，尺寸变大时重新分配
+	 */
+	static final class Buffers {
+		private byte[] mLuminances;
+		private int[] mBlackPoints;
+		private BitMatrix mMatrix;
+		private byte[] mRow;
+		private final int[] mBuckets = new int[LUMINANCE_BUCKETS];
+	}
+}
@@ -0,0 +1,174 @@
+package com.kycq.library.scan;
+
+import com.google.zxing.LuminanceSource;
+
+/**
+ * 旋转亮度数据源
+ * <p>
+ * 直接从相机原始 NV21 数据中按旋转角度读取裁剪区域的 Y 分量，
+ * 不再旋转整帧数据，单帧开销只与裁剪区域大小相关。
+ */
+final class RotatedLuminanceSource extends FrameLuminanceSource {
+	private final byte[] mYuvData;
+	private final int mDataWidth;
+	private final int mDataHeight;
+	private final int mRotationAngle;
+	
+	/** 裁剪区域左上角在原始数据中的下标 */
+	private final int mOrigin;
+	/** 旋转后横向移动一个像素对应原始数据下标的步长 */
+	private final int mStepX;
+	/** 旋转后纵向移动一个像素对应原始数据下标的步长 */
+	private final int mStepY;
+	
+	private final int mLeft;
+	private final int mTop;
+	
+	/**
+	 * @param yuvData       原始 NV21 数据
+	 * @param dataWidth     原始数据宽度
+	 * @param dataHeight    原始数据高度
+	 * @param rotationAngle 顺时针旋转角度，仅支持 0、90、180、270
+	 * @param left          裁剪区域左边界（旋转后坐标）
+	 * @param top           裁剪区域上边界（旋转后坐标）
+	 * @param width         裁剪区域宽度（旋转后坐标）
+	 * @param height        裁剪区域高度（旋转后坐标）
+	 */
+	RotatedLuminanceSource(byte[] yuvData,
+	                       int dataWidth, int dataHeight,
+	                       int rotationAngle,
+	                       int left, int top,
+	                       int width, int height) {
+		super(width, height);
+		
+		int rotatedWidth = getRotatedWidth(dataWidth, dataHeight, rotationAngle);
+		int rotatedHeight = getRotatedHeight(dataWidth, dataHeight, rotationAngle);
+		if (left < 0 || top < 0 || left + width > rotatedWidth || top + height > rotatedHeight) {
+			throw new IllegalArgumentException("Crop rectangle does not fit within image data.");
+		}
+		
+		mYuvData = yuvData;
+		mDataWidth = dataWidth;
+		mDataHeight = dataHeight;
+		mRotationAngle = rotationAngle;
+		mLeft = left;
+		mTop = top;
+		
+		int base;
+		switch (rotationAngle) {
+			case 0:
+				base = 0;
+				mStepX = 1;
+				mStepY = dataWidth;
+				break;
+			case 90:
+				base = (dataHeight - 1) * dataWidth;
+				mStepX = -dataWidth;
+				mStepY = 1;
+				break;
+			case 180:
+				base = dataWidth * dataHeight - 1;
+				mStepX = -1;
+				mStepY = -dataWidth;
+				break;
+			case 270:
+				base = dataWidth - 1;
+				mStepX = dataWidth;
+				mStepY = -1;
+				break;
+			default:
+				throw new IllegalArgumentException("Bad rotation: " + rotationAngle);
+		}
+		mOrigin = base + left * mStepX + top * mStepY;
+	}
+	
+	static int getRotatedWidth(int dataWidth, int dataHeight, int rotationAngle) {
+		return rotationAngle == 90 || rotationAngle == 270 ? dataHeight : dataWidth;
+	}
+	
+	static int getRotatedHeight(int dataWidth, int dataHeight, int rotationAngle) {
+		return rotationAngle == 90 || rotationAngle == 270 ? dataWidth : dataHeight;
+	}
+	
+	@Override
+	int getLuminance(int x, int y) {
+		return mYuvData[mOrigin + x * mStepX + y * mStepY] & 0xFF;
+	}
+	
+	@Override
+	public byte[] getRow(int y, byte[] row) {
+		if (y < 0 || y >= getHeight()) {
+			throw new IllegalArgumentException("Requested row is outside the image: " + y);
+		}
+		int width = getWidth();
+		if (row == null || row.length < width) {
+			row = new byte[width];
+		}
+		
+		int offset = mOrigin + y * mStepY;
+		if (mStepX == 1) {
+			System.arraycopy(mYuvData, offset, row, 0, width);
+			return row;
+		}
+		
+		byte[] yuvData = mYuvData;
+		int stepX = mStepX;
+		for (int x = 0; x < width; x++) {
+			row[x] = yuvData[offset];
+			offset += stepX;
+		}
+		return row;
+	}
+	
+	@Override
+	void copyMatrix(byte[] matrix) {
+		int width = getWidth();
+		int height = getHeight();
+		
+		byte[] yuvData = mYuvData;
+		int stepX = mStepX;
+		int stepY = mStepY;
+		for (int y = 0; y < height; y++) {
+			int inputOffset = mOrigin + y * stepY;
+			int outputOffset = y * width;
+			if (stepX == 1) {
+				System.arraycopy(yuvData, inputOffset, matrix, outputOffset, width);
+				continue;
+			}
+			for (int x = 0; x < width; x++) {
+				matrix[outputOffset + x] = yuvData[inputOffset];
+				inputOffset += stepX;
+			}
+		}
+	}
+	
+	@Override
+	public boolean isCropSupported() {
+		return true;
+	}
+	
+	@Override
+	public LuminanceSource crop(int left, int top, int width, int height) {
+		return new RotatedLuminanceSource(mYuvData,
+				mDataWidth, mDataHeight,
+				mRotationAngle,
+				mLeft + left, mTop + top,
+				width, height);
+	}
+	
+	@Override
+	public boolean isRotateSupported() {
+		return true;
+	}
+	
+	@Override
+	public LuminanceSource rotateCounterClockwise() {
+		// 整帧逆时针旋转 90 度后，裁剪区域随之旋转
+		int rotatedWidth = getRotatedWidth(mDataWidth, mDataHeight, mRotationAngle);
+		return new RotatedLuminanceSource(mYuvData,
+				mDataWidth, mDataHeight,
+				(mRotationAngle + 270) % 360,
+				mTop, rotatedWidth - mLeft - getWidth(),
+				getHeight(), getWidth());
+	}
+}
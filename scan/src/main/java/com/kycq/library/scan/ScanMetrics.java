@@ -0,0 +1,233 @@
+package com.kycq.library.scan;
+
+import com.google.zxing.BarcodeFormat;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 扫描统计
+ * <p>
+ * 记录预览帧数量、丢帧、各阶段耗时、首次解码耗时和各格式命中次数。
+ * 默认关闭，关闭时各记录方法只读取一次开关，不调用计时。可随时轮询，
+ * 也可通过 {@link ScanView#setOnScanMetricsListener(OnScanMetricsListener, long)} 定时接收。
+ */
+public final class ScanMetrics {
+	/**
+	 * 解码阶段
+	 */
+	public enum Stage {
+		/** 裁剪亮度数据和帧质量检测 */
+		SOURCE,
+		/** 二值化 */
+		BINARIZE,
+		/** 条码定位与解码 */
+		DECODE,
+		/** 单帧总耗时 */
+		TOTAL
+	}
+	
+	private volatile boolean mIsEnabled;
+	
+	private final AtomicLong mFramesReceived = new AtomicLong();
+	private final AtomicLong mFramesDropped = new AtomicLong();
+	private final AtomicLong mFramesRejected = new AtomicLong();
+	private final AtomicLong mDecodeSuccesses = new AtomicLong();
+	private final AtomicLong mDecodeFailures = new AtomicLong();
+	private final AtomicLong mDecodeErrors = new AtomicLong();
+	private final AtomicLongArray mFormatCounts = new AtomicLongArray(BarcodeFormat.values().length);
+	private final LatencyHistogram[] mLatencies;
+	
+	/** 统计开始时间 */
+	private volatile long mStartNanos = System.nanoTime();
+	/** 本次扫描开始时间 */
+	private volatile long mScanStartNanos;
+	/** 首次解码成功耗时，未成功时为 -1 */
+	private volatile long mTimeToFirstDecodeNanos = -1;
+	private volatile Throwable mLastError;
+	
+	ScanMetrics() {
+		Stage[] stages = Stage.values();
+		mLatencies = new LatencyHistogram[stages.length];
+		for (int index = 0; index < stages.length; index++) {
+			mLatencies[index] = new LatencyHistogram();
+		}
+	}
+	
+	public boolean isEnabled() {
+		return mIsEnabled;
+	}
+	
+	/**
+	 * 设置是否统计，开启时清空已有数据
+	 *
+	 * @param enabled 是否统计
+	 */
+	public void setEnabled(boolean enabled) {
+		if (enabled && !mIsEnabled) {
+			reset();
+		}
+		mIsEnabled = enabled;
+	}
+	
+	/**
+	 * 清空统计数据
+	 */
+	public void reset() {
+		mFramesReceived.set(0);
+		mFramesDropped.set(0);
+		mFramesRejected.set(0);
+		mDecodeSuccesses.set(0);
+		mDecodeFailures.set(0);
+		mDecodeErrors.set(0);
+		for (int index = 0; index < mFormatCounts.length(); index++) {
+			mFormatCounts.set(index, 0);
+		}
+		for (LatencyHistogram latency : mLatencies) {
+			latency.reset();
+		}
+		mStartNanos = System.nanoTime();
+		mScanStartNanos = mStartNanos;
+		mTimeToFirstDecodeNanos = -1;
+		mLastError = null;
+	}
+	
+	/** 收到的预览帧数 */
+	public long getFramesReceived() {
+		return mFramesReceived.get();
+	}
+	
+	/** 未解码即丢弃的帧数 */
+	public long getFramesDropped() {
+		return mFramesDropped.get();
+	}
+	
+	/** 帧质量检测未通过的帧数 */
+	public long getFramesRejected() {
+		return mFramesRejected.get();
+	}
+	
+	/** 解码成功次数 */
+	public long getDecodeSuccesses() {
+		return mDecodeSuccesses.get();
+	}
+	
+	/** 解码未找到条码的次数 */
+	public long getDecodeFailures() {
+		return mDecodeFailures.get();
+	}
+	
+	/** 解码过程抛出异常的次数 */
+	public long getDecodeErrors() {
+		return mDecodeErrors.get();
+	}
+	
+	/** 最近一次解码异常，没有则返回 null */
+	public Throwable getLastError() {
+		return mLastError;
+	}
+	
+	/** 统计开始以来的平均预览帧率 */
+	public float getFrameRate() {
+		long elapsedNanos = System.nanoTime() - mStartNanos;
+		return elapsedNanos <= 0 ? 0 : mFramesReceived.get() * 1000000000F / elapsedNanos;
+	}
+	
+	/** 开始扫描到首次解码成功的耗时，单位毫秒，未成功时返回 -1 */
+	public long getTimeToFirstDecodeMillis() {
+		long timeToFirstDecodeNanos = mTimeToFirstDecodeNanos;
+		return timeToFirstDecodeNanos < 0 ? -1 : timeToFirstDecodeNanos / 1000000;
+	}
+	
+	/**
+	 * 获取阶段耗时
+	 *
+	 * @param stage 解码阶段
+	 * @return 耗时直方图
+	 */
+	public LatencyHistogram getLatency(Stage stage) {
+		return mLatencies[stage.ordinal()];
+	}
+	
+	/**
+	 * 获取格式命中次数
+	 *
+	 * @param format 条码格式
+	 * @return 解码成功次数
+	 */
+	public long getFormatCount(BarcodeFormat format) {
+		return mFormatCounts.get(format.ordinal());
+	}
+	
+	void markScanStart() {
+		if (mIsEnabled) {
+			mScanStartNanos = System.nanoTime();
+			mTimeToFirstDecodeNanos = -1;
+		}
+	}
+	
+	void recordFrameReceived() {
+		if (mIsEnabled) {
+			mFramesReceived.incrementAndGet();
+		}
+	}
+	
+	void recordFrameDropped() {
+		if (mIsEnabled) {
+			mFramesDropped.incrementAndGet();
+		}
+	}
+	
+	void recordFrameRejected() {
+		if (mIsEnabled) {
+			mFramesRejected.incrementAndGet();
+		}
+	}
+	
+	void recordStage(Stage stage, long nanos) {
+		if (mIsEnabled) {
+			mLatencies[stage.ordinal()].record(nanos);
+		}
+	}
+	
+	void recordSuccess(BarcodeFormat format) {
+		if (!mIsEnabled) {
+			return;
+		}
+		mDecodeSuccesses.incrementAndGet();
+		mFormatCounts.incrementAndGet(format.ordinal());
+		if (mTimeToFirstDecodeNanos < 0) {
+			mTimeToFirstDecodeNanos = System.nanoTime() - mScanStartNanos;
+		}
+	}
+	
+	void recordFailure() {
+		if (mIsEnabled) {
+			mDecodeFailures.incrementAndGet();
+		}
+	}
+	
+	void recordError(Throwable error) {
+		if (mIsEnabled) {
+			mDecodeErrors.incrementAndGet();
+			mLastError = error;
+		}
+	}
+	
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		builder.append("frames: ").append(getFramesReceived())
+				.append(", fps: ").append(getFrameRate())
+				.append(", dropped: ").append(getFramesDropped())
+				.append(", rejected: ").append(getFramesRejected())
+				.append(", successes: ").append(getDecodeSuccesses())
+				.append(", failures: ").append(getDecodeFailures())
+				.append(", errors: ").append(getDecodeErrors())
+				.append(", timeToFirstDecode: ").append(getTimeToFirstDecodeMillis()).append("ms");
+		for (Stage stage : Stage.values()) {
+			builder.append("\n").append(stage).append(" ").append(getLatency(stage));
+		}
+		return builder.toString();
+	}
+}
@@ -3,9 +3,15 @@ package com.kycq.library.scan;
 import android.content.Context;
 import android.graphics.Point;
 import android.graphics.Rect;
-import android.hardware.Camera;
-import android.os.AsyncTask;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Message;
+import android.os.Process;
+import android.os.SystemClock;
 import android.util.AttributeSet;
+import android.util.DisplayMetrics;
 import android.view.SurfaceHolder;
 import android.view.SurfaceView;
 import android.widget.FrameLayout;
@@ -13,21 +19,82 @@ import android.widget.FrameLayout;
 import com.google.zxing.BarcodeFormat;
 import com.google.zxing.DecodeHintType;
 import com.google.zxing.MultiFormatReader;
+import com.google.zxing.Result;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.EnumMap;
-import java.util.EnumSet;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
 
-public final class ScanView extends FrameLayout implements SurfaceHolder.Callback, Camera.PreviewCallback {
-	private CameraManager mCameraManager;
+public final class ScanView extends FrameLayout implements SurfaceHolder.Callback, CaptureBackend.FrameCallback, Handler.Callback {
+	/** 定时回调扫描统计 */
+	private static final int MSG_REPORT_METRICS = 100;
+	/** 相机在后台线程打开完成 */
+	private static final int MSG_CAMERA_OPENED = 101;
+	/** 预览在后台线程重新开始 */
+	private static final int MSG_PREVIEW_RESTARTED = 102;
+	
+	private volatile CaptureBackend mCaptureBackend;
+	/** 是否在支持的设备上使用 Camera2 */
+	private boolean mIsCamera2Enabled;
+	/** 采集后端是否由外部指定，指定后不再按设备切换 */
+	private boolean mIsCaptureBackendFixed;
+	/**
+	 * 打开、配置和关闭相机所在线程，不阻塞主线程
+	 * <p>
+	 * 相机在该线程打开，预览帧和对焦回调也在该线程执行，只有解码结果发送到主线程。
+	 */
+	private HandlerThread mCameraThread;
+	private Handler mCameraHandler;
+	/** 相机打开序号，关闭或重新打开后之前的打开结果作废 */
+	private int mCameraGeneration;
+	/** 是否已请求打开相机，包括预热 */
+	private boolean mIsCameraRequested;
+	/** 相机是否已打开并开始预览 */
+	private boolean mIsCameraReady;
+	private boolean mIsFlashMode;
+	private OnCameraReadyListener mOnCameraReadyListener;
 	private SurfaceView mPreviewView;
 	private FinderView mFinderView;
 	
 	private DecodeTask mDecodeTask;
 	private MultiFormatReader mMultiFormatReader;
+	private Map<DecodeHintType, Object> mDecodeHints;
+	/** 各格式最近解码成功记录，所有解码线程共享 */
+	private final FormatReader.Ranking mFormatRanking = new FormatReader.Ranking();
+	private final FrameQualityGate mFrameQualityGate = new FrameQualityGate();
+	private final ScanMetrics mScanMetrics = new ScanMetrics();
+	
+	private OnScanMetricsListener mOnScanMetricsListener;
+	private long mMetricsIntervalMillis;
+	
+	private final Handler mResultHandler = new Handler(Looper.getMainLooper(), this);
+	/** 解码线程数量 */
+	private int mDecodeThreadCount = 1;
+	private volatile DecodeThread[] mDecodeThreads;
+	/** 下一帧分发的解码线程，只在相机线程使用 */
+	private int mNextDecodeThread;
+	/** 是否正在接收预览帧 */
+	private volatile boolean mIsPreviewRequested;
+	/** 是否单帧识别多个条码 */
+	private boolean mIsMultipleDecode;
+	/** 是否多尺度解码 */
+	private boolean mIsPyramidDecode;
+	/** 扫描框在旋转后预览帧中的区域，在主线程计算，只读，重新计算时整体替换 */
+	private volatile Rect mDecodeRect;
+	/** 是否按中心、扫描框、整帧调度解码区域 */
+	private volatile boolean mIsAdaptiveRegion;
+	private final RegionScheduler mRegionScheduler = new RegionScheduler();
+	/** 是否连续扫描，识别成功后不停止解码 */
+	private boolean mIsContinuousScan;
+	private final ResultDeduplicator mResultDeduplicator = new ResultDeduplicator(ResultDeduplicator.DEFAULT_CAPACITY);
+	/** 图片解码结果缓存，未设置时为 null */
+	private DecodeResultCache mDecodeResultCache;
+	/** 预览分辨率选择策略，未设置时按屏幕分辨率选择 */
+	private PreviewSizePolicy mPreviewSizePolicy;
 	
 	OnScanListener mOnScanListener;
 	
@@ -38,7 +105,7 @@ public final class ScanView extends FrameLayout implements SurfaceHolder.Callbac
 			return;
 		}
 		
-		mCameraManager = new CameraManager(context);
+		mCaptureBackend = new CameraManager(context);
 		
 		mPreviewView = new SurfaceView(context);
 		addView(mPreviewView);
@@ -46,19 +113,7 @@ public final class ScanView extends FrameLayout implements SurfaceHolder.Callbac
 		addView(mFinderView);
 		
 		mMultiFormatReader = new MultiFormatReader();
-		Map<DecodeHintType, Object> hints = new EnumMap<>(DecodeHintType.class);
-		Collection<BarcodeFormat> decodeFormats = EnumSet.noneOf(BarcodeFormat.class);
-		decodeFormats.addAll(DecodeFormat.PRODUCT_FORMATS);
-		decodeFormats.addAll(DecodeFormat.INDUSTRIAL_FORMATS);
-		decodeFormats.addAll(DecodeFormat.QR_CODE_FORMATS);
-		decodeFormats.addAll(DecodeFormat.DATA_MATRIX_FORMATS);
-		decodeFormats.addAll(DecodeFormat.AZTEC_FORMATS);
-		decodeFormats.addAll(DecodeFormat.PDF417_FORMATS);
-		hints.put(DecodeHintType.POSSIBLE_FORMATS, decodeFormats);
-		//if (characterSet != null) {
-		//	hints.put(DecodeHintType.CHARACTER_SET, characterSet);
-		//}
-		mMultiFormatReader.setHints(hints);
+		setDecodeHints(DecodeFormat.getDefaultFormats());
 		
 		mPreviewView.getHolder().addCallback(this);
 	}
@@ -67,20 +122,347 @@ public final class ScanView extends FrameLayout implements SurfaceHolder.Callbac
 		mOnScanListener = onScanListener;
 	}
 	
+	/**
+	 * 设置相机打开结果回调，相机在后台线程打开，打开完成后才开始解码
+	 *
+	 * @param onCameraReadyListener 相机回调
+	 */
+	public void setOnCameraReadyListener(OnCameraReadyListener onCameraReadyListener) {
+		mOnCameraReadyListener = onCameraReadyListener;
+	}
+	
+	/**
+	 * 预热相机和解码线程
+	 * <p>
+	 * 在后台线程提前打开并配置相机、创建解码线程，预览画面创建后只需关联画面并开始预览，
+	 * 缩短首次预览和首次识别的时间。可在控件加入窗口前调用，如 setContentView 之后；
+	 * 控件从窗口移除时关闭相机。
+	 */
+	public void prewarm() {
+		if (mIsCameraRequested) {
+			return;
+		}
+		selectCaptureBackend();
+		if (mPreviewSizePolicy != null) {
+			applyPreviewSizePolicy();
+		}
+		createDecodeThreads();
+		openCamera(null);
+	}
+	
+	private void setDecodeHints(Collection<BarcodeFormat> decodeFormats) {
+		Map<DecodeHintType, Object> hints = DecodeFormat.createDecodeHints(decodeFormats);
+		mMultiFormatReader.setHints(hints);
+		mDecodeHints = hints;
+	}
+	
+	/**
+	 * 设置扫描模式，只解码模式对应的格式
+	 *
+	 * @param scanModes 扫描模式，如 {@link DecodeFormat#ONE_D_MODE}、{@link DecodeFormat#QR_CODE_MODE}
+	 */
+	public void setScanModes(String... scanModes) {
+		setDecodeFormats(DecodeFormat.getFormatsForModes(scanModes));
+	}
+	
+	/**
+	 * 设置解码格式，格式越少每帧解码越快
+	 *
+	 * @param decodeFormats 解码格式
+	 */
+	public void setDecodeFormats(Collection<BarcodeFormat> decodeFormats) {
+		if (decodeFormats == null || decodeFormats.isEmpty()) {
+			throw new IllegalArgumentException("Decode formats must not be empty");
+		}
+		setDecodeHints(decodeFormats);
+		
+		quitDecodeThreads();
+		if (mIsPreviewRequested) {
+			requestPreview();
+		}
+	}
+	
+	/**
+	 * 设置是否单帧识别多个条码
+	 * <p>
+	 * 开启后每帧查找全部条码，结果通过 {@link OnMultipleScanListener#scanSuccess(List)} 一次性回调；
+	 * 监听器不是 {@link OnMultipleScanListener} 时逐个回调 {@link OnScanListener#scanSuccess(String)}。
+	 *
+	 * @param multipleDecode 是否识别多个条码
+	 */
+	public void setMultipleDecode(boolean multipleDecode) {
+		if (mIsMultipleDecode == multipleDecode) {
+			return;
+		}
+		mIsMultipleDecode = multipleDecode;
+		
+		quitDecodeThreads();
+		if (mIsPreviewRequested) {
+			requestPreview();
+		}
+	}
+	
+	/**
+	 * 设置是否多尺度解码，默认关闭
+	 *
+	 * @param pyramidDecode 是否多尺度解码
+	 * @see DecodeEngine#setPyramidDecode(boolean)
+	 */
+	public void setPyramidDecode(boolean pyramidDecode) {
+		if (mIsPyramidDecode == pyramidDecode) {
+			return;
+		}
+		mIsPyramidDecode = pyramidDecode;
+		
+		quitDecodeThreads();
+		if (mIsPreviewRequested) {
+			requestPreview();
+		}
+	}
+	
+	/**
+	 * 设置是否自适应调度解码区域，默认关闭
+	 * <p>
+	 * 开启后多数帧只解码扫描框中心或上次识别位置附近的小区域，每隔几帧解码整个扫描框，
+	 * 再隔更多帧解码整帧，每帧解码更快，但对准扫描框边缘的条码要隔几帧才会识别；
+	 * 关闭后每帧都解码整个扫描框。
+	 *
+	 * @param adaptiveRegion 是否自适应调度
+	 */
+	public void setAdaptiveRegion(boolean adaptiveRegion) {
+		mIsAdaptiveRegion = adaptiveRegion;
+	}
+	
+	/**
+	 * 设置是否连续扫描，默认关闭
+	 * <p>
+	 * 关闭时识别成功后停止解码，需调用 {@link #startScan()} 继续；
+	 * 开启后识别成功不停止预览和解码，同一条码在去重窗口内只回调一次，适合流水线等连续识读场景。
+	 *
+	 * @param continuousScan 是否连续扫描
+	 * @see #setDuplicateWindow(long, int)
+	 */
+	public void setContinuousScan(boolean continuousScan) {
+		if (mIsContinuousScan == continuousScan) {
+			return;
+		}
+		mIsContinuousScan = continuousScan;
+		mResultDeduplicator.clear();
+	}
+	
+	public boolean isContinuousScan() {
+		return mIsContinuousScan;
+	}
+	
+	/**
+	 * 设置连续扫描的去重窗口，同一条码距上次出现未超过任一窗口时不再回调
+	 * <p>
+	 * 条码停留在画面中时每次识别都会刷新出现时间，离开超过窗口后再次出现才重新回调。
+	 * 两个窗口都不大于 0 时不去重。
+	 *
+	 * @param windowMillis 时间窗口，单位毫秒，默认 2000
+	 * @param windowFrames 帧数窗口，按已解码的帧计数，默认 0
+	 */
+	public void setDuplicateWindow(long windowMillis, int windowFrames) {
+		mResultDeduplicator.setWindow(windowMillis, windowFrames);
+	}
+	
+	/**
+	 * 清空连续扫描的去重记录，之后出现的条码都重新回调
+	 */
+	public void clearDuplicates() {
+		mResultDeduplicator.clear();
+	}
+	
+	/**
+	 * 设置 {@link #decodeFile(File)} 的结果缓存，再次解码同一文件时直接返回缓存结果
+	 *
+	 * @param decodeResultCache 结果缓存，可在多个 ScanView 间共享，传入 null 不使用缓存
+	 */
+	public void setDecodeResultCache(DecodeResultCache decodeResultCache) {
+		mDecodeResultCache = decodeResultCache;
+	}
+	
+	/**
+	 * 设置预览分辨率选择策略，按解码格式和扫描框大小选择满足解码需求的最小分辨率
+	 * <p>
+	 * 在相机打开前设置，已打开时在下次打开相机时生效。
+	 *
+	 * @param previewSizePolicy 选择策略，传入 null 时按屏幕分辨率选择
+	 */
+	public void setPreviewSizePolicy(PreviewSizePolicy previewSizePolicy) {
+		mPreviewSizePolicy = previewSizePolicy;
+		if (previewSizePolicy == null) {
+			mCaptureBackend.setPreviewSizePolicy(null, null, 1F, 1F);
+		}
+	}
+	
+	/**
+	 * 设置是否在支持的设备上使用 Camera2 采集预览帧，默认关闭
+	 * <p>
+	 * 开启后 Android 5.0 及以上、后置摄像头完整支持 Camera2 的设备直接读取 YUV_420_888 图像的亮度平面，
+	 * 不复制整帧数据；其余设备仍使用 {@link android.hardware.Camera}。在相机打开前设置，已打开时在下次打开相机时生效。
+	 *
+	 * @param camera2Enabled 是否使用 Camera2
+	 */
+	public void setCamera2Enabled(boolean camera2Enabled) {
+		mIsCamera2Enabled = camera2Enabled;
+	}
+	
+	/**
+	 * 指定采集后端，如回放录制帧的 {@link FakeCaptureBackend}，指定后不再按设备切换
+	 * <p>
+	 * 当前相机已打开时关闭后使用新后端重新打开。
+	 *
+	 * @param captureBackend 采集后端
+	 */
+	void setCaptureBackend(CaptureBackend captureBackend) {
+		mIsCaptureBackendFixed = true;
+		replaceCaptureBackend(captureBackend);
+	}
+	
+	/**
+	 * 相机关闭时按设置和设备能力切换采集后端
+	 */
+	private void selectCaptureBackend() {
+		if (mIsCaptureBackendFixed || mIsCameraRequested) {
+			return;
+		}
+		boolean useCamera2 = mIsCamera2Enabled && Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP
+				&& Camera2CaptureBackend.isSupported(getContext());
+		if (useCamera2 == mCaptureBackend.isCamera2()) {
+			return;
+		}
+		replaceCaptureBackend(useCamera2 ? new Camera2CaptureBackend(getContext()) : new CameraManager(getContext()));
+	}
+	
+	private void replaceCaptureBackend(CaptureBackend captureBackend) {
+		boolean isOpen = mIsCameraRequested;
+		if (isOpen) {
+			stopPreviewCallback();
+			closeCamera();
+		}
+		captureBackend.setFrameBufferCount(getFrameBufferCount());
+		captureBackend.setFlashMode(mIsFlashMode);
+		mCaptureBackend = captureBackend;
+		updateDecodeRect();
+		
+		SurfaceHolder surfaceHolder = mPreviewView.getHolder();
+		if (isOpen && surfaceHolder.getSurface() != null && surfaceHolder.getSurface().isValid()) {
+			surfaceCreated(surfaceHolder);
+		}
+	}
+	
+	/**
+	 * 每个解码线程各占用解码中和待解码两个缓冲区，另留一个给相机填充
+	 */
+	private int getFrameBufferCount() {
+		return mDecodeThreadCount * 2 + 1;
+	}
+	
+	/**
+	 * 获取帧质量检测，默认关闭，通过 {@link FrameQualityGate#setEnabled(boolean)} 开启
+	 * <p>
+	 * 连续对焦模式下只有检测到模糊帧时才强制对焦，关闭时完全由相机自行对焦。
+	 *
+	 * @return 帧质量检测
+	 */
+	public FrameQualityGate getFrameQualityGate() {
+		return mFrameQualityGate;
+	}
+	
+	/**
+	 * 获取扫描统计，默认关闭，通过 {@link ScanMetrics#setEnabled(boolean)} 开启
+	 *
+	 * @return 扫描统计
+	 */
+	public ScanMetrics getScanMetrics() {
+		return mScanMetrics;
+	}
+	
+	/**
+	 * 设置扫描统计定时回调，设置后自动开启统计，传入 null 取消回调
+	 *
+	 * @param onScanMetricsListener 统计回调
+	 * @param intervalMillis        回调间隔，单位毫秒
+	 */
+	public void setOnScanMetricsListener(OnScanMetricsListener onScanMetricsListener, long intervalMillis) {
+		mOnScanMetricsListener = onScanMetricsListener;
+		mMetricsIntervalMillis = intervalMillis;
+		mResultHandler.removeMessages(MSG_REPORT_METRICS);
+		if (onScanMetricsListener != null) {
+			mScanMetrics.setEnabled(true);
+			mResultHandler.sendEmptyMessageDelayed(MSG_REPORT_METRICS, intervalMillis);
+		}
+	}
+	
 	public void startScan() {
-		mCameraManager.startPreview();
+		if (mIsCameraReady) {
+			final CaptureBackend captureBackend = mCaptureBackend;
+			getCameraHandler().post(new Runnable() {
+				@Override
+				public void run() {
+					captureBackend.startPreview();
+				}
+			});
+		}
+		requestPreview();
 	}
 	
 	public void stopScan() {
-		mCameraManager.stopPreview();
+		if (!mIsCameraRequested) {
+			return;
+		}
+		final CaptureBackend captureBackend = mCaptureBackend;
+		getCameraHandler().post(new Runnable() {
+			@Override
+			public void run() {
+				captureBackend.stopPreview();
+			}
+		});
 	}
 	
-	public void setFlashMode(boolean flashMode) {
-		mCameraManager.setFlashMode(flashMode);
+	public void setFlashMode(final boolean flashMode) {
+		mIsFlashMode = flashMode;
+		final CaptureBackend captureBackend = mCaptureBackend;
+		getCameraHandler().post(new Runnable() {
+			@Override
+			public void run() {
+				captureBackend.setFlashMode(flashMode);
+			}
+		});
 	}
 	
 	public boolean isFlashMode() {
-		return mCameraManager.isFlashMode();
+		return mIsFlashMode;
+	}
+	
+	/**
+	 * 设置预览帧解码线程数量
+	 * <p>
+	 * 每个线程持有独立的解码器，连续的预览帧轮流分发给各线程，任一线程解码成功即结束本次扫描。
+	 * 多核设备上可设置为 {@link Runtime#availableProcessors()} 附近的值以提高每秒解码次数，超过核数时按核数创建。
+	 * <p>
+	 * 每个线程占用两个整帧预览缓冲区，共 2n+1 个：1080p 的 NV21 帧约 3MB，4 个线程约占用 27MB。
+	 *
+	 * @param decodeThreadCount 线程数量，默认为 1
+	 */
+	public void setDecodeThreadCount(int decodeThreadCount) {
+		if (decodeThreadCount < 1) {
+			throw new IllegalArgumentException("Bad decode thread count: " + decodeThreadCount);
+		}
+		// 线程多于核数不会提高解码次数，只会多占用预览缓冲区
+		decodeThreadCount = Math.min(decodeThreadCount, Runtime.getRuntime().availableProcessors());
+		if (mDecodeThreadCount == decodeThreadCount) {
+			return;
+		}
+		mDecodeThreadCount = decodeThreadCount;
+		mCaptureBackend.setFrameBufferCount(getFrameBufferCount());
+		
+		quitDecodeThreads();
+		if (mIsPreviewRequested) {
+			requestPreview();
+		}
 	}
 	
 	public void decodeFile(File file) {
@@ -90,8 +472,16 @@ public final class ScanView extends FrameLayout implements SurfaceHolder.Callbac
 		if (mDecodeTask != null) {
 			mDecodeTask.cancel(true);
 		}
+		stopPreviewCallback();
 		
-		mDecodeTask = new DecodeTask(this, mMultiFormatReader);
+		DisplayMetrics displayMetrics = getResources().getDisplayMetrics();
+		mDecodeTask = new DecodeTask(this, mMultiFormatReader, mDecodeHints,
+				Math.max(displayMetrics.widthPixels, displayMetrics.heightPixels));
+		if (mIsMultipleDecode) {
+			mDecodeTask.setMultipleBarcodeReader(new MultipleFormatReader(mDecodeHints,
+					new FormatReader(mDecodeHints, mFormatRanking)));
+		}
+		mDecodeTask.setDecodeResultCache(mDecodeResultCache);
 		mDecodeTask.setNotifyFailure(true);
 		mDecodeTask.execute(decodeInfo);
 	}
@@ -101,93 +491,446 @@ public final class ScanView extends FrameLayout implements SurfaceHolder.Callbac
 			mDecodeTask.cancel(true);
 			mDecodeTask = null;
 		}
-		mCameraManager.setPreviewCallback(this);
+		createDecodeThreads();
+		if (!mIsPreviewRequested) {
+			mScanMetrics.markScanStart();
+		}
+		mIsPreviewRequested = true;
+		if (mIsCameraReady) {
+			setFrameCallback(this);
+		}
+	}
+	
+	private void createDecodeThreads() {
+		if (mDecodeThreads == null) {
+			mDecodeThreads = new DecodeThread[mDecodeThreadCount];
+			for (int index = 0; index < mDecodeThreadCount; index++) {
+				DecodeEngine decodeEngine = new DecodeEngine(mDecodeHints,
+						mFormatRanking, mFrameQualityGate, mScanMetrics);
+				decodeEngine.setMultipleDecode(mIsMultipleDecode);
+				decodeEngine.setPyramidDecode(mIsPyramidDecode);
+				mDecodeThreads[index] = new DecodeThread(mResultHandler, decodeEngine);
+			}
+		}
+	}
+	
+	void stopPreviewCallback() {
+		mIsPreviewRequested = false;
+		if (mIsCameraReady) {
+			setFrameCallback(null);
+		}
+		if (mDecodeThreads != null) {
+			for (DecodeThread decodeThread : mDecodeThreads) {
+				releasePreviewBuffer(decodeThread.clear());
+			}
+		}
+	}
+	
+	/**
+	 * 在相机线程设置帧回调，与开始、停止预览保持顺序
+	 */
+	private void setFrameCallback(final CaptureBackend.FrameCallback frameCallback) {
+		final CaptureBackend captureBackend = mCaptureBackend;
+		getCameraHandler().post(new Runnable() {
+			@Override
+			public void run() {
+				captureBackend.setFrameCallback(frameCallback);
+			}
+		});
+	}
+	
+	private void quitDecodeThreads() {
+		if (mDecodeThreads != null) {
+			for (DecodeThread decodeThread : mDecodeThreads) {
+				releasePreviewBuffer(decodeThread.quit());
+			}
+			mDecodeThreads = null;
+		}
+	}
+	
+	private void releasePreviewBuffer(DecodeInfo decodeInfo) {
+		if (decodeInfo != null && decodeInfo.frame != null) {
+			CaptureFrame frame = decodeInfo.frame;
+			decodeInfo.frame = null;
+			frame.backend.releaseFrame(frame);
+		}
 	}
 	
 	@Override
-	public void onPreviewFrame(byte[] data, Camera camera) {
-		if (mDecodeTask != null && mDecodeTask.getStatus() == AsyncTask.Status.RUNNING) {
+	public void onFrame(CaptureFrame frame) {
+		// 在相机线程执行，主线程可能同时替换解码线程，只读取一次
+		mScanMetrics.recordFrameReceived();
+		
+		DecodeInfo decodeInfo = new DecodeInfo();
+		decodeInfo.frame = frame;
+		decodeInfo.rotationAngle = frame.backend.getCameraRotationAngle();
+		decodeInfo.decodeRect = getDecodeRect();
+		
+		DecodeThread[] decodeThreads = mDecodeThreads;
+		if (!mIsPreviewRequested || decodeThreads == null) {
+			mScanMetrics.recordFrameDropped();
+			releasePreviewBuffer(decodeInfo);
 			return;
 		}
+		mNextDecodeThread = (mNextDecodeThread + 1) % decodeThreads.length;
+		DecodeThread decodeThread = decodeThreads[mNextDecodeThread];
+		// 解码线程繁忙时丢弃未处理的旧帧
+		DecodeInfo displacedInfo = decodeThread.offer(decodeInfo);
+		if (displacedInfo != null) {
+			mScanMetrics.recordFrameDropped();
+			releasePreviewBuffer(displacedInfo);
+		}
+	}
+	
+	@Override
+	public boolean handleMessage(Message msg) {
+		if (msg.what == MSG_REPORT_METRICS) {
+			if (mOnScanMetricsListener != null) {
+				mOnScanMetricsListener.onScanMetrics(mScanMetrics);
+				mResultHandler.sendEmptyMessageDelayed(MSG_REPORT_METRICS, mMetricsIntervalMillis);
+			}
+			return true;
+		}
+		if (msg.what == MSG_CAMERA_OPENED) {
+			if (msg.arg1 == mCameraGeneration) {
+				onCameraOpened(msg.arg2 != 0);
+			}
+			return true;
+		}
+		if (msg.what == MSG_PREVIEW_RESTARTED) {
+			if (msg.arg1 == mCameraGeneration) {
+				updateDecodeRect();
+				requestPreview();
+			}
+			return true;
+		}
 		
-		DecodeInfo decodeInfo = new DecodeInfo();
-		decodeInfo.data = data;
-		decodeInfo.dataWidth = mCameraManager.getCameraResolution().x;
-		decodeInfo.dataHeight = mCameraManager.getCameraResolution().y;
-		decodeInfo.rotationAngle = mCameraManager.getCameraRotationAngle();
+		DecodeInfo decodeInfo = (DecodeInfo) msg.obj;
+		releasePreviewBuffer(decodeInfo);
+		if (!mIsPreviewRequested) {
+			return true;
+		}
+		if (mIsContinuousScan) {
+			mResultDeduplicator.nextFrame();
+		}
+		reportFocusSignal(msg.what, msg.arg1);
+		if (msg.what != DecodeThread.MSG_DECODE_SUCCEEDED) {
+			return true;
+		}
+		
+		Result[] results = decodeInfo.results != null ? decodeInfo.results : new Result[]{decodeInfo.result};
+		mRegionScheduler.recordSuccess(decodeInfo.decodeRect, results);
+		if (mIsContinuousScan) {
+			// 连续扫描不停止解码，只回调新出现的条码
+			results = mResultDeduplicator.filter(results, SystemClock.elapsedRealtime());
+			if (results.length > 0) {
+				dispatchScanSuccess(results);
+			}
+			return true;
+		}
+		
+		// 首个成功结果生效，其余线程的待解码帧随之取消
+		stopPreviewCallback();
+		dispatchScanSuccess(results);
+		return true;
+	}
+	
+	/**
+	 * 将帧质量和解码结果交给对焦控制，连续模糊或自动对焦模式下连续未识别时触发对焦
+	 * <p>
+	 * 对焦控制会操作相机，在相机线程执行，不阻塞主线程。
+	 */
+	private void reportFocusSignal(final int what, int frameQuality) {
+		if (what == DecodeThread.MSG_FRAME_REJECTED && frameQuality != FrameQualityGate.QUALITY_BLURRY) {
+			return;
+		}
+		final CaptureBackend captureBackend = mCaptureBackend;
+		getCameraHandler().post(new Runnable() {
+			@Override
+			public void run() {
+				switch (what) {
+					case DecodeThread.MSG_DECODE_SUCCEEDED:
+						captureBackend.onDecodeSucceeded();
+						break;
+					case DecodeThread.MSG_DECODE_FAILED:
+						captureBackend.onDecodeFailed();
+						break;
+					case DecodeThread.MSG_FRAME_REJECTED:
+						captureBackend.onFrameBlurry();
+						break;
+				}
+			}
+		});
+	}
+	
+	/**
+	 * 图片解码完成
+	 *
+	 * @param results       解码结果，未识别时为 null
+	 * @param notifyFailure 未识别时是否回调 {@link OnScanListener#decodeFailure()}
+	 */
+	void onDecodeFileFinished(Result[] results, boolean notifyFailure) {
+		if (results == null) {
+			requestPreview();
+			if (notifyFailure && mOnScanListener != null) {
+				mOnScanListener.decodeFailure();
+			}
+			return;
+		}
+		dispatchScanSuccess(results);
+		if (mIsContinuousScan) {
+			requestPreview();
+		}
+	}
+	
+	/**
+	 * 回调扫描结果，多条码模式下优先使用 {@link OnMultipleScanListener} 一次性回调
+	 */
+	void dispatchScanSuccess(Result[] results) {
+		if (mOnScanListener == null) {
+			return;
+		}
+		
+		if (mIsMultipleDecode && mOnScanListener instanceof OnMultipleScanListener) {
+			List<String> texts = new ArrayList<>(results.length);
+			for (Result result : results) {
+				texts.add(result.getText());
+			}
+			((OnMultipleScanListener) mOnScanListener).scanSuccess(texts);
+			return;
+		}
+		for (Result result : results) {
+			mOnScanListener.scanSuccess(result.getText());
+		}
+	}
+	
+	/**
+	 * 获取本帧解码区域，在相机线程调用
+	 *
+	 * @return 为 null 时解码整帧
+	 */
+	private Rect getDecodeRect() {
+		return mIsAdaptiveRegion ? mRegionScheduler.nextRegion() : mDecodeRect;
+	}
+	
+	/**
+	 * 在主线程重新计算扫描框区域，布局或相机参数变化后调用
+	 */
+	private void updateDecodeRect() {
+		Rect decodeRect = computeDecodeRect();
+		mDecodeRect = decodeRect;
+		
+		Point cameraResolution = mCaptureBackend.getCameraResolution();
+		if (cameraResolution != null) {
+			int rotationAngle = mCaptureBackend.getCameraRotationAngle();
+			mRegionScheduler.setBounds(decodeRect,
+					RotatedLuminanceSource.getRotatedWidth(cameraResolution.x, cameraResolution.y, rotationAngle),
+					RotatedLuminanceSource.getRotatedHeight(cameraResolution.x, cameraResolution.y, rotationAngle));
+		}
+	}
+	
+	/**
+	 * 将扫描框从控件坐标映射到旋转后的预览帧坐标
+	 * <p>
+	 * 预览控件居中并等比缩放显示整个预览帧，扫描框先换算到预览控件内，再按预览帧与预览控件的尺寸比缩放；
+	 * 前置摄像头预览为镜像显示，横坐标需要翻转。
+	 */
+	private Rect computeDecodeRect() {
+		Rect finderRect = mFinderView.getFinderRect();
+		Point cameraResolution = mCaptureBackend.getCameraResolution();
+		int previewWidth = mPreviewView.getWidth();
+		int previewHeight = mPreviewView.getHeight();
+		if (finderRect == null || cameraResolution == null || previewWidth == 0 || previewHeight == 0) {
+			return null;
+		}
+		
+		int rotationAngle = mCaptureBackend.getCameraRotationAngle();
+		int frameWidth = RotatedLuminanceSource.getRotatedWidth(cameraResolution.x, cameraResolution.y, rotationAngle);
+		int frameHeight = RotatedLuminanceSource.getRotatedHeight(cameraResolution.x, cameraResolution.y, rotationAngle);
+		float scaleX = (float) frameWidth / previewWidth;
+		float scaleY = (float) frameHeight / previewHeight;
+		
+		int offsetX = mFinderView.getLeft() - mPreviewView.getLeft();
+		int offsetY = mFinderView.getTop() - mPreviewView.getTop();
+		int left = (int) Math.floor((finderRect.left + offsetX) * scaleX);
+		int top = (int) Math.floor((finderRect.top + offsetY) * scaleY);
+		int right = (int) Math.ceil((finderRect.right + offsetX) * scaleX);
+		int bottom = (int) Math.ceil((finderRect.bottom + offsetY) * scaleY);
+		if (mCaptureBackend.isPreviewMirrored()) {
+			int mirroredLeft = frameWidth - right;
+			right = frameWidth - left;
+			left = mirroredLeft;
+		}
+		
+		// 预览控件超出 ScanView 时扫描框可能落在帧外，只保留帧内部分
+		Rect decodeRect = new Rect(left, top, right, bottom);
+		if (!decodeRect.intersect(0, 0, frameWidth, frameHeight)) {
+			return null;
+		}
+		return decodeRect;
+	}
+	
+	/**
+	 * 将当前解码格式和扫描框比例交给相机，打开相机时据此选择预览分辨率
+	 */
+	@SuppressWarnings("unchecked")
+	private void applyPreviewSizePolicy() {
+		float finderWidthRatio = 1F;
+		float finderHeightRatio = 1F;
 		Rect finderRect = mFinderView.getFinderRect();
 		if (finderRect != null) {
-			Rect decodeRect = new Rect();
-			int widthOffset = (mPreviewView.getMeasuredWidth() - getMeasuredWidth()) / 2;
-			int heightOffset = (mPreviewView.getMeasuredHeight() - getMeasuredHeight()) / 2;
-			
-			decodeRect.left = finderRect.left + widthOffset;
-			decodeRect.top = finderRect.top + heightOffset;
-			decodeRect.right = finderRect.right + widthOffset;
-			decodeRect.bottom = finderRect.bottom + heightOffset;
-			decodeInfo.decodeRect = decodeRect;
-		}
-		mDecodeTask = new DecodeTask(this, mMultiFormatReader);
-		mDecodeTask.execute(decodeInfo);
+			finderWidthRatio = (float) finderRect.width() / mFinderView.getMeasuredWidth();
+			finderHeightRatio = (float) finderRect.height() / mFinderView.getMeasuredHeight();
+		}
+		Collection<BarcodeFormat> decodeFormats =
+				(Collection<BarcodeFormat>) mDecodeHints.get(DecodeHintType.POSSIBLE_FORMATS);
+		mCaptureBackend.setPreviewSizePolicy(mPreviewSizePolicy, decodeFormats,
+				finderWidthRatio, finderHeightRatio);
 	}
 	
-	@Override
-	public void surfaceCreated(SurfaceHolder surfaceHolder) {
-		try {
-			mCameraManager.openDriver(surfaceHolder);
-		} catch (IOException e) {
-			mCameraManager.closeDriver();
+	private Handler getCameraHandler() {
+		if (mCameraThread == null) {
+			mCameraThread = new HandlerThread("CameraThread", Process.THREAD_PRIORITY_DISPLAY);
+			mCameraThread.start();
+			mCameraHandler = new Handler(mCameraThread.getLooper());
+		}
+		return mCameraHandler;
+	}
+	
+	/**
+	 * 在相机线程打开相机，完成后在主线程回调 {@link #onCameraOpened(boolean)}
+	 *
+	 * @param surfaceHolder 预览画面，为 null 时只预热，不开始预览也不回调
+	 */
+	private void openCamera(final SurfaceHolder surfaceHolder) {
+		final CaptureBackend captureBackend = mCaptureBackend;
+		final int generation = ++mCameraGeneration;
+		mIsCameraRequested = true;
+		getCameraHandler().post(new Runnable() {
+			@Override
+			public void run() {
+				boolean isOpened;
+				try {
+					if (surfaceHolder == null) {
+						captureBackend.prepareDriver();
+						return;
+					}
+					captureBackend.openDriver(surfaceHolder);
+					captureBackend.startPreview();
+					isOpened = true;
+				} catch (IOException | RuntimeException e) {
+					// 与 closeCamera 一致先停止预览，开始预览中途失败时不残留预览状态
+					captureBackend.stopPreview();
+					captureBackend.closeDriver();
+					isOpened = false;
+				}
+				Message.obtain(mResultHandler, MSG_CAMERA_OPENED, generation, isOpened ? 1 : 0).sendToTarget();
+			}
+		});
+	}
+	
+	private void onCameraOpened(boolean isOpened) {
+		if (!isOpened) {
+			mIsCameraRequested = false;
+			if (mOnCameraReadyListener != null) {
+				mOnCameraReadyListener.onCameraError();
+			}
+			return;
 		}
+		mIsCameraReady = true;
+		updateDecodeRect();
+		requestPreview();
 		
-		try {
-			mCameraManager.startPreview();
-		} catch (Exception e) {
-			mCameraManager.closeDriver();
+		int measuredWidth = mPreviewView.getMeasuredWidth();
+		int measuredHeight = mPreviewView.getMeasuredHeight();
+		Point previewResolution = mCaptureBackend.getPreviewResolution();
+		if (measuredWidth != 0 && measuredHeight != 0
+				&& (measuredWidth != previewResolution.x || measuredHeight != previewResolution.y)) {
+			requestLayout();
 		}
 		
-		mCameraManager.setPreviewCallback(this);
+		if (mOnCameraReadyListener != null) {
+			mOnCameraReadyListener.onCameraReady();
+		}
+	}
+	
+	/**
+	 * 在相机线程关闭相机并等待完成，之前未完成的打开结果作废
+	 */
+	private void closeCamera() {
+		mCameraGeneration++;
+		mIsCameraReady = false;
+		if (!mIsCameraRequested) {
+			return;
+		}
+		mIsCameraRequested = false;
 		
-		if (mCameraManager.isOpen()) {
-			int measuredWidth = mPreviewView.getMeasuredWidth();
-			int measuredHeight = mPreviewView.getMeasuredHeight();
-			if (measuredWidth == 0 || measuredHeight == 0) {
-				return;
-			}
-			
-			Point previewResolution = mCameraManager.getPreviewResolution();
-			if (measuredWidth != previewResolution.x || measuredHeight != previewResolution.y) {
-				requestLayout();
+		final CaptureBackend captureBackend = mCaptureBackend;
+		final CountDownLatch closeLatch = new CountDownLatch(1);
+		getCameraHandler().post(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					captureBackend.stopPreview();
+					captureBackend.closeDriver();
+				} finally {
+					closeLatch.countDown();
+				}
 			}
+		});
+		// 预览画面销毁后不能再使用，需等待相机释放画面
+		try {
+			closeLatch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
 		}
 	}
 	
+	@Override
+	public void surfaceCreated(SurfaceHolder surfaceHolder) {
+		selectCaptureBackend();
+		if (mPreviewSizePolicy != null) {
+			applyPreviewSizePolicy();
+		}
+		updateDecodeRect();
+		openCamera(surfaceHolder);
+		// 相机打开期间创建解码线程
+		createDecodeThreads();
+	}
+	
 	@Override
 	public void surfaceChanged(SurfaceHolder surfaceHolder, int format, int width, int height) {
 		if (surfaceHolder.getSurface() == null) {
 			return;
 		}
 		
-		if (mCameraManager.getPreviewResolution() == null) {
+		// 尚未打开时由打开流程开始预览
+		if (!mIsCameraReady) {
 			return;
 		}
 		
-		mCameraManager.stopPreview();
-		mCameraManager.startPreview();
-		
-		mCameraManager.setPreviewCallback(this);
+		final CaptureBackend captureBackend = mCaptureBackend;
+		final int generation = mCameraGeneration;
+		getCameraHandler().post(new Runnable() {
+			@Override
+			public void run() {
+				captureBackend.stopPreview();
+				captureBackend.startPreview();
+				Message.obtain(mResultHandler, MSG_PREVIEW_RESTARTED, generation, 0).sendToTarget();
+			}
+		});
 	}
 	
 	@Override
 	public void surfaceDestroyed(SurfaceHolder surfaceHolder) {
-		mCameraManager.stopPreview();
-		mCameraManager.closeDriver();
+		closeCamera();
 	}
 	
 	@Override
 	protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
 		super.onMeasure(widthMeasureSpec, heightMeasureSpec);
 		
-		Point previewResolution = mCameraManager.getPreviewResolution();
+		Point previewResolution = mCaptureBackend.getPreviewResolution();
 		if (previewResolution == null) {
 			return;
 		}
@@ -254,12 +997,35 @@ public final class ScanView extends FrameLayout implements SurfaceHolder.Callbac
 				widthOffset + measuredWidth,
 				heightOffset + measureHeight
 		);
+		updateDecodeRect();
+	}
+	
+	@Override
+	protected void onAttachedToWindow() {
+		super.onAttachedToWindow();
+		
+		if (mOnScanMetricsListener != null) {
+			mResultHandler.removeMessages(MSG_REPORT_METRICS);
+			mResultHandler.sendEmptyMessageDelayed(MSG_REPORT_METRICS, mMetricsIntervalMillis);
+		}
 	}
 	
 	@Override
 	protected void onDetachedFromWindow() {
 		super.onDetachedFromWindow();
 		
+		mIsPreviewRequested = false;
+		quitDecodeThreads();
+		mResultHandler.removeMessages(MSG_REPORT_METRICS);
+		
+		// 预热后未创建预览画面时相机仍打开
+		closeCamera();
+		if (mCameraThread != null) {
+			mCameraThread.quit();
+			mCameraThread = null;
+			mCameraHandler = null;
+		}
+		
 		if (mDecodeTask == null) {
 			return;
 		}
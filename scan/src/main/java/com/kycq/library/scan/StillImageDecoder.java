@@ -0,0 +1,337 @@
+package com.kycq.library.scan;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+import android.os.Build;
+
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.MultiFormatReader;
+import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.Reader;
+import com.google.zxing.ReaderException;
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+import com.google.zxing.ResultPointCallback;
+import com.google.zxing.common.HybridBinarizer;
+import com.google.zxing.multi.MultipleBarcodeReader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 大图解码
+ * <p>
+ * 通过 {@link BitmapRegionDecoder} 按条带解码图片，每个条带立即转换为 8 位亮度数据后复用，
+ * 不生成整图的 ARGB 像素数组，峰值内存只与缩略亮度图和单个条带相关。
+ * 先在缩略图上解码，未识别但定位到疑似条码时，只在疑似区域以更高分辨率重试一次。
+ */
+final class StillImageDecoder {
+	/** 每个条带的输出行数 */
+	private static final int STRIP_ROWS = 64;
+	
+	/** 解码亮度图的最大边长 */
+	private final int mMaxSize;
+	
+	/**
+	 * @param maxSize 解码亮度图的最大边长，超出时按 2 的幂次采样
+	 */
+	StillImageDecoder(int maxSize) {
+		mMaxSize = maxSize;
+	}
+	
+	/**
+	 * 解码图片
+	 *
+	 * @param source         图片来源
+	 * @param reader         单条码解码器
+	 * @param multipleReader 多条码解码器，为 null 时只识别单个条码
+	 * @param hints          解码参数
+	 * @return 解码结果
+	 * @throws IOException     图片无法读取
+	 * @throws ReaderException 未识别到条码
+	 */
+	Result[] decode(ImageSource source, Reader reader, MultipleBarcodeReader multipleReader,
+	                Map<DecodeHintType, ?> hints) throws IOException, ReaderException {
+		BitmapRegionDecoder regionDecoder;
+		InputStream inputStream = source.openStream();
+		try {
+			regionDecoder = BitmapRegionDecoder.newInstance(inputStream, false);
+		} catch (IOException e) {
+			regionDecoder = null;
+		} finally {
+			inputStream.close();
+		}
+		if (regionDecoder == null) {
+			// 不支持分区解码的格式（如 GIF），整图采样解码
+			return decode(readSampled(source), reader, multipleReader, hints, null);
+		}
+		
+		try {
+			int width = regionDecoder.getWidth();
+			int height = regionDecoder.getHeight();
+			int sampleSize = getSampleSize(width, height);
+			LuminancePlane overview = readRegion(regionDecoder, new Rect(0, 0, width, height), sampleSize);
+			
+			List<ResultPoint> candidatePoints = new ArrayList<>();
+			try {
+				return decode(overview, reader, multipleReader, hints, candidatePoints);
+			} catch (ReaderException e) {
+				Rect candidateRect = getCandidateRect(overview, candidatePoints, width, height);
+				if (candidateRect == null) {
+					throw e;
+				}
+				int regionSampleSize = getSampleSize(candidateRect.width(), candidateRect.height());
+				if (regionSampleSize >= sampleSize) {
+					throw e;
+				}
+				// 释放缩略图后再读取疑似区域
+				overview = null;
+				LuminancePlane region = readRegion(regionDecoder, candidateRect, regionSampleSize);
+				return decode(region, reader, multipleReader, hints, null);
+			}
+		} finally {
+			regionDecoder.recycle();
+		}
+	}
+	
+	private int getSampleSize(int width, int height) {
+		int sampleSize = 1;
+		while (Math.max(width, height) / sampleSize > mMaxSize) {
+			sampleSize *= 2;
+		}
+		return sampleSize;
+	}
+	
+	private static Result[] decode(LuminancePlane plane, Reader reader, MultipleBarcodeReader multipleReader,
+	                               Map<DecodeHintType, ?> hints,
+	                               final List<ResultPoint> candidatePoints) throws ReaderException {
+		Map<DecodeHintType, ?> originalHints = hints;
+		if (candidatePoints != null) {
+			// 记录检测器找到的定位点，解码失败时作为疑似区域
+			Map<DecodeHintType, Object> candidateHints = new EnumMap<>(DecodeHintType.class);
+			if (hints != null) {
+				candidateHints.putAll(hints);
+			}
+			candidateHints.put(DecodeHintType.NEED_RESULT_POINT_CALLBACK, new ResultPointCallback() {
+				@Override
+				public void foundPossibleResultPoint(ResultPoint point) {
+					candidatePoints.add(point);
+				}
+			});
+			hints = candidateHints;
+		}
+		
+		PlanarYUVLuminanceSource source = new PlanarYUVLuminanceSource(plane.luminances,
+				plane.width, plane.height, 0, 0, plane.width, plane.height, false);
+		BinaryBitmap binaryBitmap = new BinaryBitmap(new HybridBinarizer(source));
+		try {
+			if (multipleReader != null) {
+				return multipleReader.decodeMultiple(binaryBitmap, hints);
+			}
+			return new Result[]{reader.decode(binaryBitmap, hints)};
+		} finally {
+			reader.reset();
+			if (candidatePoints != null && reader instanceof MultiFormatReader) {
+				// MultiFormatReader 解码时保留传入的参数，恢复原参数，避免定位点回调留在共享的解码器上
+				((MultiFormatReader) reader).setHints(originalHints);
+			}
+		}
+	}
+	
+	/**
+	 * 根据定位点计算疑似区域（原图坐标），四周各留出区域大小一半的余量
+	 *
+	 * @return 没有定位点时返回 null
+	 */
+	private static Rect getCandidateRect(LuminancePlane plane, List<ResultPoint> points,
+	                                     int imageWidth, int imageHeight) {
+		if (points.isEmpty()) {
+			return null;
+		}
+		
+		float minX = Float.MAX_VALUE;
+		float minY = Float.MAX_VALUE;
+		float maxX = -Float.MAX_VALUE;
+		float maxY = -Float.MAX_VALUE;
+		for (ResultPoint point : points) {
+			if (point == null) {
+				continue;
+			}
+			minX = Math.min(minX, point.getX());
+			minY = Math.min(minY, point.getY());
+			maxX = Math.max(maxX, point.getX());
+			maxY = Math.max(maxY, point.getY());
+		}
+		if (minX > maxX) {
+			return null;
+		}
+		
+		float size = Math.max(Math.max(maxX - minX, maxY - minY), Math.min(plane.width, plane.height) / 4F);
+		float margin = size / 2;
+		int sampleSize = plane.sampleSize;
+		Rect candidateRect = new Rect(
+				plane.left + (int) ((minX - margin) * sampleSize),
+				plane.top + (int) ((minY - margin) * sampleSize),
+				plane.left + (int) Math.ceil((maxX + margin) * sampleSize),
+				plane.top + (int) Math.ceil((maxY + margin) * sampleSize));
+		if (!candidateRect.intersect(0, 0, imageWidth, imageHeight)) {
+			return null;
+		}
+		return candidateRect;
+	}
+	
+	/**
+	 * 按条带读取区域亮度
+	 *
+	 * @param rect       原图区域
+	 * @param sampleSize 采样倍数
+	 */
+	private static LuminancePlane readRegion(BitmapRegionDecoder regionDecoder, Rect rect,
+	                                         int sampleSize) throws IOException {
+		LuminancePlane plane = new LuminancePlane(rect.left, rect.top,
+				(rect.width() + sampleSize - 1) / sampleSize,
+				(rect.height() + sampleSize - 1) / sampleSize,
+				sampleSize);
+		
+		BitmapFactory.Options options = new BitmapFactory.Options();
+		options.inSampleSize = sampleSize;
+		options.inPreferredConfig = Bitmap.Config.RGB_565;
+		boolean canReuseBitmap = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN;
+		if (canReuseBitmap) {
+			options.inMutable = true;
+		}
+		
+		Rect stripRect = new Rect();
+		int stripHeight = STRIP_ROWS * sampleSize;
+		Bitmap stripBitmap = null;
+		int[] pixels = null;
+		try {
+			for (int top = rect.top; top < rect.bottom; top += stripHeight) {
+				stripRect.set(rect.left, top, rect.right, Math.min(rect.bottom, top + stripHeight));
+				if (canReuseBitmap) {
+					// 复用的条带位图尺寸不变，最后一个较矮的条带只写入顶部
+					options.inBitmap = stripBitmap;
+				}
+				Bitmap bitmap = regionDecoder.decodeRegion(stripRect, options);
+				if (bitmap == null) {
+					throw new IOException("Cannot decode region: " + stripRect);
+				}
+				if (stripBitmap != null && stripBitmap != bitmap) {
+					stripBitmap.recycle();
+				}
+				stripBitmap = bitmap;
+				
+				int y = (top - rect.top) / sampleSize;
+				int rows = Math.min((stripRect.height() + sampleSize - 1) / sampleSize, plane.height - y);
+				rows = Math.min(rows, bitmap.getHeight());
+				int columns = Math.min(plane.width, bitmap.getWidth());
+				if (pixels == null || pixels.length < columns * rows) {
+					pixels = new int[columns * rows];
+				}
+				bitmap.getPixels(pixels, 0, columns, 0, 0, columns, rows);
+				plane.setPixels(pixels, columns, rows, y);
+			}
+		} finally {
+			if (stripBitmap != null) {
+				stripBitmap.recycle();
+			}
+		}
+		return plane;
+	}
+	
+	/**
+	 * 整图采样解码后按条带转换为亮度
+	 */
+	private LuminancePlane readSampled(ImageSource source) throws IOException {
+		BitmapFactory.Options options = new BitmapFactory.Options();
+		options.inJustDecodeBounds = true;
+		decodeStream(source, options);
+		if (options.outWidth <= 0 || options.outHeight <= 0) {
+			throw new IOException("Cannot decode image: " + source);
+		}
+		
+		options.inJustDecodeBounds = false;
+		options.inSampleSize = getSampleSize(options.outWidth, options.outHeight);
+		options.inPreferredConfig = Bitmap.Config.RGB_565;
+		Bitmap bitmap = decodeStream(source, options);
+		if (bitmap == null) {
+			throw new IOException("Cannot decode image: " + source);
+		}
+		
+		try {
+			int width = bitmap.getWidth();
+			int height = bitmap.getHeight();
+			LuminancePlane plane = new LuminancePlane(0, 0, width, height, options.inSampleSize);
+			int[] pixels = new int[width * Math.min(STRIP_ROWS, height)];
+			for (int y = 0; y < height; y += STRIP_ROWS) {
+				int rows = Math.min(STRIP_ROWS, height - y);
+				bitmap.getPixels(pixels, 0, width, 0, y, width, rows);
+				plane.setPixels(pixels, width, rows, y);
+			}
+			return plane;
+		} finally {
+			bitmap.recycle();
+		}
+	}
+	
+	private static Bitmap decodeStream(ImageSource source, BitmapFactory.Options options) throws IOException {
+		InputStream inputStream = source.openStream();
+		try {
+			return BitmapFactory.decodeStream(inputStream, null, options);
+		} finally {
+			inputStream.close();
+		}
+	}
+	
+	/**
+	 * 8 位亮度图
+	 */
+	private static final class LuminancePlane {
+		/** 在原图中的左边界 */
+		final int left;
+		/** 在原图中的上边界 */
+		final int top;
+		final int width;
+		final int height;
+		/** 相对原图的采样倍数 */
+		final int sampleSize;
+		final byte[] luminances;
+		
+		LuminancePlane(int left, int top, int width, int height, int sampleSize) {
+			this.left = left;
+			this.top = top;
+			this.width = width;
+			this.height = height;
+			this.sampleSize = sampleSize;
+			this.luminances = new byte[width * height];
+		}
+		
+		/**
+		 * 写入一个条带的像素，亮度计算与 {@link com.google.zxing.RGBLuminanceSource} 一致
+		 *
+		 * @param pixels  ARGB 像素
+		 * @param columns 每行像素数
+		 * @param rows    行数
+		 * @param y       条带在亮度图中的起始行
+		 */
+		void setPixels(int[] pixels, int columns, int rows, int y) {
+			byte[] luminances = this.luminances;
+			for (int row = 0; row < rows; row++) {
+				int inputOffset = row * columns;
+				int outputOffset = (y + row) * width;
+				for (int x = 0; x < columns; x++) {
+					int pixel = pixels[inputOffset + x];
+					// 红 + 2 * 绿 + 蓝
+					luminances[outputOffset + x] = (byte) ((((pixel >> 16) & 0xFF) + ((pixel >> 7) & 0x1FE) + (pixel & 0xFF)) / 4);
+				}
+			}
+		}
+	}
+}
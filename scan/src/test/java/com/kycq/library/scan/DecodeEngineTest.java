@@ -0,0 +1,233 @@
+package com.kycq.library.scan;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * {@link DecodeEngine} 在各旋转角度和扫描区域下的解码结果
+ */
+public class DecodeEngineTest {
+	private static final int DATA_WIDTH = 640;
+	private static final int DATA_HEIGHT = 480;
+	private static final int[] ROTATION_ANGLES = {0, 90, 180, 270};
+	
+	/**
+	 * 条码位置（旋转后坐标）
+	 * <p>
+	 * 未开启 TRY_HARDER 时一维码只扫描画面中部的若干行，条码需覆盖两种方向画面的中部
+	 */
+	private static final int CODE_LEFT = 40;
+	private static final int CODE_TOP = 160;
+	private static final int CODE_SIZE = 240;
+	
+	/** 包含条码的扫描区域，以条码为中心 */
+	private static final int CROP_LEFT = 20;
+	private static final int CROP_SIZE = 280;
+	/** 不包含条码的扫描区域 */
+	private static final int EMPTY_LEFT = 320;
+	private static final int EMPTY_TOP = 320;
+	private static final int EMPTY_SIZE = 150;
+	
+	/** 多尺度解码测试使用的旋转角度，旋转后画面为 480x640 */
+	private static final int PYRAMID_ROTATION = 90;
+	/** 定位点换算回扫描区域坐标的允许误差，单位像素 */
+	private static final float POINT_TOLERANCE = 3F;
+	
+	@Test
+	public void decode_qrCodeFullFrame() throws Exception {
+		for (int rotationAngle : ROTATION_ANGLES) {
+			byte[] data = createFrame(rotationAngle, BarcodeFormat.QR_CODE, TestFrames.QR_CODE_CONTENTS);
+			DecodeEngine decodeEngine = new DecodeEngine();
+			int status = decodeEngine.decode(data, DATA_WIDTH, DATA_HEIGHT, rotationAngle);
+			assertDecoded(decodeEngine, status, BarcodeFormat.QR_CODE, TestFrames.QR_CODE_CONTENTS, rotationAngle);
+		}
+	}
+	
+	@Test
+	public void decode_ean13FullFrame() throws Exception {
+		for (int rotationAngle : ROTATION_ANGLES) {
+			byte[] data = createFrame(rotationAngle, BarcodeFormat.EAN_13, TestFrames.EAN_13_CONTENTS);
+			DecodeEngine decodeEngine = new DecodeEngine();
+			int status = decodeEngine.decode(data, DATA_WIDTH, DATA_HEIGHT, rotationAngle);
+			assertDecoded(decodeEngine, status, BarcodeFormat.EAN_13, TestFrames.EAN_13_CONTENTS, rotationAngle);
+		}
+	}
+	
+	@Test
+	public void decode_qrCodeCropped() throws Exception {
+		for (int rotationAngle : ROTATION_ANGLES) {
+			byte[] data = createFrame(rotationAngle, BarcodeFormat.QR_CODE, TestFrames.QR_CODE_CONTENTS);
+			DecodeEngine decodeEngine = new DecodeEngine();
+			int status = decodeEngine.decode(data, DATA_WIDTH, DATA_HEIGHT, rotationAngle,
+					CROP_LEFT, getCropTop(BarcodeFormat.QR_CODE), CROP_SIZE, CROP_SIZE);
+			assertDecoded(decodeEngine, status, BarcodeFormat.QR_CODE, TestFrames.QR_CODE_CONTENTS, rotationAngle);
+			
+			status = decodeEngine.decode(data, DATA_WIDTH, DATA_HEIGHT, rotationAngle,
+					EMPTY_LEFT, EMPTY_TOP, EMPTY_SIZE, EMPTY_SIZE);
+			assertEquals("rotation " + rotationAngle, DecodeEngine.STATUS_NOT_FOUND, status);
+		}
+	}
+	
+	@Test
+	public void decode_ean13Cropped() throws Exception {
+		for (int rotationAngle : ROTATION_ANGLES) {
+			byte[] data = createFrame(rotationAngle, BarcodeFormat.EAN_13, TestFrames.EAN_13_CONTENTS);
+			DecodeEngine decodeEngine = new DecodeEngine();
+			int status = decodeEngine.decode(data, DATA_WIDTH, DATA_HEIGHT, rotationAngle,
+					CROP_LEFT, getCropTop(BarcodeFormat.EAN_13), CROP_SIZE, CROP_SIZE);
+			assertDecoded(decodeEngine, status, BarcodeFormat.EAN_13, TestFrames.EAN_13_CONTENTS, rotationAngle);
+			
+			status = decodeEngine.decode(data, DATA_WIDTH, DATA_HEIGHT, rotationAngle,
+					EMPTY_LEFT, EMPTY_TOP, EMPTY_SIZE, EMPTY_SIZE);
+			assertEquals("rotation " + rotationAngle, DecodeEngine.STATUS_NOT_FOUND, status);
+		}
+	}
+	
+	@Test
+	public void decode_ean13WrongRotationNotFound() throws Exception {
+		// 一维码只按行扫描，旋转角度错误时条码竖直排列，不能识别
+		for (int rotationAngle : ROTATION_ANGLES) {
+			byte[] data = createFrame(rotationAngle, BarcodeFormat.EAN_13, TestFrames.EAN_13_CONTENTS);
+			DecodeEngine decodeEngine = new DecodeEngine();
+			int status = decodeEngine.decode(data, DATA_WIDTH, DATA_HEIGHT, (rotationAngle + 90) % 360);
+			assertEquals("rotation " + rotationAngle, DecodeEngine.STATUS_NOT_FOUND, status);
+		}
+	}
+	
+	@Test
+	public void decode_planeWithStrides() throws Exception {
+		int pixelStride = 2;
+		int rowStride = DATA_WIDTH * pixelStride + 32;
+		for (int rotationAngle : ROTATION_ANGLES) {
+			byte[] data = createFrame(rotationAngle, BarcodeFormat.EAN_13, TestFrames.EAN_13_CONTENTS);
+			ByteBuffer plane = TestFrames.toPlane(data, DATA_WIDTH, DATA_HEIGHT, rowStride, pixelStride);
+			DecodeEngine decodeEngine = new DecodeEngine();
+			int status = decodeEngine.decode(plane, rowStride, pixelStride,
+					DATA_WIDTH, DATA_HEIGHT, rotationAngle,
+					CROP_LEFT, getCropTop(BarcodeFormat.EAN_13), CROP_SIZE, CROP_SIZE);
+			assertDecoded(decodeEngine, status, BarcodeFormat.EAN_13, TestFrames.EAN_13_CONTENTS, rotationAngle);
+			
+			status = decodeEngine.decode(plane, rowStride, pixelStride,
+					DATA_WIDTH, DATA_HEIGHT, rotationAngle,
+					EMPTY_LEFT, EMPTY_TOP, EMPTY_SIZE, EMPTY_SIZE);
+			assertEquals("rotation " + rotationAngle, DecodeEngine.STATUS_NOT_FOUND, status);
+		}
+	}
+	
+	@Test
+	public void decode_pyramidDownscalesLargeCode() throws Exception {
+		// 扫描区域两边都不小于 400 时先解码缩小层；条码大于中心区域，放大层无法识别
+		int left = 20;
+		int top = 100;
+		int size = 440;
+		byte[] data = TestFrames.createFrame(DATA_WIDTH, DATA_HEIGHT, PYRAMID_ROTATION,
+				BarcodeFormat.QR_CODE, TestFrames.QR_CODE_CONTENTS, 120, 200, CODE_SIZE);
+		DecodeEngine decodeEngine = new DecodeEngine();
+		int status = decodeEngine.decode(data, DATA_WIDTH, DATA_HEIGHT, PYRAMID_ROTATION, left, top, size, size);
+		assertDecoded(decodeEngine, status, BarcodeFormat.QR_CODE, TestFrames.QR_CODE_CONTENTS, PYRAMID_ROTATION);
+		ResultPoint[] expectedPoints = decodeEngine.getResults()[0].getResultPoints();
+		
+		// 棋盘干扰使原尺寸无法识别，缩小时相邻像素平均后抵消
+		TestFrames.addCheckerboard(data, DATA_WIDTH, DATA_HEIGHT, 100);
+		status = decodeEngine.decode(data, DATA_WIDTH, DATA_HEIGHT, PYRAMID_ROTATION, left, top, size, size);
+		assertEquals(DecodeEngine.STATUS_NOT_FOUND, status);
+		
+		decodeEngine.setPyramidDecode(true);
+		status = decodeEngine.decode(data, DATA_WIDTH, DATA_HEIGHT, PYRAMID_ROTATION, left, top, size, size);
+		assertDecoded(decodeEngine, status, BarcodeFormat.QR_CODE, TestFrames.QR_CODE_CONTENTS, PYRAMID_ROTATION);
+		assertPoints(expectedPoints, 1F, decodeEngine.getResults()[0].getResultPoints());
+	}
+	
+	@Test
+	public void decode_pyramidUpscalesSmallCode() throws Exception {
+		// 两倍尺寸的帧中条码每模块 3 像素，缩小后每模块 1.5 像素，原尺寸无法识别；
+		// 扫描区域短边小于 400，不解码缩小层
+		int factor = 2;
+		int left = 50;
+		int top = 130;
+		int size = 380;
+		byte[] largeData = TestFrames.createFrame(DATA_WIDTH * factor, DATA_HEIGHT * factor, PYRAMID_ROTATION,
+				BarcodeFormat.EAN_13, TestFrames.EAN_13_CONTENTS, 320, 560, 113 * 3);
+		DecodeEngine decodeEngine = new DecodeEngine();
+		int status = decodeEngine.decode(largeData, DATA_WIDTH * factor, DATA_HEIGHT * factor, PYRAMID_ROTATION,
+				left * factor, top * factor, size * factor, size * factor);
+		assertDecoded(decodeEngine, status, BarcodeFormat.EAN_13, TestFrames.EAN_13_CONTENTS, PYRAMID_ROTATION);
+		ResultPoint[] expectedPoints = decodeEngine.getResults()[0].getResultPoints();
+		
+		byte[] data = TestFrames.shrink(largeData, DATA_WIDTH * factor, DATA_HEIGHT * factor, factor);
+		status = decodeEngine.decode(data, DATA_WIDTH, DATA_HEIGHT, PYRAMID_ROTATION, left, top, size, size);
+		assertEquals(DecodeEngine.STATUS_NOT_FOUND, status);
+		
+		decodeEngine.setPyramidDecode(true);
+		status = decodeEngine.decode(data, DATA_WIDTH, DATA_HEIGHT, PYRAMID_ROTATION, left, top, size, size);
+		assertDecoded(decodeEngine, status, BarcodeFormat.EAN_13, TestFrames.EAN_13_CONTENTS, PYRAMID_ROTATION);
+		assertPoints(expectedPoints, 1F / factor, decodeEngine.getResults()[0].getResultPoints());
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void decode_badRotationThrows() throws Exception {
+		byte[] data = createFrame(0, BarcodeFormat.QR_CODE, TestFrames.QR_CODE_CONTENTS);
+		new DecodeEngine().decode(data, DATA_WIDTH, DATA_HEIGHT, 45);
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void decode_cropOutsideFrameThrows() throws Exception {
+		byte[] data = createFrame(90, BarcodeFormat.QR_CODE, TestFrames.QR_CODE_CONTENTS);
+		// 旋转 90 度后画面宽度为 480
+		new DecodeEngine().decode(data, DATA_WIDTH, DATA_HEIGHT, 90, 400, 0, 100, 100);
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void decode_dataTooSmallThrows() throws Exception {
+		new DecodeEngine().decode(new byte[DATA_WIDTH * DATA_HEIGHT - 1], DATA_WIDTH, DATA_HEIGHT, 0);
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void decode_planeTooSmallThrows() throws Exception {
+		ByteBuffer plane = ByteBuffer.allocate(DATA_WIDTH * DATA_HEIGHT);
+		new DecodeEngine().decode(plane, DATA_WIDTH * 2, 2,
+				DATA_WIDTH, DATA_HEIGHT, 0,
+				0, 0, DATA_WIDTH, DATA_HEIGHT);
+	}
+	
+	private static byte[] createFrame(int rotationAngle, BarcodeFormat format, String contents) {
+		return TestFrames.createFrame(DATA_WIDTH, DATA_HEIGHT, rotationAngle, format, contents,
+				CODE_LEFT, CODE_TOP, CODE_SIZE);
+	}
+	
+	private static int getCropTop(BarcodeFormat format) {
+		int codeHeight = format == BarcodeFormat.QR_CODE ? CODE_SIZE : CODE_SIZE / 3;
+		return CODE_TOP + codeHeight / 2 - CROP_SIZE / 2;
+	}
+	
+	/**
+	 * 解码层上的定位点换算回扫描区域坐标后与参照结果一致
+	 *
+	 * @param scale 参照结果坐标换算到扫描区域坐标的比例
+	 */
+	private static void assertPoints(ResultPoint[] expectedPoints, float scale, ResultPoint[] points) {
+		assertEquals(expectedPoints.length, points.length);
+		for (int index = 0; index < points.length; index++) {
+			assertEquals("x " + index, expectedPoints[index].getX() * scale, points[index].getX(), POINT_TOLERANCE);
+			assertEquals("y " + index, expectedPoints[index].getY() * scale, points[index].getY(), POINT_TOLERANCE);
+		}
+	}
+	
+	private static void assertDecoded(DecodeEngine decodeEngine, int status,
+	                                  BarcodeFormat format, String contents, int rotationAngle) {
+		String message = format + " rotation " + rotationAngle;
+		assertEquals(message, DecodeEngine.STATUS_SUCCESS, status);
+		Result[] results = decodeEngine.getResults();
+		assertNotNull(message, results);
+		assertEquals(message, format, results[0].getBarcodeFormat());
+		assertEquals(message, contents, results[0].getText());
+	}
+}
@@ -0,0 +1,222 @@
+package com.kycq.library.scan;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link DecodeResultCache} 的内存淘汰、磁盘读写和损坏文件处理
+ */
+public class DecodeResultCacheTest {
+	@Rule
+	public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+	
+	@Test
+	public void get_returnsCachedResults() throws Exception {
+		DecodeResultCache decodeResultCache = new DecodeResultCache(4);
+		Result[] results = {newResult("A")};
+		decodeResultCache.put("a", results);
+		
+		assertArrayEquals(results, decodeResultCache.get("a"));
+		assertNull(decodeResultCache.get("b"));
+	}
+	
+	@Test
+	public void put_evictsLeastRecentlyUsedAtCapacity() throws Exception {
+		DecodeResultCache decodeResultCache = new DecodeResultCache(2);
+		decodeResultCache.put("a", new Result[]{newResult("A")});
+		decodeResultCache.put("b", new Result[]{newResult("B")});
+		// 访问 a 后 b 成为最久未使用
+		assertNotNull(decodeResultCache.get("a"));
+		decodeResultCache.put("c", new Result[]{newResult("C")});
+		
+		assertNotNull(decodeResultCache.get("a"));
+		assertNull(decodeResultCache.get("b"));
+		assertNotNull(decodeResultCache.get("c"));
+	}
+	
+	@Test
+	public void diskRoundTrip_preservesResults() throws Exception {
+		File directory = mTemporaryFolder.newFolder();
+		Result result = new Result("条码 A", new byte[]{1, 2, 3}, 24,
+				new ResultPoint[]{new ResultPoint(1.5F, 2.5F), null, new ResultPoint(30F, 40F)},
+				BarcodeFormat.QR_CODE, 123456789L);
+		Result noPoints = new Result("5901234123457", null, null, BarcodeFormat.EAN_13);
+		new DecodeResultCache(4, directory, 4).put("a", new Result[]{result, noPoints});
+		
+		// 新实例内存为空，只能从磁盘读取
+		Result[] cachedResults = new DecodeResultCache(4, directory, 4).get("a");
+		assertNotNull(cachedResults);
+		assertEquals(2, cachedResults.length);
+		assertSameResult(result, cachedResults[0]);
+		assertSameResult(noPoints, cachedResults[1]);
+	}
+	
+	@Test
+	public void diskRoundTrip_preservesNotFound() throws Exception {
+		File directory = mTemporaryFolder.newFolder();
+		new DecodeResultCache(4, directory, 4).put("a", new Result[0]);
+		
+		Result[] cachedResults = new DecodeResultCache(4, directory, 4).get("a");
+		assertNotNull(cachedResults);
+		assertEquals(0, cachedResults.length);
+	}
+	
+	@Test
+	public void get_discardsCorruptFile() throws Exception {
+		File directory = mTemporaryFolder.newFolder();
+		new DecodeResultCache(4, directory, 4).put("a", new Result[]{newResult("A")});
+		File diskFile = getOnlyDiskFile(directory);
+		
+		// 截断文件
+		RandomAccessFile randomAccessFile = new RandomAccessFile(diskFile, "rw");
+		try {
+			randomAccessFile.setLength(randomAccessFile.length() / 2);
+		} finally {
+			randomAccessFile.close();
+		}
+		
+		assertNull(new DecodeResultCache(4, directory, 4).get("a"));
+		assertFalse(diskFile.exists());
+	}
+	
+	@Test
+	public void get_discardsGarbageLengths() throws Exception {
+		File directory = mTemporaryFolder.newFolder();
+		new DecodeResultCache(4, directory, 4).put("a", new Result[]{newResult("A")});
+		File diskFile = getOnlyDiskFile(directory);
+		
+		// 键长度字段写入超出文件大小的值
+		RandomAccessFile randomAccessFile = new RandomAccessFile(diskFile, "rw");
+		try {
+			randomAccessFile.seek(4);
+			randomAccessFile.writeInt(Integer.MAX_VALUE);
+		} finally {
+			randomAccessFile.close();
+		}
+		
+		assertNull(new DecodeResultCache(4, directory, 4).get("a"));
+		assertFalse(diskFile.exists());
+	}
+	
+	@Test
+	public void get_discardsOtherVersion() throws Exception {
+		File directory = mTemporaryFolder.newFolder();
+		new DecodeResultCache(4, directory, 4).put("a", new Result[]{newResult("A")});
+		File diskFile = getOnlyDiskFile(directory);
+		
+		RandomAccessFile randomAccessFile = new RandomAccessFile(diskFile, "rw");
+		try {
+			randomAccessFile.writeInt(0);
+		} finally {
+			randomAccessFile.close();
+		}
+		
+		assertNull(new DecodeResultCache(4, directory, 4).get("a"));
+		assertFalse(diskFile.exists());
+	}
+	
+	@Test
+	public void get_ignoresFileOfOtherKey() throws Exception {
+		// 模拟摘要冲突：文件名对应键 b，内容为键 a 的结果
+		File directory = mTemporaryFolder.newFolder();
+		new DecodeResultCache(4, directory, 4).put("a", new Result[]{newResult("A")});
+		File fileA = getOnlyDiskFile(directory);
+		new DecodeResultCache(4, directory, 4).put("b", new Result[]{newResult("B")});
+		File fileB = null;
+		for (File file : directory.listFiles()) {
+			if (!file.equals(fileA)) {
+				fileB = file;
+			}
+		}
+		assertNotNull(fileB);
+		assertTrue(fileB.delete());
+		assertTrue(fileA.renameTo(fileB));
+		
+		assertNull(new DecodeResultCache(4, directory, 4).get("b"));
+	}
+	
+	@Test
+	public void put_trimsDiskEntries() throws Exception {
+		File directory = mTemporaryFolder.newFolder();
+		DecodeResultCache decodeResultCache = new DecodeResultCache(4, directory, 2);
+		decodeResultCache.put("a", new Result[]{newResult("A")});
+		decodeResultCache.put("b", new Result[]{newResult("B")});
+		decodeResultCache.put("c", new Result[]{newResult("C")});
+		
+		assertEquals(2, directory.listFiles().length);
+	}
+	
+	@Test
+	public void clear_removesMemoryAndDisk() throws Exception {
+		File directory = mTemporaryFolder.newFolder();
+		DecodeResultCache decodeResultCache = new DecodeResultCache(4, directory, 4);
+		decodeResultCache.put("a", new Result[]{newResult("A")});
+		decodeResultCache.clear();
+		
+		assertNull(decodeResultCache.get("a"));
+		assertEquals(0, directory.listFiles().length);
+	}
+	
+	@Test
+	public void createKey_contentKeyMatchesCopies() throws Exception {
+		File first = writeFile("first.png", new byte[]{1, 2, 3});
+		File copy = writeFile("copy.png", new byte[]{1, 2, 3});
+		File other = writeFile("other.png", new byte[]{4, 5, 6});
+		DecodeResultCache decodeResultCache = new DecodeResultCache(4);
+		
+		assertNotEquals(decodeResultCache.createKey(first, "config"), decodeResultCache.createKey(copy, "config"));
+		decodeResultCache.setContentKey(true);
+		assertEquals(decodeResultCache.createKey(first, "config"), decodeResultCache.createKey(copy, "config"));
+		assertNotEquals(decodeResultCache.createKey(first, "config"), decodeResultCache.createKey(other, "config"));
+		assertNotEquals(decodeResultCache.createKey(first, "config"), decodeResultCache.createKey(first, "other"));
+	}
+	
+	private File writeFile(String name, byte[] content) throws IOException {
+		File file = mTemporaryFolder.newFile(name);
+		FileOutputStream outputStream = new FileOutputStream(file);
+		try {
+			outputStream.write(content);
+		} finally {
+			outputStream.close();
+		}
+		return file;
+	}
+	
+	private static File getOnlyDiskFile(File directory) {
+		File[] files = directory.listFiles();
+		assertNotNull(files);
+		assertEquals(1, files.length);
+		return files[0];
+	}
+	
+	private static void assertSameResult(Result expected, Result actual) {
+		assertEquals(expected.getText(), actual.getText());
+		assertEquals(expected.getBarcodeFormat(), actual.getBarcodeFormat());
+		assertArrayEquals(expected.getRawBytes(), actual.getRawBytes());
+		assertEquals(expected.getNumBits(), actual.getNumBits());
+		assertEquals(expected.getTimestamp(), actual.getTimestamp());
+		assertArrayEquals(expected.getResultPoints(), actual.getResultPoints());
+	}
+	
+	private static Result newResult(String text) {
+		return new Result(text, null, null, BarcodeFormat.QR_CODE);
+	}
+}
@@ -0,0 +1,174 @@
+package com.kycq.library.scan;
+
+import com.google.zxing.BarcodeFormat;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 通过 {@link FrameReplayer} 回放的帧经 {@link DecodeEngine} 解码，与解码线程的处理一致
+ */
+public class FrameReplayerTest {
+	private static final int DATA_WIDTH = 640;
+	private static final int DATA_HEIGHT = 480;
+	private static final int ROTATION_ANGLE = 90;
+	private static final int CODE_LEFT = 40;
+	private static final int CODE_TOP = 160;
+	private static final int CODE_SIZE = 240;
+	/** 亮度平面的行跨度，带行尾填充 */
+	private static final int ROW_STRIDE = DATA_WIDTH + 32;
+	
+	@Test
+	public void deliverNextFrame_decodesInOrder() throws Exception {
+		FrameReplayer frameReplayer = new FrameReplayer(0);
+		frameReplayer.addFrame(newFrame(createFrame(BarcodeFormat.QR_CODE, TestFrames.QR_CODE_CONTENTS)));
+		byte[] data = createFrame(BarcodeFormat.EAN_13, TestFrames.EAN_13_CONTENTS);
+		CaptureFrame planeFrame = new CaptureFrame();
+		planeFrame.plane = TestFrames.toPlane(data, DATA_WIDTH, DATA_HEIGHT, ROW_STRIDE, 1);
+		planeFrame.rowStride = ROW_STRIDE;
+		planeFrame.pixelStride = 1;
+		planeFrame.width = DATA_WIDTH;
+		planeFrame.height = DATA_HEIGHT;
+		frameReplayer.addFrame(planeFrame);
+		DecodingCallback decodingCallback = new DecodingCallback(frameReplayer, null);
+		frameReplayer.setCallback(decodingCallback);
+		
+		for (int index = 0; index < 4; index++) {
+			assertTrue(frameReplayer.deliverNextFrame());
+		}
+		
+		// 亮度平面重复回放时仍可解码
+		assertEquals(Arrays.asList(
+				TestFrames.QR_CODE_CONTENTS, TestFrames.EAN_13_CONTENTS,
+				TestFrames.QR_CODE_CONTENTS, TestFrames.EAN_13_CONTENTS),
+				decodingCallback.getContents());
+		assertEquals(4, frameReplayer.getDeliveredCount());
+		assertEquals(0, frameReplayer.getHeldCount());
+	}
+	
+	@Test
+	public void deliverNextFrame_skipsHeldFrame() throws Exception {
+		FrameReplayer frameReplayer = new FrameReplayer(0);
+		frameReplayer.addFrame(newFrame(createFrame(BarcodeFormat.QR_CODE, TestFrames.QR_CODE_CONTENTS)));
+		final List<CaptureFrame> heldFrames = new ArrayList<>();
+		frameReplayer.setCallback(new FrameReplayer.Callback() {
+			@Override
+			public void onFrame(CaptureFrame frame) {
+				heldFrames.add(frame);
+			}
+		});
+		
+		assertTrue(frameReplayer.deliverNextFrame());
+		// 唯一的帧尚未归还，与相机缓冲区全部被持有时一样跳过
+		assertFalse(frameReplayer.deliverNextFrame());
+		assertEquals(1, frameReplayer.getDeliveredCount());
+		assertEquals(1, frameReplayer.getHeldCount());
+		
+		frameReplayer.releaseFrame(heldFrames.get(0));
+		assertTrue(frameReplayer.deliverNextFrame());
+		assertEquals(2, frameReplayer.getDeliveredCount());
+		assertEquals(heldFrames.get(0), heldFrames.get(1));
+	}
+	
+	@Test
+	public void deliverNextFrame_withoutCallbackOrFrames() throws Exception {
+		FrameReplayer frameReplayer = new FrameReplayer(0);
+		frameReplayer.addFrame(newFrame(createFrame(BarcodeFormat.QR_CODE, TestFrames.QR_CODE_CONTENTS)));
+		assertFalse(frameReplayer.deliverNextFrame());
+		
+		frameReplayer = new FrameReplayer(0);
+		frameReplayer.setCallback(new DecodingCallback(frameReplayer, null));
+		assertFalse(frameReplayer.deliverNextFrame());
+		assertEquals(0, frameReplayer.getDeliveredCount());
+	}
+	
+	@Test
+	public void start_feedsFramesUntilStopped() throws Exception {
+		FrameReplayer frameReplayer = new FrameReplayer(5);
+		frameReplayer.addFrame(newFrame(createFrame(BarcodeFormat.QR_CODE, TestFrames.QR_CODE_CONTENTS)));
+		CountDownLatch decodedLatch = new CountDownLatch(3);
+		DecodingCallback decodingCallback = new DecodingCallback(frameReplayer, decodedLatch);
+		frameReplayer.setCallback(decodingCallback);
+		
+		frameReplayer.start();
+		try {
+			assertTrue(decodedLatch.await(10, TimeUnit.SECONDS));
+		} finally {
+			frameReplayer.stop();
+		}
+		
+		for (String contents : decodingCallback.getContents()) {
+			assertEquals(TestFrames.QR_CODE_CONTENTS, contents);
+		}
+		// 停止后不再回调
+		Thread.sleep(100);
+		int deliveredCount = frameReplayer.getDeliveredCount();
+		Thread.sleep(100);
+		assertEquals(deliveredCount, frameReplayer.getDeliveredCount());
+		assertEquals(0, frameReplayer.getHeldCount());
+	}
+	
+	private static CaptureFrame newFrame(byte[] data) {
+		CaptureFrame frame = new CaptureFrame();
+		frame.data = data;
+		frame.width = DATA_WIDTH;
+		frame.height = DATA_HEIGHT;
+		return frame;
+	}
+	
+	private static byte[] createFrame(BarcodeFormat format, String contents) {
+		return TestFrames.createFrame(DATA_WIDTH, DATA_HEIGHT, ROTATION_ANGLE,
+				format, contents, CODE_LEFT, CODE_TOP, CODE_SIZE);
+	}
+	
+	/**
+	 * 与解码线程一样按帧的数据形式解码整帧并立即归还，记录识别到的内容，未识别时记录 null
+	 */
+	private static final class DecodingCallback implements FrameReplayer.Callback {
+		private final FrameReplayer mFrameReplayer;
+		private final CountDownLatch mDecodedLatch;
+		private final DecodeEngine mDecodeEngine = new DecodeEngine();
+		private final List<String> mContents = Collections.synchronizedList(new ArrayList<String>());
+		
+		DecodingCallback(FrameReplayer frameReplayer, CountDownLatch decodedLatch) {
+			mFrameReplayer = frameReplayer;
+			mDecodedLatch = decodedLatch;
+		}
+		
+		@Override
+		public void onFrame(CaptureFrame frame) {
+			int width = RotatedLuminanceSource.getRotatedWidth(frame.width, frame.height, ROTATION_ANGLE);
+			int height = RotatedLuminanceSource.getRotatedHeight(frame.width, frame.height, ROTATION_ANGLE);
+			int status;
+			if (frame.plane != null) {
+				status = mDecodeEngine.decode(frame.plane, frame.rowStride, frame.pixelStride,
+						frame.width, frame.height, ROTATION_ANGLE, 0, 0, width, height);
+			} else {
+				status = mDecodeEngine.decode(frame.data,
+						frame.width, frame.height, ROTATION_ANGLE, 0, 0, width, height);
+			}
+			mFrameReplayer.releaseFrame(frame);
+			
+			mContents.add(status == DecodeEngine.STATUS_SUCCESS ? mDecodeEngine.getResults()[0].getText() : null);
+			if (mDecodedLatch != null) {
+				mDecodedLatch.countDown();
+			}
+		}
+		
+		List<String> getContents() {
+			synchronized (mContents) {
+				return new ArrayList<>(mContents);
+			}
+		}
+	}
+}
@@ -0,0 +1,75 @@
+package com.kycq.library.scan;
+
+import com.google.zxing.BarcodeFormat;
+
+import org.junit.Test;
+
+import java.util.Collection;
+import java.util.EnumSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link PreviewSizePolicy} 按解码格式选择预览分辨率
+ * <p>
+ * 模拟 1080x1920 竖屏全屏预览，扫描框为默认的视图宽度 0.6 的正方形。
+ */
+public class PreviewSizePolicyTest {
+	/** 相机常见的支持分辨率（相机方向） */
+	private static final int[] WIDTHS = {176, 320, 640, 800, 960, 1280, 1280, 1920};
+	private static final int[] HEIGHTS = {144, 240, 480, 480, 540, 720, 960, 1080};
+	
+	private static final int SCREEN_WIDTH = 1080;
+	private static final int SCREEN_HEIGHT = 1920;
+	private static final int ROTATION_ANGLE = 90;
+	private static final float FINDER_WIDTH_RATIO = 0.6F;
+	private static final float FINDER_HEIGHT_RATIO = 0.6F * SCREEN_WIDTH / SCREEN_HEIGHT;
+	
+	@Test
+	public void select_code128At720p() throws Exception {
+		assertSelected(new PreviewSizePolicy(), EnumSet.of(BarcodeFormat.CODE_128), 1280, 720);
+	}
+	
+	@Test
+	public void select_industrialFormatsAt720p() throws Exception {
+		PreviewSizePolicy previewSizePolicy = new PreviewSizePolicy();
+		for (BarcodeFormat format : DecodeFormat.INDUSTRIAL_FORMATS) {
+			int index = select(previewSizePolicy, EnumSet.of(format));
+			assertTrue(format.toString(), WIDTHS[index] * HEIGHTS[index] <= 1280 * 720);
+		}
+		assertSelected(previewSizePolicy, DecodeFormat.getFormatsForModes(DecodeFormat.ONE_D_MODE), 1280, 720);
+	}
+	
+	@Test
+	public void select_qrCodeBelow720p() throws Exception {
+		// 二维码按短边计算，较小的分辨率已满足，跳过宽高比偏差较大的 640x480
+		assertSelected(new PreviewSizePolicy(), EnumSet.of(BarcodeFormat.QR_CODE), 800, 480);
+	}
+	
+	@Test
+	public void select_largestWhenNothingQualifies() throws Exception {
+		PreviewSizePolicy previewSizePolicy = new PreviewSizePolicy();
+		previewSizePolicy.setModuleCount(BarcodeFormat.CODE_128, 1000);
+		assertSelected(previewSizePolicy, EnumSet.of(BarcodeFormat.CODE_128), 1920, 1080);
+	}
+	
+	@Test
+	public void select_withinPixelBudget() throws Exception {
+		PreviewSizePolicy previewSizePolicy = new PreviewSizePolicy();
+		previewSizePolicy.setModuleCount(BarcodeFormat.CODE_128, 1000);
+		previewSizePolicy.setPixelBudget(0, 1280 * 720);
+		assertSelected(previewSizePolicy, EnumSet.of(BarcodeFormat.CODE_128), 1280, 720);
+	}
+	
+	private static int select(PreviewSizePolicy previewSizePolicy, Collection<BarcodeFormat> decodeFormats) {
+		return previewSizePolicy.selectPreviewSizeIndex(WIDTHS, HEIGHTS, SCREEN_WIDTH, SCREEN_HEIGHT,
+				ROTATION_ANGLE, FINDER_WIDTH_RATIO, FINDER_HEIGHT_RATIO, decodeFormats);
+	}
+	
+	private static void assertSelected(PreviewSizePolicy previewSizePolicy, Collection<BarcodeFormat> decodeFormats,
+	                                   int width, int height) {
+		int index = select(previewSizePolicy, decodeFormats);
+		assertEquals(width + "x" + height, WIDTHS[index] + "x" + HEIGHTS[index]);
+	}
+}
@@ -0,0 +1,118 @@
+package com.kycq.library.scan;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.Result;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * {@link ResultDeduplicator} 的时间窗口、帧数窗口和容量淘汰
+ */
+public class ResultDeduplicatorTest {
+	private static final Result QR_CODE = newResult("A", BarcodeFormat.QR_CODE);
+	private static final Result QR_CODE_B = newResult("B", BarcodeFormat.QR_CODE);
+	private static final Result QR_CODE_C = newResult("C", BarcodeFormat.QR_CODE);
+	/** 内容与 {@link #QR_CODE} 相同，格式不同 */
+	private static final Result CODE_128 = newResult("A", BarcodeFormat.CODE_128);
+	
+	@Test
+	public void filter_emitsOnceWithinWindow() throws Exception {
+		ResultDeduplicator deduplicator = new ResultDeduplicator(ResultDeduplicator.DEFAULT_CAPACITY);
+		deduplicator.setWindow(2000, 0);
+		
+		assertEmitted(deduplicator.filter(new Result[]{QR_CODE}, 0), QR_CODE);
+		assertEmitted(deduplicator.filter(new Result[]{QR_CODE}, 500));
+		assertEmitted(deduplicator.filter(new Result[]{QR_CODE}, 2000));
+	}
+	
+	@Test
+	public void filter_reEmitsAfterWindow() throws Exception {
+		ResultDeduplicator deduplicator = new ResultDeduplicator(ResultDeduplicator.DEFAULT_CAPACITY);
+		deduplicator.setWindow(2000, 0);
+		
+		assertEmitted(deduplicator.filter(new Result[]{QR_CODE}, 0), QR_CODE);
+		assertEmitted(deduplicator.filter(new Result[]{QR_CODE}, 2001), QR_CODE);
+	}
+	
+	@Test
+	public void filter_sightingRefreshesWindow() throws Exception {
+		// 条码一直停留在画面中时每次出现都刷新时间，离开超过窗口后才重新回调
+		ResultDeduplicator deduplicator = new ResultDeduplicator(ResultDeduplicator.DEFAULT_CAPACITY);
+		deduplicator.setWindow(2000, 0);
+		
+		assertEmitted(deduplicator.filter(new Result[]{QR_CODE}, 0), QR_CODE);
+		assertEmitted(deduplicator.filter(new Result[]{QR_CODE}, 1500));
+		assertEmitted(deduplicator.filter(new Result[]{QR_CODE}, 3000));
+		assertEmitted(deduplicator.filter(new Result[]{QR_CODE}, 5001), QR_CODE);
+	}
+	
+	@Test
+	public void filter_frameWindow() throws Exception {
+		ResultDeduplicator deduplicator = new ResultDeduplicator(ResultDeduplicator.DEFAULT_CAPACITY);
+		deduplicator.setWindow(0, 3);
+		
+		assertEmitted(deduplicator.filter(new Result[]{QR_CODE}, 0), QR_CODE);
+		nextFrames(deduplicator, 3);
+		assertEmitted(deduplicator.filter(new Result[]{QR_CODE}, 0));
+		nextFrames(deduplicator, 4);
+		assertEmitted(deduplicator.filter(new Result[]{QR_CODE}, 0), QR_CODE);
+	}
+	
+	@Test
+	public void filter_noWindowEmitsEveryTime() throws Exception {
+		ResultDeduplicator deduplicator = new ResultDeduplicator(ResultDeduplicator.DEFAULT_CAPACITY);
+		deduplicator.setWindow(0, 0);
+		
+		assertEmitted(deduplicator.filter(new Result[]{QR_CODE}, 0), QR_CODE);
+		assertEmitted(deduplicator.filter(new Result[]{QR_CODE}, 0), QR_CODE);
+	}
+	
+	@Test
+	public void filter_formatIsPartOfKey() throws Exception {
+		ResultDeduplicator deduplicator = new ResultDeduplicator(ResultDeduplicator.DEFAULT_CAPACITY);
+		
+		assertEmitted(deduplicator.filter(new Result[]{QR_CODE}, 0), QR_CODE);
+		assertEmitted(deduplicator.filter(new Result[]{QR_CODE, CODE_128}, 10), CODE_128);
+	}
+	
+	@Test
+	public void filter_evictsLeastRecentlySeenAtCapacity() throws Exception {
+		ResultDeduplicator deduplicator = new ResultDeduplicator(2);
+		
+		assertEmitted(deduplicator.filter(new Result[]{QR_CODE, QR_CODE_B}, 0), QR_CODE, QR_CODE_B);
+		// A 再次出现，B 成为最久未出现的条码
+		assertEmitted(deduplicator.filter(new Result[]{QR_CODE}, 10));
+		assertEmitted(deduplicator.filter(new Result[]{QR_CODE_C}, 20), QR_CODE_C);
+		
+		// B 已被淘汰，窗口内再次出现仍回调；C 仍在记录中
+		assertEmitted(deduplicator.filter(new Result[]{QR_CODE_B}, 30), QR_CODE_B);
+		assertEmitted(deduplicator.filter(new Result[]{QR_CODE_C}, 40));
+	}
+	
+	@Test
+	public void clear_forgetsSightings() throws Exception {
+		ResultDeduplicator deduplicator = new ResultDeduplicator(ResultDeduplicator.DEFAULT_CAPACITY);
+		
+		assertEmitted(deduplicator.filter(new Result[]{QR_CODE}, 0), QR_CODE);
+		deduplicator.clear();
+		assertEmitted(deduplicator.filter(new Result[]{QR_CODE}, 10), QR_CODE);
+	}
+	
+	private static void nextFrames(ResultDeduplicator deduplicator, int count) {
+		for (int index = 0; index < count; index++) {
+			deduplicator.nextFrame();
+		}
+	}
+	
+	private static void assertEmitted(Result[] actual, Result... expected) {
+		assertEquals(expected.length, actual.length);
+		assertArrayEquals(expected, actual);
+	}
+	
+	private static Result newResult(String text, BarcodeFormat format) {
+		return new Result(text, null, null, format);
+	}
+}
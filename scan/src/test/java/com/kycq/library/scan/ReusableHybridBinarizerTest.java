@@ -0,0 +1,150 @@
+package com.kycq.library.scan;
+
+import com.google.zxing.Binarizer;
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.common.BitArray;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.HybridBinarizer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * {@link ReusableHybridBinarizer} 与 {@link HybridBinarizer} 的结果逐位一致，复用缓冲区时不残留上一帧
+ */
+public class ReusableHybridBinarizerTest {
+	private static final int DATA_WIDTH = 320;
+	private static final int DATA_HEIGHT = 240;
+	
+	/** 裁剪尺寸，包含不是 8 的倍数的宽高，以及小于 40 时退回全局直方图的尺寸 */
+	private static final int[][] SIZES = {
+			{40, 40}, {41, 57}, {64, 48}, {123, 77}, {200, 150}, {225, 161}, {30, 90}, {90, 30}
+	};
+	private static final int[] ROTATION_ANGLES = {0, 90, 180, 270};
+	
+	@Test
+	public void getBlackMatrix_matchesHybridBinarizer() throws Exception {
+		byte[] data = createQRCodeFrame(0);
+		for (int rotationAngle : ROTATION_ANGLES) {
+			for (int[] size : SIZES) {
+				LuminanceSource source = new RotatedLuminanceSource(data, DATA_WIDTH, DATA_HEIGHT, rotationAngle,
+						7, 5, size[0], size[1]);
+				assertSameMatrix(source, new ReusableHybridBinarizer.Buffers(),
+						"rotation " + rotationAngle + " size " + size[0] + "x" + size[1]);
+			}
+		}
+	}
+	
+	@Test
+	public void getBlackMatrix_plainSourceMatchesHybridBinarizer() throws Exception {
+		// 非 FrameLuminanceSource 时通过 getMatrix 读取亮度
+		byte[] data = createQRCodeFrame(0);
+		for (int[] size : SIZES) {
+			LuminanceSource source = new PlanarYUVLuminanceSource(data, DATA_WIDTH, DATA_HEIGHT,
+					11, 3, size[0], size[1], false);
+			assertSameMatrix(source, new ReusableHybridBinarizer.Buffers(), "size " + size[0] + "x" + size[1]);
+		}
+	}
+	
+	@Test
+	public void getBlackMatrix_reusedBuffersKeepNoStaleBits() throws Exception {
+		// 第一帧条码偏左上，第二帧为位置不同的一维码，大片区域由黑变白
+		byte[] firstData = createQRCodeFrame(0);
+		byte[] secondData = TestFrames.createFrame(DATA_WIDTH, DATA_HEIGHT, 0,
+				BarcodeFormat.EAN_13, TestFrames.EAN_13_CONTENTS, 150, 150, 150);
+		ReusableHybridBinarizer.Buffers buffers = new ReusableHybridBinarizer.Buffers();
+		for (int[] size : SIZES) {
+			String message = "size " + size[0] + "x" + size[1];
+			assertSameMatrix(new RotatedLuminanceSource(firstData, DATA_WIDTH, DATA_HEIGHT, 0,
+					0, 0, size[0], size[1]), buffers, message + " first frame");
+			assertSameMatrix(new RotatedLuminanceSource(secondData, DATA_WIDTH, DATA_HEIGHT, 0,
+					0, 0, size[0], size[1]), buffers, message + " second frame");
+		}
+		// 尺寸变化后回到原尺寸
+		assertSameMatrix(new RotatedLuminanceSource(firstData, DATA_WIDTH, DATA_HEIGHT, 0,
+				0, 0, DATA_WIDTH, DATA_HEIGHT), buffers, "full first frame");
+		assertSameMatrix(new RotatedLuminanceSource(secondData, DATA_WIDTH, DATA_HEIGHT, 0,
+				0, 0, DATA_WIDTH, DATA_HEIGHT), buffers, "full second frame");
+	}
+	
+	@Test
+	public void getBlackRow_matchesHybridBinarizer() throws Exception {
+		byte[] firstData = TestFrames.createFrame(DATA_WIDTH, DATA_HEIGHT, 0,
+				BarcodeFormat.EAN_13, TestFrames.EAN_13_CONTENTS, 20, 60, 270);
+		byte[] secondData = createQRCodeFrame(90);
+		ReusableHybridBinarizer.Buffers buffers = new ReusableHybridBinarizer.Buffers();
+		for (int[] size : SIZES) {
+			for (byte[] data : new byte[][]{firstData, secondData}) {
+				LuminanceSource source = new RotatedLuminanceSource(data, DATA_WIDTH, DATA_HEIGHT, 0,
+						13, 50, size[0], size[1]);
+				assertSameRows(source, buffers, "size " + size[0] + "x" + size[1]);
+			}
+		}
+	}
+	
+	private static byte[] createQRCodeFrame(int rotationAngle) {
+		return TestFrames.createFrame(DATA_WIDTH, DATA_HEIGHT, rotationAngle,
+				BarcodeFormat.QR_CODE, TestFrames.QR_CODE_CONTENTS, 10, 10, 180);
+	}
+	
+	private static void assertSameMatrix(LuminanceSource source, ReusableHybridBinarizer.Buffers buffers,
+	                                     String message) {
+		BitMatrix expected = getBlackMatrix(new HybridBinarizer(source));
+		BitMatrix actual = getBlackMatrix(new ReusableHybridBinarizer(source, buffers));
+		if (expected == null) {
+			assertNull(message, actual);
+			return;
+		}
+		assertEquals(message, expected, actual);
+	}
+	
+	/**
+	 * 逐行比较，两个二值化器各自复用行缓冲区
+	 */
+	private static void assertSameRows(LuminanceSource source, ReusableHybridBinarizer.Buffers buffers,
+	                                   String message) {
+		Binarizer expectedBinarizer = new HybridBinarizer(source);
+		Binarizer actualBinarizer = new ReusableHybridBinarizer(source, buffers);
+		BitArray expectedRow = null;
+		BitArray actualRow = null;
+		for (int y = 0; y < source.getHeight(); y++) {
+			BitArray expected = getBlackRow(expectedBinarizer, y, expectedRow);
+			BitArray actual = getBlackRow(actualBinarizer, y, actualRow);
+			String rowMessage = message + " row " + y;
+			if (expected == null) {
+				assertNull(rowMessage, actual);
+				continue;
+			}
+			assertEquals(rowMessage, expected.toString(), actual.toString());
+			expectedRow = expected;
+			actualRow = actual;
+		}
+	}
+	
+	/**
+	 * @return 对比度不足时返回 null
+	 */
+	private static BitMatrix getBlackMatrix(Binarizer binarizer) {
+		try {
+			return binarizer.getBlackMatrix();
+		} catch (NotFoundException e) {
+			return null;
+		}
+	}
+	
+	/**
+	 * @return 对比度不足时返回 null
+	 */
+	private static BitArray getBlackRow(Binarizer binarizer, int y, BitArray row) {
+		try {
+			return binarizer.getBlackRow(y, row);
+		} catch (NotFoundException e) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,140 @@
+package com.kycq.library.scan;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.MultiFormatWriter;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * 测试用预览帧
+ * <p>
+ * 在旋转后的画面中指定位置绘制正向条码，再按旋转角度写入相机方向的亮度数据，
+ * 与 {@link RotatedLuminanceSource} 的旋转方向一致。
+ */
+final class TestFrames {
+	static final String QR_CODE_CONTENTS = "https://github.com/kycqdhl3c/ScanView";
+	static final String EAN_13_CONTENTS = "5901234123457";
+	
+	private TestFrames() {
+	}
+	
+	/**
+	 * 合成 NV21 预览帧
+	 *
+	 * @param dataWidth     数据宽度
+	 * @param dataHeight    数据高度
+	 * @param rotationAngle 顺时针旋转到画面方向的角度
+	 * @param codeLeft      条码左边界（旋转后坐标）
+	 * @param codeTop       条码上边界（旋转后坐标）
+	 * @param codeSize      条码宽度，一维码高度为宽度的三分之一
+	 */
+	static byte[] createFrame(int dataWidth, int dataHeight, int rotationAngle,
+	                          BarcodeFormat format, String contents,
+	                          int codeLeft, int codeTop, int codeSize) {
+		int rotatedWidth = RotatedLuminanceSource.getRotatedWidth(dataWidth, dataHeight, rotationAngle);
+		int rotatedHeight = RotatedLuminanceSource.getRotatedHeight(dataWidth, dataHeight, rotationAngle);
+		BitMatrix code = encode(format, contents, codeSize);
+		
+		byte[] data = new byte[dataWidth * dataHeight * 3 / 2];
+		Random random = new Random(dataWidth * 31 + dataHeight * 17 + rotationAngle);
+		for (int ry = 0; ry < rotatedHeight; ry++) {
+			for (int rx = 0; rx < rotatedWidth; rx++) {
+				int luminance = 150;
+				int codeX = rx - codeLeft;
+				int codeY = ry - codeTop;
+				if (codeX >= 0 && codeY >= 0 && codeX < code.getWidth() && codeY < code.getHeight()) {
+					luminance = code.get(codeX, codeY) ? 40 : 210;
+				}
+				luminance += (int) (random.nextGaussian() * 4);
+				luminance = Math.max(0, Math.min(255, luminance));
+				data[toDataIndex(rx, ry, dataWidth, dataHeight, rotationAngle)] = (byte) luminance;
+			}
+		}
+		for (int index = dataWidth * dataHeight; index < data.length; index++) {
+			data[index] = (byte) 128;
+		}
+		return data;
+	}
+	
+	/**
+	 * 将亮度数据复制到按跨度存储的平面，行尾和像素间的填充字节写入干扰值
+	 */
+	static ByteBuffer toPlane(byte[] data, int dataWidth, int dataHeight, int rowStride, int pixelStride) {
+		byte[] plane = new byte[(dataHeight - 1) * rowStride + (dataWidth - 1) * pixelStride + 1];
+		for (int index = 0; index < plane.length; index++) {
+			plane[index] = (byte) (index % 2 == 0 ? 0 : 255);
+		}
+		for (int y = 0; y < dataHeight; y++) {
+			for (int x = 0; x < dataWidth; x++) {
+				plane[y * rowStride + x * pixelStride] = data[y * dataWidth + x];
+			}
+		}
+		return ByteBuffer.wrap(plane);
+	}
+	
+	/**
+	 * 在亮度数据上叠加逐像素正负交替的棋盘干扰，原尺寸二值化无法区分模块，相邻 2x2 像素平均后抵消
+	 *
+	 * @param amplitude 干扰幅度
+	 */
+	static void addCheckerboard(byte[] data, int dataWidth, int dataHeight, int amplitude) {
+		for (int y = 0; y < dataHeight; y++) {
+			for (int x = 0; x < dataWidth; x++) {
+				int index = y * dataWidth + x;
+				int luminance = (data[index] & 0xFF) + ((x + y) % 2 == 0 ? amplitude : -amplitude);
+				data[index] = (byte) Math.max(0, Math.min(255, luminance));
+			}
+		}
+	}
+	
+	/**
+	 * 按整数倍缩小 NV21 预览帧，相邻像素取平均，用于合成每个模块不足整数像素的远距离条码
+	 *
+	 * @param factor 缩小倍数，帧尺寸需为其整数倍
+	 */
+	static byte[] shrink(byte[] data, int dataWidth, int dataHeight, int factor) {
+		int width = dataWidth / factor;
+		int height = dataHeight / factor;
+		byte[] shrunk = new byte[width * height * 3 / 2];
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				int sum = 0;
+				for (int dy = 0; dy < factor; dy++) {
+					for (int dx = 0; dx < factor; dx++) {
+						sum += data[(y * factor + dy) * dataWidth + x * factor + dx] & 0xFF;
+					}
+				}
+				shrunk[y * width + x] = (byte) (sum / (factor * factor));
+			}
+		}
+		for (int index = width * height; index < shrunk.length; index++) {
+			shrunk[index] = (byte) 128;
+		}
+		return shrunk;
+	}
+	
+	static BitMatrix encode(BarcodeFormat format, String contents, int size) {
+		int height = format == BarcodeFormat.QR_CODE ? size : size / 3;
+		try {
+			return new MultiFormatWriter().encode(contents, format, size, height);
+		} catch (WriterException e) {
+			throw new IllegalArgumentException(e);
+		}
+	}
+	
+	private static int toDataIndex(int rx, int ry, int dataWidth, int dataHeight, int rotationAngle) {
+		switch (rotationAngle) {
+			case 90:
+				return (dataHeight - 1 - rx) * dataWidth + ry;
+			case 180:
+				return (dataHeight - 1 - ry) * dataWidth + dataWidth - 1 - rx;
+			case 270:
+				return rx * dataWidth + dataWidth - 1 - ry;
+			default:
+				return ry * dataWidth + rx;
+		}
+	}
+}